@@ -1,5 +1,6 @@
 package com.github.chhsiao90.nitmproxy;
 
+import com.github.chhsiao90.nitmproxy.enums.KeyAlgorithm;
 import com.github.chhsiao90.nitmproxy.tls.CertUtil;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -44,6 +45,14 @@ public final class CertGenerator {
                         .argName("KEYSIZE")
                         .desc("key size of certificate, default: 2048")
                         .build());
+        options.addOption(
+                Option.builder("a")
+                        .longOpt("algorithm")
+                        .hasArg()
+                        .argName("ALGORITHM")
+                        .desc("key algorithm of certificate(RSA_2048, RSA_3072, EC_P256, EC_P384), "
+                              + "overrides the key size")
+                        .build());
 
         CommandLine commandLine = null;
         try {
@@ -54,13 +63,19 @@ public final class CertGenerator {
         }
 
         CertGeneratorConfig config = parse(commandLine);
-        LOGGER.info("Generating certificate with subject:{} and keysize:{}",
-                config.getSubject(), config.getKeySize());
 
         File serverPem = new File("server.pem");
         File keyPem = new File("key.pem");
 
-        CertUtil.createCACertificates(serverPem, keyPem, config.getSubject(), config.getKeySize());
+        if (config.getKeyAlgorithm() != null) {
+            LOGGER.info("Generating certificate with subject:{} and algorithm:{}",
+                    config.getSubject(), config.getKeyAlgorithm());
+            CertUtil.createCACertificates(serverPem, keyPem, config.getSubject(), config.getKeyAlgorithm());
+        } else {
+            LOGGER.info("Generating certificate with subject:{} and keysize:{}",
+                    config.getSubject(), config.getKeySize());
+            CertUtil.createCACertificates(serverPem, keyPem, config.getSubject(), config.getKeySize());
+        }
 
         //we'll copy server.pem to server.crt for easy import
         Files.copy(Paths.get(serverPem.toURI()), Paths.get("server.crt"));
@@ -78,12 +93,24 @@ public final class CertGenerator {
                 throw new IllegalArgumentException("Not a valid key size: " + commandLine.getOptionValue("k"));
             }
         }
+        if (commandLine.hasOption("a")) {
+            config.setKeyAlgorithm(KeyAlgorithm.of(commandLine.getOptionValue("a")));
+        }
         return config;
     }
 
     private static class CertGeneratorConfig {
         String subject = DEFAULT_SUBJECT;
         int keySize = DEFAULT_KEYSIZE;
+        KeyAlgorithm keyAlgorithm;
+
+        public KeyAlgorithm getKeyAlgorithm() {
+            return keyAlgorithm;
+        }
+
+        public void setKeyAlgorithm(KeyAlgorithm keyAlgorithm) {
+            this.keyAlgorithm = keyAlgorithm;
+        }
 
         public int getKeySize() {
             return keySize;
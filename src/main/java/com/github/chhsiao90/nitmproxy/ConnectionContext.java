@@ -1,8 +1,10 @@
 package com.github.chhsiao90.nitmproxy;
 
+import com.github.chhsiao90.nitmproxy.enums.HandshakePhase;
 import com.github.chhsiao90.nitmproxy.handler.proxy.HttpProxyHandler;
 import com.github.chhsiao90.nitmproxy.handler.proxy.SocksProxyHandler;
 import com.github.chhsiao90.nitmproxy.handler.proxy.TransparentProxyHandler;
+import com.github.chhsiao90.nitmproxy.tls.HandshakeTimings;
 import com.github.chhsiao90.nitmproxy.tls.TlsContext;
 import com.github.chhsiao90.nitmproxy.ws.WebSocketContext;
 import io.netty.channel.Channel;
@@ -10,7 +12,12 @@ import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOutboundBuffer;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.function.ObjLongConsumer;
+
+import static com.github.chhsiao90.nitmproxy.enums.HandshakePhase.*;
 import static java.lang.String.*;
 
 public class ConnectionContext {
@@ -23,6 +30,7 @@ public class ConnectionContext {
 
     private Channel clientChannel;
     private Channel serverChannel;
+    private ChannelFuture connectFuture;
 
     private TlsContext tlsCtx;
     private WebSocketContext wsCtx;
@@ -30,7 +38,8 @@ public class ConnectionContext {
     public ConnectionContext(NitmProxyMaster master) {
         this.master = master;
         this.provider = master.provider(this);
-        this.tlsCtx = new TlsContext();
+        ObjLongConsumer<HandshakePhase> sink = (phase, nanos) -> master.onHandshakePhase(this, phase, nanos);
+        this.tlsCtx = new TlsContext(new HandshakeTimings(sink));
         this.wsCtx = new WebSocketContext();
     }
 
@@ -43,6 +52,15 @@ public class ConnectionContext {
         return clientAddr;
     }
 
+    /**
+     * Resolve the host name of the client, the client address only has the raw IP.
+     *
+     * @return the future of the host name, which is the IP itself if the IP has no name
+     */
+    public CompletableFuture<String> clientHost() {
+        return master.clientHostResolver().resolve(clientAddr.getHost());
+    }
+
     public ConnectionContext withServerAddr(Address serverAddr) {
         this.serverAddr = serverAddr;
         return this;
@@ -95,6 +113,10 @@ public class ConnectionContext {
         if (serverChannel != null && (!serverAddr.equals(address) || !serverChannel.isActive())) {
             serverChannel.close();
             serverChannel = null;
+            // The client might be paused by the old server
+            if (clientChannel != null) {
+                clientChannel.config().setAutoRead(true);
+            }
         }
         if (serverChannel != null) {
             return serverChannel.newSucceededFuture();
@@ -103,12 +125,33 @@ public class ConnectionContext {
         tlsCtx.protocols(fromCtx.executor().newPromise());
         tlsCtx.protocol(fromCtx.executor().newPromise());
         serverAddr = address;
-        return master.connect(fromCtx, this, new ChannelInitializer<Channel>() {
+        tlsCtx.timings().begin(UPSTREAM_CONNECT);
+        connectFuture = master.connect(fromCtx, this, new ChannelInitializer<Channel>() {
             @Override
             protected void initChannel(Channel ch) throws Exception {
+                ch.config().setWriteBufferWaterMark(config().getWriteBufferWaterMark());
+                ch.config().setAutoRead(clientChannel == null || clientChannel.isWritable());
+                ch.pipeline().addFirst(provider().backpressureHandler());
                 ch.pipeline().addLast(withServerChannel(ch).provider().tlsBackendHandler());
             }
         });
+        if (connectFuture != null) {
+            connectFuture.addListener(future -> {
+                if (future.isSuccess()) {
+                    tlsCtx.timings().end(UPSTREAM_CONNECT);
+                }
+            });
+        }
+        return connectFuture;
+    }
+
+    /**
+     * Get the future of the connection to the server, which might be still connecting.
+     *
+     * @return the connect future, or {@code null} if not connected
+     */
+    public ChannelFuture connectFuture() {
+        return connectFuture;
     }
 
     public Channel serverChannel() {
@@ -119,6 +162,43 @@ public class ConnectionContext {
         return clientChannel;
     }
 
+    /**
+     * Pause reading the peer of the channel while the channel is not writable, and resume once it's writable
+     * again. Without it, a fast peer keeps being read into the outbound buffer of a slow channel, so the memory
+     * of the connection is bounded by the high water mark of the channels instead of by the speed of the peers.
+     *
+     * @param channel the channel whose writability changed
+     */
+    public void writabilityChanged(Channel channel) {
+        Channel peer = channel == clientChannel ? serverChannel : clientChannel;
+        if (peer != null) {
+            peer.config().setAutoRead(channel.isWritable());
+        }
+    }
+
+    /**
+     * Get the bytes written to the client but not yet flushed to the socket.
+     *
+     * @return the pending bytes
+     */
+    public long clientPendingWriteBytes() {
+        return pendingWriteBytes(clientChannel);
+    }
+
+    /**
+     * Get the bytes written to the server but not yet flushed to the socket.
+     *
+     * @return the pending bytes
+     */
+    public long serverPendingWriteBytes() {
+        return pendingWriteBytes(serverChannel);
+    }
+
+    private static long pendingWriteBytes(Channel channel) {
+        ChannelOutboundBuffer buffer = channel == null ? null : channel.unsafe().outboundBuffer();
+        return buffer == null ? 0 : buffer.totalPendingWriteBytes();
+    }
+
     public TlsContext tlsCtx() {
         return tlsCtx;
     }
@@ -4,6 +4,7 @@ import com.github.chhsiao90.nitmproxy.exception.NitmProxyException;
 import com.github.chhsiao90.nitmproxy.handler.ForwardBackendHandler;
 import com.github.chhsiao90.nitmproxy.handler.ForwardEventHandler;
 import com.github.chhsiao90.nitmproxy.handler.ForwardFrontendHandler;
+import com.github.chhsiao90.nitmproxy.handler.BackpressureHandler;
 import com.github.chhsiao90.nitmproxy.handler.ToClientHandler;
 import com.github.chhsiao90.nitmproxy.handler.ToServerHandler;
 import com.github.chhsiao90.nitmproxy.handler.protocol.ProtocolSelectHandler;
@@ -110,6 +111,10 @@ public class HandlerProvider {
         return new ToServerHandler(context);
     }
 
+    public ChannelHandler backpressureHandler() {
+        return new BackpressureHandler(context);
+    }
+
     public ChannelHandler forwardFrontendHandler() {
         return new ForwardFrontendHandler(context);
     }
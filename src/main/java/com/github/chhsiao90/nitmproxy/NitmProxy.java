@@ -1,10 +1,20 @@
 package com.github.chhsiao90.nitmproxy;
 
+import com.github.chhsiao90.nitmproxy.channel.BackendChannelBootstrap;
+import com.github.chhsiao90.nitmproxy.channel.CachingDnsResolverGroup;
+import com.github.chhsiao90.nitmproxy.channel.ChannelTransport;
+import com.github.chhsiao90.nitmproxy.enums.KeyAlgorithm;
 import com.github.chhsiao90.nitmproxy.enums.ProxyMode;
+import com.github.chhsiao90.nitmproxy.enums.TlsEngine;
+import com.github.chhsiao90.nitmproxy.enums.Transport;
+import com.github.chhsiao90.nitmproxy.tls.CaFileWatcher;
+import com.github.chhsiao90.nitmproxy.tls.CertManager;
+import com.github.chhsiao90.nitmproxy.tls.CertPrewarmer;
+import com.google.common.base.Splitter;
+import com.google.common.net.HostAndPort;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.Channel;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.EventLoopGroup;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
 import org.apache.commons.cli.CommandLine;
@@ -14,20 +24,32 @@ import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
+import org.bouncycastle.asn1.pkcs.PrivateKeyInfo;
+import org.bouncycastle.cert.X509CertificateHolder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 import static com.github.chhsiao90.nitmproxy.tls.CertUtil.*;
+import static com.google.common.base.Preconditions.*;
 
 public class NitmProxy {
     private static final Logger LOGGER = LoggerFactory.getLogger(NitmProxy.class);
 
     private NitmProxyConfig config;
+    private NitmProxyMaster master;
 
-    private NioEventLoopGroup bossGroup;
-    private NioEventLoopGroup workerGroup;
+    private EventLoopGroup bossGroup;
+    private EventLoopGroup workerGroup;
     private NitmProxyStatus status = NitmProxyStatus.NOTCONFIGURED;
     public NitmProxy(NitmProxyConfig config) {
         this.config = config;
@@ -36,21 +58,31 @@ public class NitmProxy {
     public void start() throws Exception {
         config.init();
 
-        bossGroup = new NioEventLoopGroup(1);
-        workerGroup = new NioEventLoopGroup();
+        ChannelTransport transport = ChannelTransport.of(config.getTransport());
+        CachingDnsResolverGroup resolver = new CachingDnsResolverGroup(config, transport);
+        master = new NitmProxyMaster(config, new BackendChannelBootstrap(transport, resolver));
+        CaFileWatcher caFileWatcher = newCaFileWatcher(master);
+        int listeners = listeners(transport);
+        bossGroup = transport.newEventLoopGroup(Math.max(config.getBossThreads(), listeners));
+        workerGroup = transport.newEventLoopGroup(config.getWorkerThreads());
+        master.connectionStats().registerLoops(workerGroup);
         try {
             ServerBootstrap bootstrap = new ServerBootstrap()
                     .group(bossGroup, workerGroup)
-                    .channel(NioServerSocketChannel.class)
+                    .channel(transport.serverChannelClass())
                     .handler(new LoggingHandler(LogLevel.DEBUG))
-                    .childHandler(new NitmProxyInitializer(config));
-            Channel channel = bootstrap
-                    .bind(config.getHost(), config.getPort())
-                    .sync()
-                    .channel();
+                    .childHandler(new NitmProxyInitializer(master));
+            if (listeners > 1) {
+                bootstrap.option(transport.reusePortOption(), true);
+            }
+            // Each server channel is registered to the next boss thread
+            List<Channel> channels = new ArrayList<>();
+            for (int i = 0; i < listeners; i++) {
+                channels.add(bootstrap.bind(config.getHost(), config.getPort()).sync().channel());
+            }
 
-            LOGGER.info("nitmproxy is listening at {}:{}",
-                              config.getHost(), config.getPort());
+            LOGGER.info("nitmproxy is listening at {}:{} with {} ({} listeners)",
+                              config.getHost(), config.getPort(), transport, listeners);
 
             status = NitmProxyStatus.STARTED;
 
@@ -58,14 +90,82 @@ public class NitmProxy {
                 config.getStatusListener().onStart();
             }
 
-            channel.closeFuture().sync();
+            prewarmCerts(master);
+            if (caFileWatcher != null) {
+                caFileWatcher.start();
+            }
+
+            for (Channel channel : channels) {
+                channel.closeFuture().sync();
+            }
         } finally {
             bossGroup.shutdownGracefully();
             workerGroup.shutdownGracefully();
+            resolver.close();
+            master.handshakeExecutor().shutdown();
+            master.clientHostResolver().shutdown();
+            if (caFileWatcher != null) {
+                caFileWatcher.stop();
+            }
             status = NitmProxyStatus.STOPPED;
         }
     }
 
+    /**
+     * Mint the certificates of the hot hosts in the background right after the server was bound, so that the
+     * first connections to the top sites will not wait for the signing.
+     */
+    private void prewarmCerts(NitmProxyMaster master) {
+        if (config.getHotHosts().isEmpty()) {
+            return;
+        }
+        new CertPrewarmer(master.certManager(), config.getCertMintingThreads())
+                .prewarm(config.getHotHosts())
+                .thenAccept(result -> {
+                    if (config.getStatusListener() != null) {
+                        config.getStatusListener().onCertsPrewarmed(result);
+                    }
+                });
+    }
+
+    /**
+     * Rotate the CA of the running proxy, see {@link CertManager#rotateCa(X509CertificateHolder, PrivateKeyInfo)}.
+     *
+     * @param certificate the certificate of the new CA
+     * @param key the private key of the new CA
+     * @return the future of the rotation, which is completed after the new CA took over
+     */
+    public CompletableFuture<CertPrewarmer.Result> rotateCa(X509CertificateHolder certificate, PrivateKeyInfo key) {
+        checkState(status == NitmProxyStatus.STARTED, "nitmproxy is not started");
+        return master.certManager().rotateCa(certificate, key);
+    }
+
+    private int listeners(ChannelTransport transport) {
+        if (config.getListeners() > 1 && transport.reusePortOption() == null) {
+            LOGGER.warn("SO_REUSEPORT is not supported by {}, binding a single listener", transport);
+            return 1;
+        }
+        return Math.max(config.getListeners(), 1);
+    }
+
+    /**
+     * Get the master of the started proxy, which holds the caches and the stats of the proxy.
+     *
+     * @return the master, or {@code null} if not started
+     */
+    public NitmProxyMaster getMaster() {
+        return master;
+    }
+
+    private CaFileWatcher newCaFileWatcher(NitmProxyMaster master) {
+        if (config.getCaWatchIntervalSeconds() <= 0
+            || config.getCertificateFile() == null || config.getKeyFile() == null) {
+            return null;
+        }
+        return new CaFileWatcher(master.certManager(), config.getCertificateFile(), config.getKeyFile(),
+                config.getCaWatchIntervalSeconds());
+    }
+
     public void stop() {
         if (bossGroup != null) {
             bossGroup.shutdownGracefully();
@@ -125,6 +225,98 @@ public class NitmProxy {
                       .argName("KEY")
                       .desc("key used by server(*.pem), default: key.pem")
                       .build());
+        options.addOption(
+                Option.builder()
+                      .longOpt("watch-ca")
+                      .hasArg()
+                      .argName("SECONDS")
+                      .desc("interval to poll the cert and key files, the CA is rotated once they changed")
+                      .build());
+        options.addOption(
+                Option.builder()
+                      .longOpt("key-algorithm")
+                      .hasArg()
+                      .argName("ALGORITHM")
+                      .desc("key algorithm of generated certificates(RSA_2048, RSA_3072, EC_P256, EC_P384), "
+                            + "default: RSA_2048")
+                      .build());
+        options.addOption(
+                Option.builder()
+                      .longOpt("cert-store")
+                      .hasArg()
+                      .argName("DIR")
+                      .desc("directory to persist generated certificates across restarts")
+                      .build());
+        options.addOption(
+                Option.builder()
+                      .longOpt("dns-servers")
+                      .hasArg()
+                      .argName("SERVERS")
+                      .desc("name servers(host[:port], comma separated) to resolve the servers, default: system")
+                      .build());
+        options.addOption(
+                Option.builder()
+                      .longOpt("hot-hosts")
+                      .hasArg()
+                      .argName("FILE")
+                      .desc("file of hosts, one per line, to generate certificates for at startup")
+                      .build());
+        options.addOption(
+                Option.builder()
+                      .longOpt("passthrough-hosts")
+                      .hasArg()
+                      .argName("FILE")
+                      .desc("file of host patterns(example.com, *.example.com), one per line, "
+                            + "to tunnel without interception")
+                      .build());
+        options.addOption(
+                Option.builder()
+                      .longOpt("server-context-cache-size")
+                      .hasArg()
+                      .argName("COUNT")
+                      .desc("number of cached server tls contexts, default: 2000")
+                      .build());
+        options.addOption(
+                Option.builder()
+                      .longOpt("tls-engine")
+                      .hasArg()
+                      .argName("ENGINE")
+                      .desc("tls engine(JDK, OPENSSL, AUTO), default: JDK")
+                      .build());
+        options.addOption(
+                Option.builder()
+                      .longOpt("transport")
+                      .hasArg()
+                      .argName("TRANSPORT")
+                      .desc("transport(NIO, EPOLL, IO_URING, AUTO), default: NIO")
+                      .build());
+        options.addOption(
+                Option.builder()
+                      .longOpt("listeners")
+                      .hasArg()
+                      .argName("COUNT")
+                      .desc("number of listeners bound with SO_REUSEPORT by native transports, default: 1")
+                      .build());
+        options.addOption(
+                Option.builder()
+                      .longOpt("boss-threads")
+                      .hasArg()
+                      .argName("COUNT")
+                      .desc("number of accepting threads, default: 1")
+                      .build());
+        options.addOption(
+                Option.builder()
+                      .longOpt("worker-threads")
+                      .hasArg()
+                      .argName("COUNT")
+                      .desc("number of event loop threads, default: 2 * cores")
+                      .build());
+        options.addOption(
+                Option.builder()
+                      .longOpt("wildcard-cert")
+                      .hasArg(false)
+                      .desc("generate wildcard certificates shared by sibling subdomains")
+                      .build());
         options.addOption(
                 Option.builder("k")
                       .longOpt("insecure")
@@ -164,6 +356,7 @@ public class NitmProxy {
                 throw new IllegalArgumentException("No cert file found: " + certFile);
             }
             config.setCertificate(readPemFromFile(certFile));
+            config.setCertificateFile(Paths.get(certFile));
         }
         if (commandLine.hasOption("key")) {
             String certKey = commandLine.getOptionValue("key");
@@ -171,6 +364,50 @@ public class NitmProxy {
                 throw new IllegalArgumentException("No key found: " + certKey);
             }
             config.setKey(readPrivateKeyFromFile(certKey));
+            config.setKeyFile(Paths.get(certKey));
+        }
+        if (commandLine.hasOption("watch-ca")) {
+            try {
+                config.setCaWatchIntervalSeconds(Long.parseLong(commandLine.getOptionValue("watch-ca")));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Not a legal interval: " + commandLine.getOptionValue("watch-ca"));
+            }
+        }
+        if (commandLine.hasOption("key-algorithm")) {
+            config.setKeyAlgorithm(KeyAlgorithm.of(commandLine.getOptionValue("key-algorithm")));
+        }
+        if (commandLine.hasOption("cert-store")) {
+            config.setCertStoreDir(Paths.get(commandLine.getOptionValue("cert-store")));
+        }
+        if (commandLine.hasOption("dns-servers")) {
+            config.setDnsServers(parseDnsServers(commandLine.getOptionValue("dns-servers")));
+        }
+        if (commandLine.hasOption("hot-hosts")) {
+            config.setHotHosts(readHosts(commandLine.getOptionValue("hot-hosts")));
+        }
+        if (commandLine.hasOption("passthrough-hosts")) {
+            config.setPassthroughHosts(readHosts(commandLine.getOptionValue("passthrough-hosts")));
+        }
+        if (commandLine.hasOption("server-context-cache-size")) {
+            config.setServerContextCacheSize(parseCount(commandLine, "server-context-cache-size"));
+        }
+        if (commandLine.hasOption("tls-engine")) {
+            config.setTlsEngine(TlsEngine.of(commandLine.getOptionValue("tls-engine")));
+        }
+        if (commandLine.hasOption("transport")) {
+            config.setTransport(Transport.of(commandLine.getOptionValue("transport")));
+        }
+        if (commandLine.hasOption("listeners")) {
+            config.setListeners(parseCount(commandLine, "listeners"));
+        }
+        if (commandLine.hasOption("boss-threads")) {
+            config.setBossThreads(parseCount(commandLine, "boss-threads"));
+        }
+        if (commandLine.hasOption("worker-threads")) {
+            config.setWorkerThreads(parseCount(commandLine, "worker-threads"));
+        }
+        if (commandLine.hasOption("wildcard-cert")) {
+            config.setWildcardCerts(true);
         }
         if (commandLine.hasOption("k")) {
             config.setInsecure(true);
@@ -179,4 +416,38 @@ public class NitmProxy {
         LOGGER.info("{}", config);
         return config;
     }
-}
\ No newline at end of file
+
+    private static List<InetSocketAddress> parseDnsServers(String servers) {
+        try {
+            return Splitter.on(',').trimResults().omitEmptyStrings().splitToList(servers).stream()
+                           .map(server -> HostAndPort.fromString(server).withDefaultPort(53))
+                           .map(server -> new InetSocketAddress(server.getHost(), server.getPort()))
+                           .collect(Collectors.toList());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Not legal name servers: " + servers, e);
+        }
+    }
+
+    private static int parseCount(CommandLine commandLine, String option) {
+        try {
+            return Integer.parseInt(commandLine.getOptionValue(option));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a legal count of " + option + ": "
+                                               + commandLine.getOptionValue(option));
+        }
+    }
+
+    /**
+     * Read the hosts from the file, the blank lines and the lines starting with {@code #} are ignored.
+     */
+    private static List<String> readHosts(String hostsFile) {
+        try {
+            return Files.readAllLines(Paths.get(hostsFile)).stream()
+                        .map(String::trim)
+                        .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                        .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Read hosts failed: " + hostsFile, e);
+        }
+    }
+}
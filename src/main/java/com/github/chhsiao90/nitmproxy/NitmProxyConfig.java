@@ -1,21 +1,30 @@
 package com.github.chhsiao90.nitmproxy;
 
+import com.github.chhsiao90.nitmproxy.enums.KeyAlgorithm;
 import com.github.chhsiao90.nitmproxy.enums.ProxyMode;
+import com.github.chhsiao90.nitmproxy.enums.TlsEngine;
+import com.github.chhsiao90.nitmproxy.enums.Transport;
 import com.github.chhsiao90.nitmproxy.handler.protocol.ProtocolDetector;
 import com.github.chhsiao90.nitmproxy.handler.protocol.http1.Http1ProtocolDetector;
 import com.github.chhsiao90.nitmproxy.listener.ForwardListener;
 import com.github.chhsiao90.nitmproxy.listener.HttpListener;
+import com.github.chhsiao90.nitmproxy.listener.TlsListener;
+import com.github.chhsiao90.nitmproxy.tls.CertCache;
 import com.github.chhsiao90.nitmproxy.tls.UnsafeAccessSupport;
 import com.google.common.base.Joiner;
+import io.netty.channel.WriteBufferWaterMark;
 import org.bouncycastle.asn1.pkcs.PrivateKeyInfo;
 import org.bouncycastle.cert.X509CertificateHolder;
 
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.TrustManager;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
 import java.security.Provider;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static com.github.chhsiao90.nitmproxy.tls.CertUtil.*;
 import static java.lang.String.*;
@@ -31,20 +40,72 @@ public class NitmProxyConfig {
 
     private String host;
     private int port;
+    private Transport transport;
+    private int listeners;
+    private int bossThreads;
+    private int workerThreads;
+    private int writeBufferLowWaterMark;
+    private int writeBufferHighWaterMark;
+
+    // DNS related
+    private List<InetSocketAddress> dnsServers;
+    private int dnsMinTtlSeconds;
+    private int dnsMaxTtlSeconds;
+    private int dnsNegativeTtlSeconds;
+    private long dnsQueryTimeoutMillis;
+    private int clientHostLookupThreads;
+    private long clientHostCacheSize;
+    private long clientHostTtlSeconds;
 
     // TLS related
     private X509CertificateHolder certificate;
     private PrivateKeyInfo key;
     private boolean insecure;
     private Provider sslProvider;
+    private TlsEngine tlsEngine;
     private List<String> tlsProtocols;
     private KeyManagerFactory clientKeyManagerFactory;
+    private KeyAlgorithm keyAlgorithm;
+    private boolean wildcardCerts;
+    private int keyPairPoolLowWatermark;
+    private int keyPairPoolHighWatermark;
+    private int certMintingThreads;
+    private int certMintingQueueSize;
+    private Path certStoreDir;
+    private Path certificateFile;
+    private Path keyFile;
+    private long caWatchIntervalSeconds;
+    private long certCacheSize;
+    private long certCacheMaxWeight;
+    private CertCache certCache;
+    private List<String> hotHosts;
+    private List<String> passthroughHosts;
+    private long alpnCacheSize;
+    private long alpnCacheTtlSeconds;
+    private int handshakeThreads;
+    private int handshakeQueueSize;
+    private long serverSessionCacheSize;
+    private long serverSessionTimeoutSeconds;
+    private long sessionTicketKeyRotationSeconds;
+    private int clientContextPoolSize;
+    private long clientSessionCacheSize;
+    private long clientSessionTimeoutSeconds;
+    private long verifiedChainCacheSize;
+    private long verifiedChainTtlSeconds;
+    private boolean adaptiveRecordSize;
+    private int smallRecordSize;
+    private long recordSizeBoostThreshold;
+    private long recordSizeIdleResetMillis;
+    private long serverContextCacheSize;
+    private int keyMaterialCacheSize;
+    private boolean sharedServerContext;
 
     private int maxContentLength;
 
     private NitmProxyStatusListener statusListener;
     private List<HttpListener> httpListeners;
     private List<ForwardListener> forwardListeners;
+    private List<TlsListener> tlsListeners;
 
     private TrustManager trustManager;
     private UnsafeAccessSupport unsafeAccessSupport = UnsafeAccessSupport.DENY;
@@ -57,14 +118,58 @@ public class NitmProxyConfig {
 
         host = "127.0.0.1";
         port = 8080;
+        transport = Transport.NIO;
+        listeners = 1;
+        bossThreads = 1;
+        workerThreads = 0;
+        writeBufferLowWaterMark = WriteBufferWaterMark.DEFAULT.low();
+        writeBufferHighWaterMark = WriteBufferWaterMark.DEFAULT.high();
+
+        dnsServers = new ArrayList<>();
+        dnsMinTtlSeconds = 0;
+        dnsMaxTtlSeconds = (int) TimeUnit.DAYS.toSeconds(1);
+        dnsNegativeTtlSeconds = 10;
+        dnsQueryTimeoutMillis = 5000;
+        clientHostLookupThreads = 2;
+        clientHostCacheSize = 10000;
+        clientHostTtlSeconds = 600;
 
         insecure = false;
         tlsProtocols = asList("TLSv1.3", "TLSv1.2");
+        tlsEngine = TlsEngine.JDK;
+        keyAlgorithm = KeyAlgorithm.RSA_2048;
+        keyPairPoolLowWatermark = 8;
+        keyPairPoolHighWatermark = 32;
+        certMintingThreads = Runtime.getRuntime().availableProcessors();
+        certMintingQueueSize = 1024;
+        certCacheSize = 2000;
+        hotHosts = new ArrayList<>();
+        passthroughHosts = new ArrayList<>();
+        alpnCacheSize = 10000;
+        alpnCacheTtlSeconds = 600;
+        handshakeThreads = Runtime.getRuntime().availableProcessors();
+        handshakeQueueSize = 1024;
+        serverSessionCacheSize = 20480;
+        serverSessionTimeoutSeconds = 86400;
+        sessionTicketKeyRotationSeconds = 3600;
+        clientContextPoolSize = 64;
+        clientSessionCacheSize = 20480;
+        clientSessionTimeoutSeconds = 86400;
+        verifiedChainCacheSize = 4096;
+        verifiedChainTtlSeconds = 3600;
+        adaptiveRecordSize = false;
+        smallRecordSize = 1400;
+        recordSizeBoostThreshold = 1024 * 1024;
+        recordSizeIdleResetMillis = 1000;
+        serverContextCacheSize = 2000;
+        keyMaterialCacheSize = 1024;
+        sharedServerContext = false;
 
         maxContentLength = 1024 * 1024;
 
         httpListeners = new ArrayList<>();
         forwardListeners = new ArrayList<>();
+        tlsListeners = new ArrayList<>();
         detectors = Collections.singletonList(Http1ProtocolDetector.INSTANCE);
     }
 
@@ -101,6 +206,187 @@ public class NitmProxyConfig {
         this.port = port;
     }
 
+    public Transport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Set the transport of the listening channel and the channels to the servers, the native transports of Linux
+     * save the system calls of NIO.
+     *
+     * @param transport the transport
+     */
+    public void setTransport(Transport transport) {
+        this.transport = transport;
+    }
+
+    public int getListeners() {
+        return listeners;
+    }
+
+    /**
+     * Set the number of the server channels bound to the same address with {@code SO_REUSEPORT}, so that the
+     * kernel balances the accepts between the boss threads. It only applies to the native transports, a single
+     * server channel is bound by NIO.
+     *
+     * @param listeners the number of the server channels
+     */
+    public void setListeners(int listeners) {
+        this.listeners = listeners;
+    }
+
+    public int getBossThreads() {
+        return bossThreads;
+    }
+
+    /**
+     * Set the number of the threads accepting the connections, it is raised to the number of the listeners.
+     *
+     * @param bossThreads the number of the threads
+     */
+    public void setBossThreads(int bossThreads) {
+        this.bossThreads = bossThreads;
+    }
+
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    /**
+     * Set the number of the event loops serving the connections.
+     *
+     * @param workerThreads the number of the threads, or {@code 0} for twice the number of the processors
+     */
+    public void setWorkerThreads(int workerThreads) {
+        this.workerThreads = workerThreads;
+    }
+
+    public int getWriteBufferLowWaterMark() {
+        return writeBufferLowWaterMark;
+    }
+
+    /**
+     * Set the pending bytes of a channel below which the reading of its peer channel is resumed.
+     *
+     * @param writeBufferLowWaterMark the low water mark in bytes
+     */
+    public void setWriteBufferLowWaterMark(int writeBufferLowWaterMark) {
+        this.writeBufferLowWaterMark = writeBufferLowWaterMark;
+    }
+
+    public int getWriteBufferHighWaterMark() {
+        return writeBufferHighWaterMark;
+    }
+
+    /**
+     * Set the pending bytes of a channel above which the reading of its peer channel is paused.
+     *
+     * @param writeBufferHighWaterMark the high water mark in bytes
+     */
+    public void setWriteBufferHighWaterMark(int writeBufferHighWaterMark) {
+        this.writeBufferHighWaterMark = writeBufferHighWaterMark;
+    }
+
+    /**
+     * Get the water marks of the channels.
+     *
+     * @return the water marks
+     * @throws IllegalArgumentException if the low water mark was greater than the high water mark
+     */
+    public WriteBufferWaterMark getWriteBufferWaterMark() {
+        return new WriteBufferWaterMark(writeBufferLowWaterMark, writeBufferHighWaterMark);
+    }
+
+    public List<InetSocketAddress> getDnsServers() {
+        return dnsServers;
+    }
+
+    /**
+     * Set the name servers queried in order for the hosts of the servers.
+     *
+     * @param dnsServers the name servers, or empty for the name servers of the system
+     */
+    public void setDnsServers(List<InetSocketAddress> dnsServers) {
+        this.dnsServers = dnsServers;
+    }
+
+    public int getDnsMinTtlSeconds() {
+        return dnsMinTtlSeconds;
+    }
+
+    /**
+     * Set the minimum time to cache a resolved address, which overrides the shorter TTL of the answer.
+     *
+     * @param dnsMinTtlSeconds the minimum TTL in seconds
+     */
+    public void setDnsMinTtlSeconds(int dnsMinTtlSeconds) {
+        this.dnsMinTtlSeconds = dnsMinTtlSeconds;
+    }
+
+    public int getDnsMaxTtlSeconds() {
+        return dnsMaxTtlSeconds;
+    }
+
+    /**
+     * Set the maximum time to cache a resolved address, which overrides the longer TTL of the answer.
+     *
+     * @param dnsMaxTtlSeconds the maximum TTL in seconds
+     */
+    public void setDnsMaxTtlSeconds(int dnsMaxTtlSeconds) {
+        this.dnsMaxTtlSeconds = dnsMaxTtlSeconds;
+    }
+
+    public int getDnsNegativeTtlSeconds() {
+        return dnsNegativeTtlSeconds;
+    }
+
+    /**
+     * Set the time to cache a failed resolve, so that an unknown host is not queried by every connection.
+     *
+     * @param dnsNegativeTtlSeconds the negative TTL in seconds, or {@code 0} to not cache the failures
+     */
+    public void setDnsNegativeTtlSeconds(int dnsNegativeTtlSeconds) {
+        this.dnsNegativeTtlSeconds = dnsNegativeTtlSeconds;
+    }
+
+    public long getDnsQueryTimeoutMillis() {
+        return dnsQueryTimeoutMillis;
+    }
+
+    public void setDnsQueryTimeoutMillis(long dnsQueryTimeoutMillis) {
+        this.dnsQueryTimeoutMillis = dnsQueryTimeoutMillis;
+    }
+
+    public int getClientHostLookupThreads() {
+        return clientHostLookupThreads;
+    }
+
+    /**
+     * Set the number of the threads looking up the host names of the clients, which are only started by the
+     * listeners asking for the names.
+     *
+     * @param clientHostLookupThreads the number of the threads
+     */
+    public void setClientHostLookupThreads(int clientHostLookupThreads) {
+        this.clientHostLookupThreads = clientHostLookupThreads;
+    }
+
+    public long getClientHostCacheSize() {
+        return clientHostCacheSize;
+    }
+
+    public void setClientHostCacheSize(long clientHostCacheSize) {
+        this.clientHostCacheSize = clientHostCacheSize;
+    }
+
+    public long getClientHostTtlSeconds() {
+        return clientHostTtlSeconds;
+    }
+
+    public void setClientHostTtlSeconds(long clientHostTtlSeconds) {
+        this.clientHostTtlSeconds = clientHostTtlSeconds;
+    }
+
     public X509CertificateHolder getCertificate() {
         return certificate;
     }
@@ -133,6 +419,14 @@ public class NitmProxyConfig {
         this.sslProvider = sslProvider;
     }
 
+    public TlsEngine getTlsEngine() {
+        return tlsEngine;
+    }
+
+    public void setTlsEngine(TlsEngine tlsEngine) {
+        this.tlsEngine = tlsEngine;
+    }
+
     public List<String> getTlsProtocols() {
         return tlsProtocols;
     }
@@ -149,6 +443,384 @@ public class NitmProxyConfig {
         this.clientKeyManagerFactory = clientKeyManagerFactory;
     }
 
+    public KeyAlgorithm getKeyAlgorithm() {
+        return keyAlgorithm;
+    }
+
+    public void setKeyAlgorithm(KeyAlgorithm keyAlgorithm) {
+        this.keyAlgorithm = keyAlgorithm;
+    }
+
+    public boolean isWildcardCerts() {
+        return wildcardCerts;
+    }
+
+    public void setWildcardCerts(boolean wildcardCerts) {
+        this.wildcardCerts = wildcardCerts;
+    }
+
+    public int getKeyPairPoolLowWatermark() {
+        return keyPairPoolLowWatermark;
+    }
+
+    public void setKeyPairPoolLowWatermark(int keyPairPoolLowWatermark) {
+        this.keyPairPoolLowWatermark = keyPairPoolLowWatermark;
+    }
+
+    public int getKeyPairPoolHighWatermark() {
+        return keyPairPoolHighWatermark;
+    }
+
+    public void setKeyPairPoolHighWatermark(int keyPairPoolHighWatermark) {
+        this.keyPairPoolHighWatermark = keyPairPoolHighWatermark;
+    }
+
+    public int getCertMintingThreads() {
+        return certMintingThreads;
+    }
+
+    public void setCertMintingThreads(int certMintingThreads) {
+        this.certMintingThreads = certMintingThreads;
+    }
+
+    public int getCertMintingQueueSize() {
+        return certMintingQueueSize;
+    }
+
+    public void setCertMintingQueueSize(int certMintingQueueSize) {
+        this.certMintingQueueSize = certMintingQueueSize;
+    }
+
+    public Path getCertStoreDir() {
+        return certStoreDir;
+    }
+
+    public void setCertStoreDir(Path certStoreDir) {
+        this.certStoreDir = certStoreDir;
+    }
+
+    public Path getCertificateFile() {
+        return certificateFile;
+    }
+
+    /**
+     * Set the file of the CA certificate, which is watched for the CA rotation along with the key file.
+     *
+     * @param certificateFile the certificate file
+     */
+    public void setCertificateFile(Path certificateFile) {
+        this.certificateFile = certificateFile;
+    }
+
+    public Path getKeyFile() {
+        return keyFile;
+    }
+
+    /**
+     * Set the file of the CA key, which is watched for the CA rotation along with the certificate file.
+     *
+     * @param keyFile the key file
+     */
+    public void setKeyFile(Path keyFile) {
+        this.keyFile = keyFile;
+    }
+
+    public long getCaWatchIntervalSeconds() {
+        return caWatchIntervalSeconds;
+    }
+
+    /**
+     * Set the interval to poll the certificate and the key files of the CA, the CA is rotated once they were
+     * changed.
+     *
+     * @param caWatchIntervalSeconds the interval in seconds, or {@code 0} to not watch the files
+     */
+    public void setCaWatchIntervalSeconds(long caWatchIntervalSeconds) {
+        this.caWatchIntervalSeconds = caWatchIntervalSeconds;
+    }
+
+    public long getCertCacheSize() {
+        return certCacheSize;
+    }
+
+    public void setCertCacheSize(long certCacheSize) {
+        this.certCacheSize = certCacheSize;
+    }
+
+    public long getCertCacheMaxWeight() {
+        return certCacheMaxWeight;
+    }
+
+    /**
+     * Bound the certificate cache by the approximate memory weight in bytes instead of the number of the
+     * certificates.
+     *
+     * @param certCacheMaxWeight the maximum weight in bytes, or {@code 0} to bound by the number
+     */
+    public void setCertCacheMaxWeight(long certCacheMaxWeight) {
+        this.certCacheMaxWeight = certCacheMaxWeight;
+    }
+
+    public CertCache getCertCache() {
+        return certCache;
+    }
+
+    public void setCertCache(CertCache certCache) {
+        this.certCache = certCache;
+    }
+
+    public List<String> getHotHosts() {
+        return hotHosts;
+    }
+
+    public void setHotHosts(List<String> hotHosts) {
+        this.hotHosts = hotHosts;
+    }
+
+    public List<String> getPassthroughHosts() {
+        return passthroughHosts;
+    }
+
+    /**
+     * Set the patterns of the hosts which are tunneled without interception, see
+     * {@link com.github.chhsiao90.nitmproxy.tls.HostMatcher} for the supported patterns.
+     *
+     * @param passthroughHosts the host patterns
+     */
+    public void setPassthroughHosts(List<String> passthroughHosts) {
+        this.passthroughHosts = passthroughHosts;
+    }
+
+    public long getAlpnCacheSize() {
+        return alpnCacheSize;
+    }
+
+    public void setAlpnCacheSize(long alpnCacheSize) {
+        this.alpnCacheSize = alpnCacheSize;
+    }
+
+    public long getAlpnCacheTtlSeconds() {
+        return alpnCacheTtlSeconds;
+    }
+
+    /**
+     * Set the TTL of the ALPN protocols selected by the servers, the client handshakes to the known servers
+     * are then completed without waiting for the server handshakes.
+     *
+     * @param alpnCacheTtlSeconds the TTL in seconds, or {@code 0} to always wait for the server handshakes
+     */
+    public void setAlpnCacheTtlSeconds(long alpnCacheTtlSeconds) {
+        this.alpnCacheTtlSeconds = alpnCacheTtlSeconds;
+    }
+
+    public int getHandshakeThreads() {
+        return handshakeThreads;
+    }
+
+    /**
+     * Set the number of the threads running the delegated tasks of the TLS handshakes.
+     *
+     * @param handshakeThreads the number of the threads, or {@code 0} to run the tasks in the event loops
+     */
+    public void setHandshakeThreads(int handshakeThreads) {
+        this.handshakeThreads = handshakeThreads;
+    }
+
+    public int getHandshakeQueueSize() {
+        return handshakeQueueSize;
+    }
+
+    public void setHandshakeQueueSize(int handshakeQueueSize) {
+        this.handshakeQueueSize = handshakeQueueSize;
+    }
+
+    public long getServerSessionCacheSize() {
+        return serverSessionCacheSize;
+    }
+
+    /**
+     * Set the size of the session cache of each server context.
+     *
+     * @param serverSessionCacheSize the size, or {@code 0} to use the default of the tls engine
+     */
+    public void setServerSessionCacheSize(long serverSessionCacheSize) {
+        this.serverSessionCacheSize = serverSessionCacheSize;
+    }
+
+    public long getServerSessionTimeoutSeconds() {
+        return serverSessionTimeoutSeconds;
+    }
+
+    public void setServerSessionTimeoutSeconds(long serverSessionTimeoutSeconds) {
+        this.serverSessionTimeoutSeconds = serverSessionTimeoutSeconds;
+    }
+
+    public long getSessionTicketKeyRotationSeconds() {
+        return sessionTicketKeyRotationSeconds;
+    }
+
+    /**
+     * Set the rotation interval of the session ticket keys shared by the server contexts.
+     *
+     * @param sessionTicketKeyRotationSeconds the interval in seconds, or {@code 0} to never rotate
+     */
+    public void setSessionTicketKeyRotationSeconds(long sessionTicketKeyRotationSeconds) {
+        this.sessionTicketKeyRotationSeconds = sessionTicketKeyRotationSeconds;
+    }
+
+    public int getClientContextPoolSize() {
+        return clientContextPoolSize;
+    }
+
+    /**
+     * Set the maximum number of the client contexts, each combination of the trust configuration and the ALPN
+     * protocols has its own context.
+     *
+     * @param clientContextPoolSize the maximum number of the client contexts
+     */
+    public void setClientContextPoolSize(int clientContextPoolSize) {
+        this.clientContextPoolSize = clientContextPoolSize;
+    }
+
+    public long getClientSessionCacheSize() {
+        return clientSessionCacheSize;
+    }
+
+    /**
+     * Set the size of the session cache of each client context, which holds the sessions to the servers.
+     *
+     * @param clientSessionCacheSize the size, or {@code 0} to use the default of the tls engine
+     */
+    public void setClientSessionCacheSize(long clientSessionCacheSize) {
+        this.clientSessionCacheSize = clientSessionCacheSize;
+    }
+
+    public long getClientSessionTimeoutSeconds() {
+        return clientSessionTimeoutSeconds;
+    }
+
+    public void setClientSessionTimeoutSeconds(long clientSessionTimeoutSeconds) {
+        this.clientSessionTimeoutSeconds = clientSessionTimeoutSeconds;
+    }
+
+    public long getVerifiedChainCacheSize() {
+        return verifiedChainCacheSize;
+    }
+
+    public void setVerifiedChainCacheSize(long verifiedChainCacheSize) {
+        this.verifiedChainCacheSize = verifiedChainCacheSize;
+    }
+
+    public long getVerifiedChainTtlSeconds() {
+        return verifiedChainTtlSeconds;
+    }
+
+    /**
+     * Set the TTL of the verified server certificate chains, the connections to the same server skip the path
+     * building within the TTL.
+     *
+     * @param verifiedChainTtlSeconds the TTL in seconds, or {@code 0} to always verify the chains
+     */
+    public void setVerifiedChainTtlSeconds(long verifiedChainTtlSeconds) {
+        this.verifiedChainTtlSeconds = verifiedChainTtlSeconds;
+    }
+
+    public boolean isAdaptiveRecordSize() {
+        return adaptiveRecordSize;
+    }
+
+    /**
+     * Enable the adaptive TLS record sizing of the intercepted connections, which starts each connection with
+     * small records and grows them to the maximum size after the boost threshold.
+     *
+     * @param adaptiveRecordSize {@code true} to enable the adaptive record sizing
+     */
+    public void setAdaptiveRecordSize(boolean adaptiveRecordSize) {
+        this.adaptiveRecordSize = adaptiveRecordSize;
+    }
+
+    public int getSmallRecordSize() {
+        return smallRecordSize;
+    }
+
+    /**
+     * Set the size of the plaintext of the small records, which should fit in one TCP segment.
+     *
+     * @param smallRecordSize the size in bytes
+     */
+    public void setSmallRecordSize(int smallRecordSize) {
+        this.smallRecordSize = smallRecordSize;
+    }
+
+    public long getRecordSizeBoostThreshold() {
+        return recordSizeBoostThreshold;
+    }
+
+    /**
+     * Set the number of the bytes written before the records grow to the maximum size.
+     *
+     * @param recordSizeBoostThreshold the threshold in bytes
+     */
+    public void setRecordSizeBoostThreshold(long recordSizeBoostThreshold) {
+        this.recordSizeBoostThreshold = recordSizeBoostThreshold;
+    }
+
+    public long getRecordSizeIdleResetMillis() {
+        return recordSizeIdleResetMillis;
+    }
+
+    /**
+     * Set the idle time after which the records shrink to the small size again.
+     *
+     * @param recordSizeIdleResetMillis the idle time in milliseconds
+     */
+    public void setRecordSizeIdleResetMillis(long recordSizeIdleResetMillis) {
+        this.recordSizeIdleResetMillis = recordSizeIdleResetMillis;
+    }
+
+    public long getServerContextCacheSize() {
+        return serverContextCacheSize;
+    }
+
+    /**
+     * Set the maximum number of the cached server contexts, each holds the native context of the OpenSSL engines
+     * until the connections using it were closed.
+     *
+     * @param serverContextCacheSize the maximum number of the server contexts
+     */
+    public void setServerContextCacheSize(long serverContextCacheSize) {
+        this.serverContextCacheSize = serverContextCacheSize;
+    }
+
+    public int getKeyMaterialCacheSize() {
+        return keyMaterialCacheSize;
+    }
+
+    /**
+     * Set the maximum number of the native key materials of the minted certificates cached by each OpenSSL
+     * server context, the key materials beyond the limit are encoded by every handshake.
+     *
+     * @param keyMaterialCacheSize the maximum number of the key materials
+     */
+    public void setKeyMaterialCacheSize(int keyMaterialCacheSize) {
+        this.keyMaterialCacheSize = keyMaterialCacheSize;
+    }
+
+    public boolean isSharedServerContext() {
+        return sharedServerContext;
+    }
+
+    /**
+     * Share the server contexts by all the hosts, the certificate is then selected by the SNI during the
+     * handshake, instead of building a context for each host. The native key materials are cached by the
+     * shared contexts, up to {@link #getKeyMaterialCacheSize()} certificates.
+     *
+     * @param sharedServerContext {@code true} to share the server contexts
+     */
+    public void setSharedServerContext(boolean sharedServerContext) {
+        this.sharedServerContext = sharedServerContext;
+    }
+
     public TrustManager getTrustManager() {
         return trustManager;
     }
@@ -189,6 +861,19 @@ public class NitmProxyConfig {
         this.forwardListeners = forwardListeners;
     }
 
+    public List<TlsListener> getTlsListeners() {
+        return tlsListeners;
+    }
+
+    /**
+     * Set the listeners of the TLS connections, which are told the duration of each handshake phase.
+     *
+     * @param tlsListeners the listeners
+     */
+    public void setTlsListeners(List<TlsListener> tlsListeners) {
+        this.tlsListeners = tlsListeners;
+    }
+
     public UnsafeAccessSupport getUnsafeAccessSupport() {
         return unsafeAccessSupport;
     }
@@ -211,10 +896,46 @@ public class NitmProxyConfig {
                 format("proxyMode=%s", proxyMode),
                 format("host=%s", host),
                 format("port=%s", port),
+                format("transport=%s", transport),
+                format("listeners=%d", listeners),
+                format("bossThreads=%d", bossThreads),
+                format("workerThreads=%d", workerThreads),
+                format("writeBufferWaterMark=%d-%d", writeBufferLowWaterMark, writeBufferHighWaterMark),
+                format("dns=servers=%s, ttl=%d-%ds, negativeTtl=%ds, timeout=%dms",
+                        dnsServers.isEmpty() ? "system" : dnsServers, dnsMinTtlSeconds, dnsMaxTtlSeconds,
+                        dnsNegativeTtlSeconds, dnsQueryTimeoutMillis),
+                format("clientHost=threads=%d, size=%d, ttl=%ds", clientHostLookupThreads, clientHostCacheSize,
+                        clientHostTtlSeconds),
                 format("insecure=%b", insecure),
                 format("tlsProtocols=%s", tlsProtocols),
                 format("sslProvider=%s", sslProvider),
+                format("tlsEngine=%s", tlsEngine),
                 format("keyManagerFactory=%b", clientKeyManagerFactory),
+                format("keyAlgorithm=%s", keyAlgorithm),
+                format("wildcardCerts=%b", wildcardCerts),
+                format("keyPairPool=%d-%d", keyPairPoolLowWatermark, keyPairPoolHighWatermark),
+                format("certMintingThreads=%d", certMintingThreads),
+                format("certMintingQueueSize=%d", certMintingQueueSize),
+                format("certStoreDir=%s", certStoreDir),
+                format("caWatch=%s, interval=%ds", certificateFile, caWatchIntervalSeconds),
+                format("certCache=%s", certCache != null
+                        ? certCache.getClass().getSimpleName()
+                        : format("size=%d, weight=%d", certCacheSize, certCacheMaxWeight)),
+                format("hotHosts=%d", hotHosts.size()),
+                format("passthroughHosts=%d", passthroughHosts.size()),
+                format("alpnCache=size=%d, ttl=%ds", alpnCacheSize, alpnCacheTtlSeconds),
+                format("handshakeThreads=%d", handshakeThreads),
+                format("handshakeQueueSize=%d", handshakeQueueSize),
+                format("serverSessionCache=size=%d, timeout=%ds", serverSessionCacheSize, serverSessionTimeoutSeconds),
+                format("sessionTicketKeyRotation=%ds", sessionTicketKeyRotationSeconds),
+                format("clientSessionCache=size=%d, timeout=%ds, contexts=%d", clientSessionCacheSize,
+                        clientSessionTimeoutSeconds, clientContextPoolSize),
+                format("verifiedChainCache=size=%d, ttl=%ds", verifiedChainCacheSize, verifiedChainTtlSeconds),
+                format("adaptiveRecordSize=%b, small=%d, threshold=%d, idleReset=%dms", adaptiveRecordSize,
+                        smallRecordSize, recordSizeBoostThreshold, recordSizeIdleResetMillis),
+                format("serverContextCacheSize=%d", serverContextCacheSize),
+                format("keyMaterialCacheSize=%d", keyMaterialCacheSize),
+                format("sharedServerContext=%b", sharedServerContext),
                 format("maxContentLength=%d", maxContentLength));
         return format("NitmProxyConfig%n%s", Joiner.on(lineSeparator()).join(properties));
     }
@@ -25,14 +25,18 @@ public class NitmProxyInitializer extends ChannelInitializer<Channel> {
     @Override
     protected void initChannel(Channel channel) {
         InetSocketAddress address = (InetSocketAddress) channel.remoteAddress();
-        Address clientAddress = new Address(address.getHostName(), address.getPort());
+        // The host string of an accepted address is the raw IP, which never triggers a reverse lookup
+        Address clientAddress = new Address(address.getHostString(), address.getPort());
         ConnectionContext context = new ConnectionContext(master)
                 .withClientAddr(clientAddress)
                 .withClientChannel(channel);
 
         LOGGER.debug("{} : connection init", context);
+        master.connectionStats().register(channel);
 
+        channel.config().setWriteBufferWaterMark(master.config().getWriteBufferWaterMark());
         channel.pipeline().replace(this, null, context.proxyHandler());
+        channel.pipeline().addFirst(context.provider().backpressureHandler());
         channel.pipeline().addLast(context.provider().toServerHandler());
     }
 }
@@ -1,10 +1,20 @@
 package com.github.chhsiao90.nitmproxy;
 
 import com.github.chhsiao90.nitmproxy.channel.BackendChannelBootstrap;
+import com.github.chhsiao90.nitmproxy.channel.ClientHostResolver;
+import com.github.chhsiao90.nitmproxy.channel.EventLoopConnectionStats;
+import com.github.chhsiao90.nitmproxy.enums.HandshakePhase;
 import com.github.chhsiao90.nitmproxy.listener.ForwardListener;
 import com.github.chhsiao90.nitmproxy.listener.HttpListener;
 import com.github.chhsiao90.nitmproxy.listener.NitmProxyListenerManager;
+import com.github.chhsiao90.nitmproxy.listener.TlsListener;
+import com.github.chhsiao90.nitmproxy.tls.AlpnCache;
 import com.github.chhsiao90.nitmproxy.tls.CertManager;
+import com.github.chhsiao90.nitmproxy.tls.ClientSslContextPool;
+import com.github.chhsiao90.nitmproxy.tls.HandshakeExecutor;
+import com.github.chhsiao90.nitmproxy.tls.HandshakeLatency;
+import com.github.chhsiao90.nitmproxy.tls.HostMatcher;
+import com.github.chhsiao90.nitmproxy.tls.ServerSslContextCache;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
@@ -15,14 +25,31 @@ public class NitmProxyMaster {
     private BackendChannelBootstrap backendChannelBootstrap;
     private NitmProxyListenerManager nitmProxyListenerManager;
     private CertManager certManager;
+    private ServerSslContextCache serverSslContextCache;
+    private ClientSslContextPool clientSslContextPool;
+    private AlpnCache alpnCache;
+    private HandshakeExecutor handshakeExecutor;
+    private HostMatcher passthroughHosts;
+    private HandshakeLatency handshakeLatency;
+    private EventLoopConnectionStats connectionStats;
+    private ClientHostResolver clientHostResolver;
 
     public NitmProxyMaster(NitmProxyConfig config,
                            BackendChannelBootstrap backendChannelBootstrap) {
         this.config = config;
         this.backendChannelBootstrap = backendChannelBootstrap;
         this.nitmProxyListenerManager = new NitmProxyListenerManager(
-                config.getHttpListeners(), config.getForwardListeners());
+                config.getHttpListeners(), config.getForwardListeners(), config.getTlsListeners());
         this.certManager = new CertManager(config);
+        this.serverSslContextCache = new ServerSslContextCache(config, certManager);
+        this.clientSslContextPool = new ClientSslContextPool(config);
+        this.alpnCache = new AlpnCache(config.getAlpnCacheSize(), config.getAlpnCacheTtlSeconds());
+        this.handshakeExecutor = new HandshakeExecutor(config.getHandshakeThreads(), config.getHandshakeQueueSize());
+        this.passthroughHosts = HostMatcher.compile(config.getPassthroughHosts());
+        this.handshakeLatency = new HandshakeLatency();
+        this.connectionStats = new EventLoopConnectionStats();
+        this.clientHostResolver = new ClientHostResolver(config.getClientHostLookupThreads(),
+                config.getClientHostCacheSize(), config.getClientHostTtlSeconds());
     }
 
     public NitmProxyConfig config() {
@@ -41,10 +68,68 @@ public class NitmProxyMaster {
         return nitmProxyListenerManager;
     }
 
+    public TlsListener tlsEventListener() {
+        return nitmProxyListenerManager;
+    }
+
     public CertManager certManager() {
         return certManager;
     }
 
+    public ServerSslContextCache serverSslContextCache() {
+        return serverSslContextCache;
+    }
+
+    public ClientSslContextPool clientSslContextPool() {
+        return clientSslContextPool;
+    }
+
+    public AlpnCache alpnCache() {
+        return alpnCache;
+    }
+
+    public HandshakeExecutor handshakeExecutor() {
+        return handshakeExecutor;
+    }
+
+    public HostMatcher passthroughHosts() {
+        return passthroughHosts;
+    }
+
+    /**
+     * Get the latency histograms of the handshake phases of all the connections.
+     *
+     * @return the handshake latency
+     */
+    public HandshakeLatency handshakeLatency() {
+        return handshakeLatency;
+    }
+
+    public ClientHostResolver clientHostResolver() {
+        return clientHostResolver;
+    }
+
+    /**
+     * Get the distribution of the client connections across the event loops.
+     *
+     * @return the connection stats
+     */
+    public EventLoopConnectionStats connectionStats() {
+        return connectionStats;
+    }
+
+    /**
+     * Record the duration of a handshake phase of the connection, and emit it to the listeners.
+     *
+     * @param connectionContext the connection context
+     * @param phase the phase
+     * @param nanos the duration in nanoseconds
+     */
+    public void onHandshakePhase(ConnectionContext connectionContext, HandshakePhase phase, long nanos) {
+        handshakeLatency.record(phase, nanos);
+        nitmProxyListenerManager.onHandshakePhase(connectionContext, phase, nanos);
+    }
+
     public ChannelFuture connect(ChannelHandlerContext fromCtx, ConnectionContext connectionContext,
                                  ChannelHandler handler) {
         return backendChannelBootstrap.connect(fromCtx, this, connectionContext, handler);
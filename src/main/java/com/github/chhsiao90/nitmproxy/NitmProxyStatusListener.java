@@ -1,5 +1,7 @@
 package com.github.chhsiao90.nitmproxy;
 
+import com.github.chhsiao90.nitmproxy.tls.CertPrewarmer;
+
 public interface NitmProxyStatusListener {
 
     default void onStart() {
@@ -7,4 +9,12 @@ public interface NitmProxyStatusListener {
 
     default void onStop() {
     }
+
+    /**
+     * Called when the certificates of the hot hosts were pre-warmed.
+     *
+     * @param result the result of the pre-warming
+     */
+    default void onCertsPrewarmed(CertPrewarmer.Result result) {
+    }
 }
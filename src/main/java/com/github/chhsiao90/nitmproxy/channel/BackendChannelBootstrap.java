@@ -4,20 +4,50 @@ import com.github.chhsiao90.nitmproxy.ConnectionContext;
 import com.github.chhsiao90.nitmproxy.NitmProxyMaster;
 
 import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.resolver.AddressResolverGroup;
 
 public class BackendChannelBootstrap {
+
+    private final Class<? extends Channel> channelClass;
+    private final AddressResolverGroup<?> resolver;
+
+    /**
+     * Create the bootstrap whose channels are of the same class as the client channels, which only works if
+     * the client channels were accepted as socket channels.
+     */
+    public BackendChannelBootstrap() {
+        this.channelClass = null;
+        this.resolver = null;
+    }
+
+    /**
+     * Create the bootstrap whose channels are the socket channels of the transport, which must be the transport
+     * of the event loops of the client channels.
+     *
+     * @param transport the transport
+     * @param resolver the resolver of the server hosts, or {@code null} for the default resolver of netty
+     */
+    public BackendChannelBootstrap(ChannelTransport transport, AddressResolverGroup<?> resolver) {
+        this.channelClass = transport.socketChannelClass();
+        this.resolver = resolver;
+    }
+
     public ChannelFuture connect(ChannelHandlerContext fromCtx,
                                  NitmProxyMaster master,
                                  ConnectionContext connectionContext,
                                  ChannelHandler handler) {
-        return new Bootstrap()
+        Bootstrap bootstrap = new Bootstrap()
                 .group(fromCtx.channel().eventLoop())
-                .channel(fromCtx.channel().getClass())
-                .handler(handler)
-                .connect(connectionContext.getServerAddr().getHost(),
+                .channel(channelClass != null ? channelClass : fromCtx.channel().getClass())
+                .handler(handler);
+        if (resolver != null) {
+            bootstrap.resolver(resolver);
+        }
+        return bootstrap.connect(connectionContext.getServerAddr().getHost(),
                          connectionContext.getServerAddr().getPort());
     }
 }
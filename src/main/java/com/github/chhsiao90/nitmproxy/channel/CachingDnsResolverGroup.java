@@ -0,0 +1,68 @@
+package com.github.chhsiao90.nitmproxy.channel;
+
+import com.github.chhsiao90.nitmproxy.NitmProxyConfig;
+import io.netty.resolver.dns.DefaultDnsCache;
+import io.netty.resolver.dns.DefaultDnsCnameCache;
+import io.netty.resolver.dns.DnsAddressResolverGroup;
+import io.netty.resolver.dns.DnsCache;
+import io.netty.resolver.dns.DnsCnameCache;
+import io.netty.resolver.dns.DnsNameResolverBuilder;
+import io.netty.resolver.dns.DnsServerAddressStreamProvider;
+import io.netty.resolver.dns.DnsServerAddressStreamProviders;
+import io.netty.resolver.dns.SequentialDnsServerAddressStreamProvider;
+
+/**
+ * Non-blocking DNS resolvers of the connections to the servers, instead of the default resolver of netty, which
+ * blocks the event loop with {@link java.net.InetAddress#getByName(String)}.
+ *
+ * <p>The group creates one resolver for each event loop, but all of them share the same caches, so that a host
+ * resolved by a loop is a hit for the other loops. The answers are cached by their TTL, and the failures are
+ * cached by the negative TTL. The concurrent resolves of the same host are coalesced into one query.</p>
+ */
+public class CachingDnsResolverGroup extends DnsAddressResolverGroup {
+
+    private final DnsCache resolveCache;
+    private final DnsCnameCache cnameCache;
+
+    public CachingDnsResolverGroup(NitmProxyConfig config, ChannelTransport transport) {
+        this(config, transport,
+                new DefaultDnsCache(config.getDnsMinTtlSeconds(), config.getDnsMaxTtlSeconds(),
+                        config.getDnsNegativeTtlSeconds()),
+                new DefaultDnsCnameCache(config.getDnsMinTtlSeconds(), config.getDnsMaxTtlSeconds()));
+    }
+
+    private CachingDnsResolverGroup(NitmProxyConfig config, ChannelTransport transport, DnsCache resolveCache,
+                                    DnsCnameCache cnameCache) {
+        super(new DnsNameResolverBuilder()
+                .channelType(transport.datagramChannelClass())
+                .resolveCache(resolveCache)
+                .cnameCache(cnameCache)
+                .queryTimeoutMillis(config.getDnsQueryTimeoutMillis())
+                .nameServerProvider(nameServerProvider(config)));
+        this.resolveCache = resolveCache;
+        this.cnameCache = cnameCache;
+    }
+
+    /**
+     * Get the cache of the resolved addresses shared by the resolvers of the group.
+     *
+     * @return the resolve cache
+     */
+    public DnsCache resolveCache() {
+        return resolveCache;
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        resolveCache.clear();
+        cnameCache.clear();
+    }
+
+    private static DnsServerAddressStreamProvider nameServerProvider(NitmProxyConfig config) {
+        if (config.getDnsServers().isEmpty()) {
+            return DnsServerAddressStreamProviders.platformDefault();
+        }
+        return new SequentialDnsServerAddressStreamProvider(config.getDnsServers());
+    }
+}
@@ -0,0 +1,173 @@
+package com.github.chhsiao90.nitmproxy.channel;
+
+import com.github.chhsiao90.nitmproxy.enums.Transport;
+import com.github.chhsiao90.nitmproxy.exception.NitmProxyException;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollDatagramChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.DatagramChannel;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+import java.lang.reflect.Constructor;
+import java.util.function.IntFunction;
+
+import static java.lang.String.*;
+
+/**
+ * The event loop group and the channel classes of a {@link Transport}. The channels of a group must be of the
+ * same transport, so the channels to the servers are created by {@link #socketChannelClass()} of the transport.
+ *
+ * <p>The io_uring transport is still an incubator of netty, which is not a dependency of nitmproxy, so it is
+ * loaded by reflection once it was added to the class path.</p>
+ */
+public class ChannelTransport {
+
+    public static final ChannelTransport NIO = new ChannelTransport(Transport.NIO, NioEventLoopGroup::new,
+            NioServerSocketChannel.class, NioSocketChannel.class, NioDatagramChannel.class, null);
+
+    private static final String IO_URING_PACKAGE = "io.netty.incubator.channel.uring.";
+
+    private final Transport transport;
+    private final IntFunction<EventLoopGroup> groupFactory;
+    private final Class<? extends ServerChannel> serverChannelClass;
+    private final Class<? extends Channel> socketChannelClass;
+    private final Class<? extends DatagramChannel> datagramChannelClass;
+    private final ChannelOption<Boolean> reusePortOption;
+
+    private ChannelTransport(Transport transport, IntFunction<EventLoopGroup> groupFactory,
+                             Class<? extends ServerChannel> serverChannelClass,
+                             Class<? extends Channel> socketChannelClass,
+                             Class<? extends DatagramChannel> datagramChannelClass,
+                             ChannelOption<Boolean> reusePortOption) {
+        this.transport = transport;
+        this.groupFactory = groupFactory;
+        this.serverChannelClass = serverChannelClass;
+        this.socketChannelClass = socketChannelClass;
+        this.datagramChannelClass = datagramChannelClass;
+        this.reusePortOption = reusePortOption;
+    }
+
+    /**
+     * Resolve the transport.
+     *
+     * @param transport the transport
+     * @return the channel transport
+     * @throws NitmProxyException if the transport was not available
+     */
+    public static ChannelTransport of(Transport transport) {
+        switch (transport) {
+            case NIO:
+                return NIO;
+            case EPOLL:
+                if (!Epoll.isAvailable()) {
+                    throw new NitmProxyException("epoll is not available", Epoll.unavailabilityCause());
+                }
+                return epoll();
+            case IO_URING:
+                return ioUring();
+            default:
+                try {
+                    return ioUring();
+                } catch (NitmProxyException e) {
+                    return Epoll.isAvailable() ? epoll() : NIO;
+                }
+        }
+    }
+
+    /**
+     * Create a new event loop group of the transport.
+     *
+     * @param threads the number of the threads, or {@code 0} for the default of netty
+     * @return the event loop group
+     */
+    public EventLoopGroup newEventLoopGroup(int threads) {
+        return groupFactory.apply(threads);
+    }
+
+    public Transport transport() {
+        return transport;
+    }
+
+    public Class<? extends ServerChannel> serverChannelClass() {
+        return serverChannelClass;
+    }
+
+    public Class<? extends Channel> socketChannelClass() {
+        return socketChannelClass;
+    }
+
+    /**
+     * Get the datagram channel class of the transport, which is used by the DNS queries.
+     *
+     * @return the datagram channel class
+     */
+    public Class<? extends DatagramChannel> datagramChannelClass() {
+        return datagramChannelClass;
+    }
+
+    /**
+     * Get the {@code SO_REUSEPORT} option of the transport, which lets multiple server channels bind the same
+     * address, so that the kernel balances the accepted connections between them.
+     *
+     * @return the option, or {@code null} if the transport does not support it
+     */
+    public ChannelOption<Boolean> reusePortOption() {
+        return reusePortOption;
+    }
+
+    @Override
+    public String toString() {
+        return transport.name();
+    }
+
+    private static ChannelTransport epoll() {
+        return new ChannelTransport(Transport.EPOLL, EpollEventLoopGroup::new,
+                EpollServerSocketChannel.class, EpollSocketChannel.class, EpollDatagramChannel.class,
+                EpollChannelOption.SO_REUSEPORT);
+    }
+
+    private static ChannelTransport ioUring() {
+        try {
+            Class<?> ioUring = Class.forName(IO_URING_PACKAGE + "IOUring");
+            if (!(Boolean) ioUring.getMethod("isAvailable").invoke(null)) {
+                throw new NitmProxyException("io_uring is not available",
+                        (Throwable) ioUring.getMethod("unavailabilityCause").invoke(null));
+            }
+            Constructor<? extends EventLoopGroup> groupConstructor = Class
+                    .forName(IO_URING_PACKAGE + "IOUringEventLoopGroup")
+                    .asSubclass(EventLoopGroup.class)
+                    .getConstructor(int.class);
+            IntFunction<EventLoopGroup> groupFactory = threads -> newEventLoopGroup(groupConstructor, threads);
+            @SuppressWarnings("unchecked")
+            ChannelOption<Boolean> reusePortOption = (ChannelOption<Boolean>) Class
+                    .forName(IO_URING_PACKAGE + "IOUringChannelOption")
+                    .getField("SO_REUSEPORT")
+                    .get(null);
+            return new ChannelTransport(Transport.IO_URING, groupFactory,
+                    Class.forName(IO_URING_PACKAGE + "IOUringServerSocketChannel").asSubclass(ServerChannel.class),
+                    Class.forName(IO_URING_PACKAGE + "IOUringSocketChannel").asSubclass(Channel.class),
+                    Class.forName(IO_URING_PACKAGE + "IOUringDatagramChannel").asSubclass(DatagramChannel.class),
+                    reusePortOption);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            throw new NitmProxyException("io_uring is not available", e);
+        }
+    }
+
+    private static EventLoopGroup newEventLoopGroup(Constructor<? extends EventLoopGroup> constructor, int threads) {
+        try {
+            return constructor.newInstance(threads);
+        } catch (ReflectiveOperationException e) {
+            throw new NitmProxyException(format("Create %s failed", constructor.getDeclaringClass().getName()), e);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.github.chhsiao90.nitmproxy.channel;
+
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * Resolve the host names of the client addresses on demand. The client addresses are kept as the raw IPs, since
+ * the reverse lookup blocks, so the lookups are run by the threads of this resolver instead of the event loops.
+ *
+ * <p>The names are cached by the IP, including the IPs without a name, and the concurrent lookups of an IP are
+ * coalesced into one. The threads are only started by the first lookup, and stopped after idle.</p>
+ */
+public class ClientHostResolver {
+
+    private static final long THREAD_KEEP_ALIVE_SECONDS = 60;
+
+    private final ThreadPoolExecutor executor;
+    private final AsyncLoadingCache<String, String> hosts;
+
+    /**
+     * Create a resolver.
+     *
+     * @param threads the number of the lookup threads
+     * @param maximumSize the maximum number of the cached names
+     * @param ttlSeconds the time to cache a name in seconds
+     */
+    public ClientHostResolver(int threads, long maximumSize, long ttlSeconds) {
+        checkArgument(threads > 0, "threads must be positive: %s", threads);
+        checkArgument(ttlSeconds >= 0, "ttlSeconds must not be negative: %s", ttlSeconds);
+        this.executor = new ThreadPoolExecutor(threads, threads, THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new DefaultThreadFactory("nitmproxy-client-host", true));
+        this.executor.allowCoreThreadTimeOut(true);
+        this.hosts = Caffeine
+                .newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .executor(executor)
+                .buildAsync(ClientHostResolver::lookup);
+    }
+
+    /**
+     * Resolve the host name of the client IP.
+     *
+     * @param ip the IP of the client
+     * @return the future of the host name, which is the IP itself if the IP has no name
+     */
+    public CompletableFuture<String> resolve(String ip) {
+        return hosts.get(ip);
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static String lookup(String ip) throws UnknownHostException {
+        // The IP literal is parsed without a lookup, the reverse lookup is done by getHostName
+        return InetAddress.getByName(ip).getHostName();
+    }
+}
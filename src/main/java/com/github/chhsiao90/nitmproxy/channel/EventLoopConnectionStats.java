@@ -0,0 +1,99 @@
+package com.github.chhsiao90.nitmproxy.channel;
+
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.EventExecutor;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.lang.String.*;
+
+/**
+ * Distribution of the client connections across the event loops, which shows whether the accepted connections
+ * were balanced between the loops.
+ */
+public class EventLoopConnectionStats {
+
+    private final ConcurrentMap<EventLoop, Counter> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Register the event loops of the group, so that the loops without any connection are counted by the stats
+     * as well.
+     *
+     * @param group the event loop group of the accepted channels
+     */
+    public void registerLoops(EventLoopGroup group) {
+        for (EventExecutor executor : group) {
+            if (executor instanceof EventLoop) {
+                counters.computeIfAbsent((EventLoop) executor, loop -> new Counter());
+            }
+        }
+    }
+
+    /**
+     * Count the accepted channel on its event loop, until the channel is closed.
+     *
+     * @param channel the accepted channel
+     */
+    public void register(Channel channel) {
+        Counter counter = counters.computeIfAbsent(channel.eventLoop(), loop -> new Counter());
+        counter.accepted.increment();
+        counter.active.increment();
+        channel.closeFuture().addListener(future -> counter.active.decrement());
+    }
+
+    /**
+     * Get the numbers of the connections accepted by each event loop.
+     *
+     * @return the accepted connections of the event loops
+     */
+    public Map<EventLoop, Long> acceptedConnections() {
+        Map<EventLoop, Long> accepted = new LinkedHashMap<>();
+        counters.forEach((loop, counter) -> accepted.put(loop, counter.accepted.sum()));
+        return accepted;
+    }
+
+    /**
+     * Get the numbers of the open connections of each event loop.
+     *
+     * @return the active connections of the event loops
+     */
+    public Map<EventLoop, Long> activeConnections() {
+        Map<EventLoop, Long> active = new LinkedHashMap<>();
+        counters.forEach((loop, counter) -> active.put(loop, counter.active.sum()));
+        return active;
+    }
+
+    /**
+     * Get the ratio of the most active connections of an event loop to the mean of the event loops, {@code 1.0}
+     * is a perfect balance.
+     *
+     * @return the imbalance, or {@code 1.0} if there was no active connection
+     */
+    public double imbalance() {
+        long max = 0;
+        long total = 0;
+        for (Counter counter : counters.values()) {
+            long active = counter.active.sum();
+            max = Math.max(max, active);
+            total += active;
+        }
+        return total == 0 ? 1.0 : (double) max * counters.size() / total;
+    }
+
+    @Override
+    public String toString() {
+        return format("EventLoopConnectionStats{loops=%d, active=%s, accepted=%s, imbalance=%.2f}",
+                counters.size(), activeConnections().values(), acceptedConnections().values(), imbalance());
+    }
+
+    private static class Counter {
+        private final LongAdder accepted = new LongAdder();
+        private final LongAdder active = new LongAdder();
+    }
+}
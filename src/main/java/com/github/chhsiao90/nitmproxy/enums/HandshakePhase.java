@@ -0,0 +1,36 @@
+package com.github.chhsiao90.nitmproxy.enums;
+
+/**
+ * The phases of setting up an intercepted TLS connection, in the order they usually start.
+ */
+public enum HandshakePhase {
+    /**
+     * Waiting for the client hello, from the start of the TLS detection until the hello was buffered.
+     */
+    CLIENT_HELLO,
+    /**
+     * Extracting the SNI from the buffered client hello.
+     */
+    SNI,
+    /**
+     * Looking up or minting the certificate of the SNI. With the shared server context, the certificate is
+     * selected during the downstream handshake instead.
+     */
+    CERT,
+    /**
+     * Connecting the TCP connection to the server.
+     */
+    UPSTREAM_CONNECT,
+    /**
+     * The handshake with the server.
+     */
+    UPSTREAM_HANDSHAKE,
+    /**
+     * Waiting for the protocol selected by the server, which is short if the protocol was cached.
+     */
+    ALPN,
+    /**
+     * The handshake with the client.
+     */
+    DOWNSTREAM_HANDSHAKE
+}
@@ -0,0 +1,65 @@
+package com.github.chhsiao90.nitmproxy.enums;
+
+import com.github.chhsiao90.nitmproxy.exception.NitmProxyException;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.security.spec.ECGenParameterSpec;
+
+/**
+ * The algorithm of the key pairs for the generated certificates.
+ */
+public enum KeyAlgorithm {
+    RSA_2048("RSA", 2048, null),
+    RSA_3072("RSA", 3072, null),
+    EC_P256("EC", 256, "secp256r1"),
+    EC_P384("EC", 384, "secp384r1");
+
+    private final String algorithm;
+    private final int keySize;
+    private final String curve;
+
+    KeyAlgorithm(String algorithm, int keySize, String curve) {
+        this.algorithm = algorithm;
+        this.keySize = keySize;
+        this.curve = curve;
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    public int getKeySize() {
+        return keySize;
+    }
+
+    /**
+     * Generate a new key pair of this algorithm.
+     *
+     * @return the key pair
+     * @throws NitmProxyException if the algorithm is not supported by the platform
+     */
+    public KeyPair generateKeyPair() {
+        try {
+            KeyPairGenerator keyGen = KeyPairGenerator.getInstance(algorithm);
+            if (curve != null) {
+                keyGen.initialize(new ECGenParameterSpec(curve), new SecureRandom());
+            } else {
+                keyGen.initialize(keySize, new SecureRandom());
+            }
+            return keyGen.generateKeyPair();
+        } catch (GeneralSecurityException e) {
+            throw new NitmProxyException("Generate key pair failed: " + this, e);
+        }
+    }
+
+    public static KeyAlgorithm of(String name) {
+        try {
+            return KeyAlgorithm.valueOf(name);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Illegal key algorithm: " + name);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.github.chhsiao90.nitmproxy.enums;
+
+/**
+ * The engine of the TLS connections.
+ */
+public enum TlsEngine {
+    /**
+     * The JSSE engine of the JDK.
+     */
+    JDK,
+    /**
+     * The native OpenSSL (BoringSSL) engine of netty-tcnative, it fails if netty-tcnative is not available.
+     */
+    OPENSSL,
+    /**
+     * OpenSSL if netty-tcnative is available, otherwise JDK.
+     */
+    AUTO;
+
+    public static TlsEngine of(String name) {
+        try {
+            return TlsEngine.valueOf(name);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Illegal tls engine: " + name);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.github.chhsiao90.nitmproxy.enums;
+
+/**
+ * The transport of the channels, which are the listening channel and the channels to the servers.
+ */
+public enum Transport {
+    /**
+     * The Java NIO transport, which is available everywhere.
+     */
+    NIO,
+    /**
+     * The native epoll transport of Linux, it fails if the native library is not available.
+     */
+    EPOLL,
+    /**
+     * The native io_uring transport of Linux, it fails if netty-incubator-transport-native-io_uring is not on the
+     * class path or the kernel does not support it.
+     */
+    IO_URING,
+    /**
+     * The first available one of io_uring, epoll and NIO.
+     */
+    AUTO;
+
+    public static Transport of(String name) {
+        try {
+            return Transport.valueOf(name);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Illegal transport: " + name);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.github.chhsiao90.nitmproxy.handler;
+
+import com.github.chhsiao90.nitmproxy.ConnectionContext;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+
+/**
+ * Pause reading the peer channel while this channel is not writable, see
+ * {@link ConnectionContext#writabilityChanged}. The handler is the first of the pipeline, so that the writability
+ * is seen before any protocol handler.
+ */
+public class BackpressureHandler extends ChannelInboundHandlerAdapter {
+
+    private ConnectionContext connectionContext;
+
+    public BackpressureHandler(ConnectionContext connectionContext) {
+        this.connectionContext = connectionContext;
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        connectionContext.writabilityChanged(ctx.channel());
+        ctx.fireChannelWritabilityChanged();
+    }
+}
@@ -0,0 +1,88 @@
+package com.github.chhsiao90.nitmproxy.handler.protocol.tls;
+
+import com.github.chhsiao90.nitmproxy.NitmProxyConfig;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.ssl.SslHandler;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Adapt the size of the TLS records written by the {@link SslHandler} in front of this handler.
+ *
+ * <p>A connection starts with small records that fit in one TCP segment, so that the first bytes of a response
+ * could be decrypted by the peer without waiting for the following segments. Once the connection has written
+ * enough bytes, the records grow to the maximum size to reduce the framing overhead of the bulk transfer. The
+ * records shrink again after the connection was idle, since the congestion window might be reset.</p>
+ */
+public class AdaptiveRecordSizeHandler extends ChannelOutboundHandlerAdapter {
+
+    public static final int MAX_RECORD_SIZE = 16 * 1024;
+
+    private final SslHandler sslHandler;
+    private final int smallRecordSize;
+    private final long boostThresholdBytes;
+    private final long idleResetNanos;
+    private final LongSupplier nanoClock;
+
+    private long bytesSinceIdle;
+    private long lastWriteNanos;
+    private boolean boosted;
+
+    public AdaptiveRecordSizeHandler(SslHandler sslHandler, NitmProxyConfig config) {
+        this(sslHandler, config.getSmallRecordSize(), config.getRecordSizeBoostThreshold(),
+                config.getRecordSizeIdleResetMillis(), System::nanoTime);
+    }
+
+    AdaptiveRecordSizeHandler(SslHandler sslHandler, int smallRecordSize, long boostThresholdBytes,
+                              long idleResetMillis, LongSupplier nanoClock) {
+        this.sslHandler = sslHandler;
+        this.smallRecordSize = Math.min(smallRecordSize, MAX_RECORD_SIZE);
+        this.boostThresholdBytes = boostThresholdBytes;
+        this.idleResetNanos = TimeUnit.MILLISECONDS.toNanos(idleResetMillis);
+        this.nanoClock = nanoClock;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        sslHandler.setWrapDataSize(smallRecordSize);
+        lastWriteNanos = nanoClock.getAsLong();
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        long now = nanoClock.getAsLong();
+        if (now - lastWriteNanos >= idleResetNanos) {
+            bytesSinceIdle = 0;
+            if (boosted) {
+                boosted = false;
+                sslHandler.setWrapDataSize(smallRecordSize);
+            }
+        }
+        lastWriteNanos = now;
+        bytesSinceIdle += readableBytes(msg);
+        if (!boosted && bytesSinceIdle >= boostThresholdBytes) {
+            boosted = true;
+            sslHandler.setWrapDataSize(MAX_RECORD_SIZE);
+        }
+        ctx.write(msg, promise);
+    }
+
+    boolean isBoosted() {
+        return boosted;
+    }
+
+    private static long readableBytes(Object msg) {
+        if (msg instanceof ByteBuf) {
+            return ((ByteBuf) msg).readableBytes();
+        }
+        if (msg instanceof ByteBufHolder) {
+            return ((ByteBufHolder) msg).content().readableBytes();
+        }
+        return 0;
+    }
+}
@@ -4,7 +4,9 @@ import com.github.chhsiao90.nitmproxy.ConnectionContext;
 import com.github.chhsiao90.nitmproxy.NitmProxyMaster;
 import com.github.chhsiao90.nitmproxy.Protocols;
 import com.github.chhsiao90.nitmproxy.exception.NitmProxyException;
-import com.github.chhsiao90.nitmproxy.tls.TlsUtil;
+import com.github.chhsiao90.nitmproxy.tls.AlpnCache;
+import com.github.chhsiao90.nitmproxy.tls.HandshakeTimings;
+import com.github.chhsiao90.nitmproxy.tls.TlsContext;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.ChannelDuplexHandler;
 import io.netty.channel.ChannelHandlerContext;
@@ -21,6 +23,7 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
+import static com.github.chhsiao90.nitmproxy.enums.HandshakePhase.*;
 import static io.netty.handler.ssl.ApplicationProtocolNames.*;
 import static java.lang.String.*;
 
@@ -99,9 +102,7 @@ public class TlsBackendHandler extends ChannelDuplexHandler {
     }
 
     private SslHandler sslHandler(ByteBufAllocator alloc) throws SSLException {
-        return TlsUtil.ctxForClient(connectionContext)
-                      .newHandler(alloc, connectionContext.getServerAddr().getHost(),
-                                  connectionContext.getServerAddr().getPort());
+        return master.clientSslContextPool().newHandler(connectionContext, alloc, master.handshakeExecutor());
     }
 
     private void flushPendings(ChannelHandlerContext ctx) {
@@ -132,13 +133,29 @@ public class TlsBackendHandler extends ChannelDuplexHandler {
      */
     private void configSsl(ChannelHandlerContext ctx) throws SSLException {
         SslHandler sslHandler = sslHandler(ctx.alloc());
-        ctx.pipeline()
-            .addBefore(ctx.name(), null, sslHandler)
-            .addBefore(ctx.name(), null, new AlpnHandler(ctx, getFallbackProtocol()));
+        HandshakeTimings timings = connectionContext.tlsCtx().timings();
+        timings.begin(UPSTREAM_HANDSHAKE);
+        sslHandler.handshakeFuture().addListener(future -> {
+            if (future.isSuccess()) {
+                timings.end(UPSTREAM_HANDSHAKE);
+            }
+        });
+        try {
+            ctx.pipeline().addBefore(ctx.name(), null, sslHandler);
+            if (master.config().isAdaptiveRecordSize()) {
+                ctx.pipeline().addBefore(ctx.name(), null, new AdaptiveRecordSizeHandler(sslHandler, master.config()));
+            }
+            ctx.pipeline().addBefore(ctx.name(), null, new AlpnHandler(ctx, getFallbackProtocol()));
+            sslHandler = null;
+        } finally {
+            if (sslHandler != null) {
+                ReferenceCountUtil.safeRelease(sslHandler.engine());
+            }
+        }
     }
 
     private String getFallbackProtocol() {
-        if (connectionContext.tlsCtx().isNegotiated()) {
+        if (connectionContext.tlsCtx().isNegotiated() && !connectionContext.tlsCtx().isProtocolCached()) {
             return connectionContext.tlsCtx().protocol();
         }
         if (connectionContext.tlsCtx().protocolsPromise().isSuccess()
@@ -157,10 +174,27 @@ public class TlsBackendHandler extends ChannelDuplexHandler {
             this.tlsCtx = tlsCtx;
         }
 
+        /**
+         * The selected protocol is cached for the next connections to the server. If the client was answered by
+         * a cached protocol which the server no longer selects, the connection is closed and the cache is
+         * invalidated, so that the next connection waits for the server handshake again.
+         */
         @Override
         protected void configurePipeline(ChannelHandlerContext ctx, String protocol) throws Exception {
-            if (!connectionContext.tlsCtx().isNegotiated()) {
-                connectionContext.tlsCtx().protocolPromise().setSuccess(protocol);
+            TlsContext tlsContext = connectionContext.tlsCtx();
+            AlpnCache alpnCache = master.alpnCache();
+            if (tlsContext.isProtocolCached() && !protocol.equals(tlsContext.protocol())) {
+                LOGGER.info("{} : ALPN of server changed from {} to {}",
+                        connectionContext, tlsContext.protocol(), protocol);
+                alpnCache.invalidate(connectionContext.getServerAddr(), tlsContext.protocols());
+                ctx.close();
+                return;
+            }
+            if (!tlsContext.isNegotiated() || tlsContext.isProtocolCached()) {
+                alpnCache.put(connectionContext.getServerAddr(), tlsContext.protocols(), protocol);
+            }
+            if (!tlsContext.isNegotiated()) {
+                tlsContext.protocolPromise().setSuccess(protocol);
             }
             if (ApplicationProtocolNames.HTTP_1_1.equals(protocol)) {
                 configureProtocol(tlsCtx, Protocols.HTTP_1);
@@ -2,12 +2,18 @@ package com.github.chhsiao90.nitmproxy.handler.protocol.tls;
 
 import com.github.chhsiao90.nitmproxy.Address;
 import com.github.chhsiao90.nitmproxy.ConnectionContext;
+import com.github.chhsiao90.nitmproxy.NitmProxyConfig;
 import com.github.chhsiao90.nitmproxy.Protocols;
 import com.github.chhsiao90.nitmproxy.enums.ProxyMode;
+import com.github.chhsiao90.nitmproxy.exception.TlsException;
+import com.github.chhsiao90.nitmproxy.tls.Certificate;
+import com.github.chhsiao90.nitmproxy.tls.HandshakeTimings;
+import com.github.chhsiao90.nitmproxy.tls.TlsContext;
 import com.github.chhsiao90.nitmproxy.tls.TlsUtil;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.ssl.AbstractSniHandler;
 import io.netty.handler.ssl.ApplicationProtocolNames;
@@ -15,12 +21,15 @@ import io.netty.handler.ssl.ApplicationProtocolNegotiationHandler;
 import io.netty.handler.ssl.SslClientHelloHandler;
 import io.netty.handler.ssl.SslHandler;
 import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.net.ssl.SSLException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
+import static com.github.chhsiao90.nitmproxy.enums.HandshakePhase.*;
 import static io.netty.util.ReferenceCountUtil.*;
 
 public class TlsFrontendHandler extends ChannelDuplexHandler {
@@ -35,6 +44,7 @@ public class TlsFrontendHandler extends ChannelDuplexHandler {
     @Override
     public void handlerAdded(ChannelHandlerContext ctx) {
         LOGGER.debug("{} : handlerAdded", connectionContext);
+        timings().begin(CLIENT_HELLO);
         ctx.pipeline().replace(ctx.name(), null, new DetectSslHandler());
     }
 
@@ -48,7 +58,11 @@ public class TlsFrontendHandler extends ChannelDuplexHandler {
     }
 
     private SslHandler sslHandler(ByteBufAllocator alloc) throws SSLException {
-        return TlsUtil.ctxForServer(connectionContext).newHandler(alloc);
+        return TlsUtil.newServerHandler(connectionContext, alloc);
+    }
+
+    private HandshakeTimings timings() {
+        return connectionContext.tlsCtx().timings();
     }
 
     private class DetectSslHandler extends SslClientHelloHandler<Boolean> {
@@ -75,25 +89,69 @@ public class TlsFrontendHandler extends ChannelDuplexHandler {
                 connectionContext.tlsCtx().disableTls();
                 ctx.pipeline().replace(ctx.name(), null, connectionContext.provider().protocolSelectHandler());
             } else {
+                timings().end(CLIENT_HELLO);
+                timings().begin(SNI);
                 ctx.pipeline().replace(ctx.name(), null, new SniExtractorHandler());
             }
         }
     }
 
+    /**
+     * The SNI is extracted before the handshake to resolve the address in the transparent mode, to match the
+     * passthrough hosts, and to mint the certificate before the handshake, which only reads the certificate from
+     * the cache, see {@link com.github.chhsiao90.nitmproxy.tls.MintedCertKeyManagerFactory}.
+     */
     private class SniExtractorHandler extends AbstractSniHandler<Address> {
 
+        private boolean passthrough;
+
         @Override
         protected Future<Address> lookup(ChannelHandlerContext ctx, String hostname) {
             LOGGER.debug("Client SNI lookup with {}", hostname);
+            timings().end(SNI);
             if (hostname != null) {
                 int port = isTransparentProxy() ? 443 : connectionContext.getServerAddr().getPort();
-                return ctx.executor().newSucceededFuture(new Address(hostname, port));
+                Address address = new Address(hostname, port);
+                passthrough = connectionContext.master().passthroughHosts().matches(hostname);
+                return passthrough ? ctx.executor().newSucceededFuture(address) : prepareCert(ctx, address);
             }
-            return ctx.executor().newSucceededFuture(null);
+            if (isTransparentProxy()) {
+                return ctx.executor().newSucceededFuture(null);
+            }
+            // Without the SNI, the certificate is selected by the host of the server address
+            return prepareCert(ctx, connectionContext.getServerAddr());
+        }
+
+        /**
+         * The certificate is minted off the event loop, so that the connections of the cached hosts will not be
+         * blocked by the signing of the new hosts.
+         */
+        private Future<Address> prepareCert(ChannelHandlerContext ctx, Address address) {
+            timings().begin(CERT);
+            CompletableFuture<Certificate> certFuture = connectionContext.master().certManager()
+                                                                         .getCertAsync(address.getHost());
+            if (certFuture.isDone() && !certFuture.isCompletedExceptionally()) {
+                return ctx.executor().newSucceededFuture(address);
+            }
+            Promise<Address> promise = ctx.executor().newPromise();
+            certFuture.whenComplete((cert, error) -> {
+                if (error != null) {
+                    promise.tryFailure(error);
+                } else {
+                    promise.trySuccess(address);
+                }
+            });
+            return promise;
         }
 
         @Override
         protected void onLookupComplete(ChannelHandlerContext ctx, String hostname, Future<Address> future) {
+            if (!future.isSuccess()) {
+                LOGGER.error("Create cert for {} failed", hostname, future.cause());
+                ctx.close();
+                return;
+            }
+            timings().end(CERT);
             Address address = future.getNow();
             if (isTransparentProxy()) {
                 if (address == null) {
@@ -109,7 +167,39 @@ public class TlsFrontendHandler extends ChannelDuplexHandler {
             } else {
                 connectionContext.withServerAddr(address);
             }
-            ctx.pipeline().replace(ctx.name(), null, new AlpnNegotiateHandler());
+            if (passthrough) {
+                passthrough(ctx);
+            } else {
+                ctx.pipeline().replace(ctx.name(), null, new AlpnNegotiateHandler());
+            }
+        }
+
+        /**
+         * Tunnel the raw bytes of the connection, including the buffered client hello, to the server without
+         * terminating the TLS. The backend is switched to forward only once connected, the bytes written before
+         * that are held by the {@link TlsBackendHandler}.
+         */
+        private void passthrough(ChannelHandlerContext ctx) {
+            LOGGER.debug("{} : passthrough", connectionContext);
+            ChannelFuture connectFuture = connectionContext.connectFuture();
+            if (connectFuture == null) {
+                LOGGER.error("{} : No server connection to pass through", connectionContext);
+                Promise<String> protocolPromise = connectionContext.tlsCtx().protocolPromise();
+                if (protocolPromise != null) {
+                    protocolPromise.tryFailure(new TlsException("No server connection to pass through"));
+                }
+                ctx.close();
+                return;
+            }
+            ctx.pipeline().replace(ctx.name(), null, connectionContext.provider().frontendHandler(Protocols.FORWARD));
+            connectFuture.addListener(future -> {
+                if (future.isSuccess()) {
+                    connectionContext.tlsCtx().protocolPromise().setSuccess(Protocols.FORWARD);
+                    connectionContext.tlsCtx().disableTls();
+                } else {
+                    ctx.close();
+                }
+            });
         }
     }
 
@@ -123,11 +213,21 @@ public class TlsFrontendHandler extends ChannelDuplexHandler {
                 ctx.close();
             } else {
                 LOGGER.debug("ALPN negotiated with {}", future.getNow());
+                timings().end(ALPN);
                 SslHandler sslHandler = sslHandler(ctx.alloc());
+                timings().begin(DOWNSTREAM_HANDSHAKE);
+                sslHandler.handshakeFuture().addListener(handshakeFuture -> {
+                    if (handshakeFuture.isSuccess()) {
+                        timings().end(DOWNSTREAM_HANDSHAKE);
+                    }
+                });
                 try {
-                    ctx.pipeline()
-                        .addAfter(ctx.name(), null, new AlpnHandler())
-                        .replace(ctx.name(), null, sslHandler);
+                    ctx.pipeline().addAfter(ctx.name(), null, new AlpnHandler());
+                    NitmProxyConfig config = connectionContext.config();
+                    if (config.isAdaptiveRecordSize()) {
+                        ctx.pipeline().addAfter(ctx.name(), null, new AdaptiveRecordSizeHandler(sslHandler, config));
+                    }
+                    ctx.pipeline().replace(ctx.name(), null, sslHandler);
                     sslHandler = null;
                 } finally {
                     if (sslHandler != null) {
@@ -137,11 +237,23 @@ public class TlsFrontendHandler extends ChannelDuplexHandler {
             }
         }
 
+        /**
+         * The protocol last selected by the server is answered without waiting for the server handshake, which
+         * then runs concurrently with the client handshake.
+         */
         @Override
         protected Future<String> lookup(ChannelHandlerContext ctx, List<String> protocols) {
             LOGGER.debug("Client ALPN lookup with {}", protocols);
-            connectionContext.tlsCtx().protocolsPromise().setSuccess(protocols);
-            return connectionContext.tlsCtx().protocolPromise();
+            timings().begin(ALPN);
+            TlsContext tlsCtx = connectionContext.tlsCtx();
+            String cachedProtocol = connectionContext.master().alpnCache()
+                                                     .get(connectionContext.getServerAddr(), protocols);
+            if (cachedProtocol != null && !tlsCtx.isNegotiated()) {
+                LOGGER.debug("ALPN negotiated with cached {}", cachedProtocol);
+                tlsCtx.negotiateCached(cachedProtocol);
+            }
+            tlsCtx.protocolsPromise().setSuccess(protocols);
+            return tlsCtx.protocolPromise();
         }
     }
 
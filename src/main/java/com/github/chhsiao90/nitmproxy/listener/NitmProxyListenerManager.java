@@ -1,6 +1,7 @@
 package com.github.chhsiao90.nitmproxy.listener;
 
 import com.github.chhsiao90.nitmproxy.ConnectionContext;
+import com.github.chhsiao90.nitmproxy.enums.HandshakePhase;
 import com.github.chhsiao90.nitmproxy.event.ForwardEvent;
 import com.github.chhsiao90.nitmproxy.event.HttpEvent;
 import com.github.chhsiao90.nitmproxy.handler.protocol.http2.Http2DataFrameWrapper;
@@ -21,15 +22,22 @@ import java.util.Optional;
 import java.util.function.Function;
 import java.util.stream.Stream;
 
-public class NitmProxyListenerManager implements HttpListener, ForwardListener {
+public class NitmProxyListenerManager implements HttpListener, ForwardListener, TlsListener {
 
     private final List<HttpListener> httpListeners;
     private final List<HttpListener> reversedHttpListeners;
     private final List<ForwardListener> forwardListeners;
     private final List<ForwardListener> reversedForwardListeners;
+    private final List<TlsListener> tlsListeners;
 
     public NitmProxyListenerManager(List<HttpListener> httpListeners,
                                     List<ForwardListener> forwardListeners) {
+        this(httpListeners, forwardListeners, ImmutableList.of());
+    }
+
+    public NitmProxyListenerManager(List<HttpListener> httpListeners,
+                                    List<ForwardListener> forwardListeners,
+                                    List<TlsListener> tlsListeners) {
         this.httpListeners = ImmutableList.<HttpListener>builder()
                                           .add(new HttpEventLogger())
                                           .addAll(httpListeners)
@@ -40,6 +48,7 @@ public class NitmProxyListenerManager implements HttpListener, ForwardListener {
                                              .addAll(forwardListeners)
                                              .build();
         this.reversedForwardListeners = Lists.reverse(this.forwardListeners);
+        this.tlsListeners = ImmutableList.copyOf(tlsListeners);
     }
 
     @Override
@@ -110,4 +119,9 @@ public class NitmProxyListenerManager implements HttpListener, ForwardListener {
     public void onForwardResponse(ConnectionContext connectionContext, ByteBuf byteBuf) {
         reversedForwardListeners.forEach(listener -> listener.onForwardResponse(connectionContext, byteBuf));
     }
+
+    @Override
+    public void onHandshakePhase(ConnectionContext connectionContext, HandshakePhase phase, long nanos) {
+        tlsListeners.forEach(listener -> listener.onHandshakePhase(connectionContext, phase, nanos));
+    }
 }
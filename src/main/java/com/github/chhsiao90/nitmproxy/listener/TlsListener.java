@@ -0,0 +1,17 @@
+package com.github.chhsiao90.nitmproxy.listener;
+
+import com.github.chhsiao90.nitmproxy.ConnectionContext;
+import com.github.chhsiao90.nitmproxy.enums.HandshakePhase;
+
+public interface TlsListener {
+
+    /**
+     * Called when a phase of setting up the TLS connection ended, on the event loop of the connection.
+     *
+     * @param connectionContext the connection context
+     * @param phase the phase
+     * @param nanos the duration of the phase in nanoseconds
+     */
+    default void onHandshakePhase(ConnectionContext connectionContext, HandshakePhase phase, long nanos) {
+    }
+}
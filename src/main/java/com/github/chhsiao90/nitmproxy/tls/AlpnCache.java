@@ -0,0 +1,114 @@
+package com.github.chhsiao90.nitmproxy.tls;
+
+import com.github.chhsiao90.nitmproxy.Address;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * Cache of the ALPN protocols selected by the origin servers, keyed by the address of the server and the
+ * protocols offered by the client.
+ *
+ * <p>With a cached protocol, the client handshake can be completed without waiting for the handshake to the
+ * server. The entries expire after the TTL, and are invalidated once the server selects another protocol.</p>
+ */
+public class AlpnCache {
+
+    private final Cache<Key, String> protocols;
+
+    /**
+     * Create a cache.
+     *
+     * @param maximumSize the maximum number of the entries
+     * @param ttlSeconds the TTL of the entries in seconds, or {@code 0} to disable the cache
+     */
+    public AlpnCache(long maximumSize, long ttlSeconds) {
+        checkArgument(maximumSize >= 0, "maximumSize must not be negative: %s", maximumSize);
+        checkArgument(ttlSeconds >= 0, "ttlSeconds must not be negative: %s", ttlSeconds);
+        this.protocols = CacheBuilder
+                .newBuilder()
+                .maximumSize(ttlSeconds == 0 ? 0 : maximumSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Get the protocol last selected by the server for the offered protocols.
+     *
+     * @param address the address of the server
+     * @param offered the protocols offered by the client
+     * @return the protocol, or {@code null} if it's unknown
+     */
+    public String get(Address address, List<String> offered) {
+        if (address == null || offered == null || offered.isEmpty()) {
+            return null;
+        }
+        return protocols.getIfPresent(new Key(address, offered));
+    }
+
+    /**
+     * Remember the protocol selected by the server.
+     *
+     * @param address the address of the server
+     * @param offered the protocols offered by the client
+     * @param protocol the selected protocol
+     */
+    public void put(Address address, List<String> offered, String protocol) {
+        if (address == null || offered == null || offered.isEmpty() || !offered.contains(protocol)) {
+            return;
+        }
+        protocols.put(new Key(address, offered), protocol);
+    }
+
+    public void invalidate(Address address, List<String> offered) {
+        if (address != null && offered != null) {
+            protocols.invalidate(new Key(address, offered));
+        }
+    }
+
+    public void invalidateAll() {
+        protocols.invalidateAll();
+    }
+
+    public long size() {
+        return protocols.size();
+    }
+
+    public CacheStats stats() {
+        return protocols.stats();
+    }
+
+    private static class Key {
+        private final Address address;
+        private final List<String> offered;
+
+        private Key(Address address, List<String> offered) {
+            this.address = address;
+            this.offered = offered;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return address.equals(key.address) && offered.equals(key.offered);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(address, offered);
+        }
+    }
+}
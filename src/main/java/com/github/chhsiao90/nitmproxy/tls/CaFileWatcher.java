@@ -0,0 +1,111 @@
+package com.github.chhsiao90.nitmproxy.tls;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.bouncycastle.asn1.pkcs.PrivateKeyInfo;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.chhsiao90.nitmproxy.tls.CertUtil.*;
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * Watch the certificate and the key files of the CA, the CA is rotated once both files were changed and the key
+ * matches the certificate.
+ *
+ * <p>The files are polled by their modified time instead of the file system events, so that the replacements by
+ * renames or symbolic links, like the mounted secrets of Kubernetes, are detected as well. A half-written or
+ * mismatched pair of files is retried by the next poll.</p>
+ */
+public class CaFileWatcher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CaFileWatcher.class);
+
+    private final CertManager certManager;
+    private final Path certFile;
+    private final Path keyFile;
+    private final long intervalSeconds;
+
+    private ScheduledExecutorService scheduler;
+    private FileTime certModified;
+    private FileTime keyModified;
+    private CompletableFuture<CertPrewarmer.Result> rotation;
+
+    public CaFileWatcher(CertManager certManager, Path certFile, Path keyFile, long intervalSeconds) {
+        checkArgument(intervalSeconds > 0, "intervalSeconds must be positive: %s", intervalSeconds);
+        this.certManager = checkNotNull(certManager, "certManager");
+        this.certFile = checkNotNull(certFile, "certFile");
+        this.keyFile = checkNotNull(keyFile, "keyFile");
+        this.intervalSeconds = intervalSeconds;
+        this.certModified = modifiedTime(certFile);
+        this.keyModified = modifiedTime(keyFile);
+    }
+
+    public synchronized void start() {
+        checkState(scheduler == null, "CA file watcher was started");
+        scheduler = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("nitmproxy-ca-watcher", true));
+        scheduler.scheduleWithFixedDelay(this::poll, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        LOGGER.info("Watching CA files {} and {}", certFile, keyFile);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Rotate the CA if the files were changed since the last rotation.
+     *
+     * @return the future of the rotation, or {@code null} if the CA was not rotated
+     */
+    synchronized CompletableFuture<CertPrewarmer.Result> poll() {
+        if (rotation != null && !rotation.isDone()) {
+            return null;
+        }
+        FileTime certTime = modifiedTime(certFile);
+        FileTime keyTime = modifiedTime(keyFile);
+        if (certTime == null || keyTime == null
+            || Objects.equals(certTime, certModified) && Objects.equals(keyTime, keyModified)) {
+            return null;
+        }
+        try {
+            X509CertificateHolder certificate = readPemFromFile(certFile.toString());
+            PrivateKeyInfo key = readPrivateKeyFromFile(keyFile.toString());
+            if (certificate.equals(certManager.caCertificate())) {
+                certModified = certTime;
+                keyModified = keyTime;
+                return null;
+            }
+            if (!isKeyOf(certificate, key)) {
+                LOGGER.warn("CA key {} does not match certificate {} yet", keyFile, certFile);
+                return null;
+            }
+            rotation = certManager.rotateCa(certificate, key);
+            certModified = certTime;
+            keyModified = keyTime;
+            return rotation;
+        } catch (RuntimeException e) {
+            LOGGER.warn("Reload CA from {} and {} failed", certFile, keyFile, e);
+            return null;
+        }
+    }
+
+    private static FileTime modifiedTime(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
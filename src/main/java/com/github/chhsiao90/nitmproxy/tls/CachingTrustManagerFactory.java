@@ -0,0 +1,132 @@
+package com.github.chhsiao90.nitmproxy.tls;
+
+import com.github.chhsiao90.nitmproxy.tls.VerifiedChainCache.Verification;
+import io.netty.handler.ssl.util.SimpleTrustManagerFactory;
+
+import javax.net.ssl.ManagerFactoryParameters;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509ExtendedTrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.net.Socket;
+import java.security.KeyStore;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+
+/**
+ * Trust manager factory which skips the verification of the server chains that were verified recently, see
+ * {@link VerifiedChainCache}. The failed verifications are thrown as they are, so that the
+ * {@link UnsafeAccessSupport} wrapping this factory still handles every untrusted server.
+ */
+public class CachingTrustManagerFactory extends SimpleTrustManagerFactory {
+
+    private final TrustManager tm;
+
+    public CachingTrustManagerFactory(X509TrustManager delegate, VerifiedChainCache verifiedChains) {
+        this.tm = new CachingTrustManager(delegate, verifiedChains);
+    }
+
+    /**
+     * Wrap the first {@link X509TrustManager} of the factory, the factory is returned as it is if there was none.
+     *
+     * @param factory the delegated factory
+     * @param verifiedChains the cache of the verified chains
+     * @return the trust manager factory
+     */
+    public static TrustManagerFactory create(TrustManagerFactory factory, VerifiedChainCache verifiedChains) {
+        return Arrays.stream(factory.getTrustManagers())
+                .filter(X509TrustManager.class::isInstance)
+                .map(X509TrustManager.class::cast)
+                .findFirst()
+                .<TrustManagerFactory>map(tm -> new CachingTrustManagerFactory(tm, verifiedChains))
+                .orElse(factory);
+    }
+
+    @Override
+    protected void engineInit(KeyStore keyStore) {
+    }
+
+    @Override
+    protected void engineInit(ManagerFactoryParameters managerFactoryParameters) {
+    }
+
+    @Override
+    protected TrustManager[] engineGetTrustManagers() {
+        return new TrustManager[] { tm };
+    }
+
+    private static class CachingTrustManager extends X509ExtendedTrustManager {
+
+        private final X509TrustManager delegate;
+        private final VerifiedChainCache verifiedChains;
+
+        private CachingTrustManager(X509TrustManager delegate, VerifiedChainCache verifiedChains) {
+            this.delegate = delegate;
+            this.verifiedChains = verifiedChains;
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+            delegate.checkClientTrusted(chain, authType);
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket)
+                throws CertificateException {
+            if (delegate instanceof X509ExtendedTrustManager) {
+                ((X509ExtendedTrustManager) delegate).checkClientTrusted(chain, authType, socket);
+            } else {
+                delegate.checkClientTrusted(chain, authType);
+            }
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine)
+                throws CertificateException {
+            if (delegate instanceof X509ExtendedTrustManager) {
+                ((X509ExtendedTrustManager) delegate).checkClientTrusted(chain, authType, engine);
+            } else {
+                delegate.checkClientTrusted(chain, authType);
+            }
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+            Verification verification = () -> delegate.checkServerTrusted(chain, authType);
+            verifiedChains.verify(delegate, chain, authType, null, verification);
+        }
+
+        /**
+         * The socket is verified without the cache, since the host of the socket is unknown.
+         */
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket)
+                throws CertificateException {
+            if (delegate instanceof X509ExtendedTrustManager) {
+                ((X509ExtendedTrustManager) delegate).checkServerTrusted(chain, authType, socket);
+            } else {
+                delegate.checkServerTrusted(chain, authType);
+            }
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine)
+                throws CertificateException {
+            if (!(delegate instanceof X509ExtendedTrustManager)) {
+                checkServerTrusted(chain, authType);
+                return;
+            }
+            X509ExtendedTrustManager extendedDelegate = (X509ExtendedTrustManager) delegate;
+            Verification verification = () -> extendedDelegate.checkServerTrusted(chain, authType, engine);
+            String host = engine == null ? null : engine.getPeerHost();
+            verifiedChains.verify(delegate, chain, authType, host, verification);
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return delegate.getAcceptedIssuers();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.github.chhsiao90.nitmproxy.tls;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import java.security.cert.CertificateEncodingException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * The default {@link CertCache}, which is backed by Caffeine. Its Window TinyLFU eviction keeps the frequently
+ * visited hosts against the bursts of the one-off hosts, which gives a better hit ratio than LRU for the skewed
+ * host distribution.
+ *
+ * <p>The cache is bounded by either the number of the certificates, or their approximate memory weight in bytes.
+ * A certificate expires a while before its {@code notAfter}, so that an expired certificate is never served. A
+ * certificate which is already within the margin is kept for half of its remaining validity, instead of being
+ * minted again by every lookup.</p>
+ */
+public class CaffeineCertCache implements CertCache {
+
+    private static final long EXPIRY_MARGIN_NANOS = TimeUnit.HOURS.toNanos(1);
+
+    /**
+     * The approximate overhead of the decoded certificate and key objects in addition to their encoded forms.
+     */
+    private static final int CERT_OVERHEAD_BYTES = 4096;
+
+    private final Cache<String, Certificate> certs;
+
+    /**
+     * Create a cache.
+     *
+     * @param maximumSize the maximum number of the certificates, it's ignored if the maximum weight was given
+     * @param maximumWeight the maximum approximate memory weight in bytes, or {@code 0} to bound by size
+     */
+    public CaffeineCertCache(long maximumSize, long maximumWeight) {
+        this(maximumSize, maximumWeight, ForkJoinPool.commonPool());
+    }
+
+    CaffeineCertCache(long maximumSize, long maximumWeight, Executor executor) {
+        Caffeine<Object, Object> builder = Caffeine
+                .newBuilder()
+                .executor(executor)
+                .recordStats();
+        if (maximumWeight > 0) {
+            builder.maximumWeight(maximumWeight)
+                   .weigher((String host, Certificate cert) -> weigh(host, cert));
+        } else {
+            checkArgument(maximumSize > 0, "maximumSize must be positive: %s", maximumSize);
+            builder.maximumSize(maximumSize);
+        }
+        this.certs = builder
+                .expireAfter(new NotAfterExpiry())
+                .build();
+    }
+
+    @Override
+    public Certificate get(String host, Function<String, Certificate> loader) {
+        return certs.get(host, loader);
+    }
+
+    @Override
+    public Certificate getIfPresent(String host) {
+        return certs.getIfPresent(host);
+    }
+
+    @Override
+    public void put(String host, Certificate cert) {
+        certs.put(host, cert);
+    }
+
+    @Override
+    public Collection<String> hosts() {
+        return new ArrayList<>(certs.asMap().keySet());
+    }
+
+    @Override
+    public void invalidate(String host) {
+        certs.invalidate(host);
+    }
+
+    @Override
+    public void invalidateAll() {
+        certs.invalidateAll();
+    }
+
+    @Override
+    public long size() {
+        return certs.estimatedSize();
+    }
+
+    @Override
+    public CertCacheStats stats() {
+        CacheStats stats = certs.stats();
+        return new CertCacheStats(
+                stats.hitCount(),
+                stats.missCount(),
+                stats.evictionCount(),
+                stats.averageLoadPenalty());
+    }
+
+    void cleanUp() {
+        certs.cleanUp();
+    }
+
+    static int weigh(String host, Certificate cert) {
+        int weight = CERT_OVERHEAD_BYTES + host.length() * 2;
+        try {
+            weight += cert.getChain()[0].getEncoded().length;
+        } catch (CertificateEncodingException e) {
+            // The overhead is still a fair approximation
+        }
+        byte[] encodedKey = cert.getKeyPair().getPrivate().getEncoded();
+        if (encodedKey != null) {
+            weight += encodedKey.length;
+        }
+        return weight;
+    }
+
+    private static class NotAfterExpiry implements Expiry<String, Certificate> {
+        @Override
+        public long expireAfterCreate(String host, Certificate cert, long currentTime) {
+            long remainingMillis = cert.getChain()[0].getNotAfter().getTime() - System.currentTimeMillis();
+            if (remainingMillis <= 0) {
+                return 0;
+            }
+            long remainingNanos = TimeUnit.MILLISECONDS.toNanos(remainingMillis);
+            return Math.max(remainingNanos - EXPIRY_MARGIN_NANOS, remainingNanos / 2);
+        }
+
+        @Override
+        public long expireAfterUpdate(String host, Certificate cert, long currentTime, long currentDuration) {
+            return expireAfterCreate(host, cert, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String host, Certificate cert, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.github.chhsiao90.nitmproxy.tls;
+
+import java.util.Collection;
+import java.util.function.Function;
+
+import static java.util.Collections.*;
+
+/**
+ * Cache of the generated certificates, keyed by the host of the certificate.
+ */
+public interface CertCache {
+
+    /**
+     * Get the certificate of the host, or load it with the loader if absent. The concurrent loads of the same
+     * host are expected to be coalesced.
+     *
+     * @param host the host
+     * @param loader the loader of the certificate
+     * @return the certificate
+     */
+    Certificate get(String host, Function<String, Certificate> loader);
+
+    /**
+     * Get the certificate of the host if it was cached.
+     *
+     * @param host the host
+     * @return the certificate, or {@code null} if absent
+     */
+    Certificate getIfPresent(String host);
+
+    /**
+     * Put the certificate of the host, which replaces the cached certificate of the host. The caches without a
+     * put could rely on the default, which invalidates the host and then loads the certificate.
+     *
+     * @param host the host
+     * @param cert the certificate
+     */
+    default void put(String host, Certificate cert) {
+        invalidate(host);
+        get(host, h -> cert);
+    }
+
+    /**
+     * Get the hosts of the cached certificates, which are minted again by the new CA when the CA was rotated.
+     * The caches that could not list their hosts return an empty collection.
+     *
+     * @return the hosts
+     */
+    default Collection<String> hosts() {
+        return emptyList();
+    }
+
+    void invalidate(String host);
+
+    void invalidateAll();
+
+    long size();
+
+    CertCacheStats stats();
+}
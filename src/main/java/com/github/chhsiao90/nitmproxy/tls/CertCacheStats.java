@@ -0,0 +1,58 @@
+package com.github.chhsiao90.nitmproxy.tls;
+
+import static java.lang.String.*;
+
+/**
+ * Statistics of a {@link CertCache}.
+ */
+public class CertCacheStats {
+
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final double averageLoadPenaltyNanos;
+
+    public CertCacheStats(long hitCount, long missCount, long evictionCount, double averageLoadPenaltyNanos) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.averageLoadPenaltyNanos = averageLoadPenaltyNanos;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Get the ratio of the requests that were hits.
+     *
+     * @return the hit rate, or {@code 1.0} if there was no request
+     */
+    public double getHitRate() {
+        long requestCount = hitCount + missCount;
+        return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Get the average time spent on loading a certificate, which is mostly the signing.
+     *
+     * @return the average load penalty in nanoseconds
+     */
+    public double getAverageLoadPenaltyNanos() {
+        return averageLoadPenaltyNanos;
+    }
+
+    @Override
+    public String toString() {
+        return format("CertCacheStats{hitRate=%.3f, hits=%d, misses=%d, evictions=%d, loadPenalty=%.0fns}",
+                getHitRate(), hitCount, missCount, evictionCount, averageLoadPenaltyNanos);
+    }
+}
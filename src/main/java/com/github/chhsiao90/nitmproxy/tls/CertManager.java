@@ -2,51 +2,346 @@ package com.github.chhsiao90.nitmproxy.tls;
 
 import com.github.chhsiao90.nitmproxy.NitmProxyConfig;
 import com.github.chhsiao90.nitmproxy.exception.NitmProxyException;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
+import com.google.common.base.Suppliers;
+import com.google.common.net.InetAddresses;
+import com.google.common.net.InternetDomainName;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import org.bouncycastle.asn1.pkcs.PrivateKeyInfo;
 import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.security.PrivateKey;
-import java.util.concurrent.ExecutionException;
+import java.nio.file.Path;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import static com.google.common.base.Preconditions.*;
+import static java.lang.String.*;
+import static java.util.stream.Collectors.*;
 
+/**
+ * Manager of the certificates minted by the CA.
+ *
+ * <p>The CA could be rotated without a restart, see {@link #rotateCa(X509CertificateHolder, PrivateKeyInfo)}.
+ * The cached hosts keep being served by the certificates of the old CA, while their certificates are minted by
+ * the new CA in the background. Once they were all minted, the new CA and its certificates take over at once.</p>
+ */
 public class CertManager {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CertManager.class);
 
-    private static final int CERT_CACHE_SIZE = 2000;
+    private final KeyPairPool keyPairPool;
+    private final boolean wildcardCerts;
+    private final Path certStoreDir;
+    private final List<String> hotHosts;
 
-    private final X509CertificateHolder certificate;
-    private final PrivateKeyInfo key;
+    private volatile Issuer issuer;
+    private CompletableFuture<CertPrewarmer.Result> rotation;
 
-    private LoadingCache<String, Certificate> certsCache;
+    private CertCache certsCache;
+
+    private final ThreadPoolExecutor mintingExecutor;
+    private final ConcurrentMap<String, CompletableFuture<Certificate>> minting;
 
     public CertManager(NitmProxyConfig config) {
-        this.certificate = checkNotNull(config.getCertificate(), "certificate");
-        this.key = checkNotNull(config.getKey(), "key");
-        this.certsCache = CacheBuilder
-                .newBuilder()
-                .expireAfterWrite(1, TimeUnit.DAYS)
-                .maximumSize(CERT_CACHE_SIZE)
-                .build(new CacheLoader<String, Certificate>() {
-                    @Override
-                    public Certificate load(String host) {
-                        return createCert(host);
-                    }
-                });
+        this.wildcardCerts = config.isWildcardCerts();
+        this.certStoreDir = config.getCertStoreDir();
+        this.hotHosts = config.getHotHosts();
+        this.issuer = new Issuer(
+                checkNotNull(config.getCertificate(), "certificate"),
+                checkNotNull(config.getKey(), "key"),
+                certStoreDir);
+        this.keyPairPool = new KeyPairPool(
+                config.getKeyAlgorithm(),
+                config.getKeyPairPoolLowWatermark(),
+                config.getKeyPairPoolHighWatermark());
+        this.certsCache = config.getCertCache() != null
+                ? config.getCertCache()
+                : new CaffeineCertCache(config.getCertCacheSize(), config.getCertCacheMaxWeight());
+        this.mintingExecutor = new ThreadPoolExecutor(
+                config.getCertMintingThreads(), config.getCertMintingThreads(),
+                60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(config.getCertMintingQueueSize()),
+                new DefaultThreadFactory("nitmproxy-cert", true));
+        this.mintingExecutor.allowCoreThreadTimeOut(true);
+        this.minting = new ConcurrentHashMap<>();
     }
 
     public Certificate getCert(String host) {
         try {
-            return certsCache.get(host);
-        } catch (ExecutionException e) {
-            throw new NitmProxyException("Create cert failed", e.getCause());
+            String certHost = certHost(host);
+            Certificate cert = certsCache.get(certHost, this::createCert);
+            if (!issuer.issued(cert)) {
+                // Minted by the old CA while the CA was rotating
+                certsCache.invalidate(certHost);
+                cert = certsCache.get(certHost, this::createCert);
+            }
+            return cert;
+        } catch (NitmProxyException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new NitmProxyException("Create cert failed", e);
+        }
+    }
+
+    /**
+     * Get the certificate of the host without blocking the caller. A cached certificate is returned as a
+     * completed future, otherwise the certificate is signed on the minting executor, and the concurrent
+     * requests of the same host share the same signing.
+     *
+     * @param host the host
+     * @return the future of the certificate, which fails if the signing failed or the executor was saturated
+     */
+    public CompletableFuture<Certificate> getCertAsync(String host) {
+        String certHost = certHost(host);
+        Certificate cached = getCertIfPresent(certHost);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        CompletableFuture<Certificate> future = new CompletableFuture<>();
+        CompletableFuture<Certificate> pending = minting.putIfAbsent(certHost, future);
+        if (pending != null) {
+            return pending;
+        }
+        try {
+            mintingExecutor.execute(() -> {
+                try {
+                    Certificate cert = getCert(certHost);
+                    minting.remove(certHost, future);
+                    future.complete(cert);
+                } catch (Throwable t) {
+                    minting.remove(certHost, future);
+                    future.completeExceptionally(t);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            minting.remove(certHost, future);
+            future.completeExceptionally(new NitmProxyException(format("Create cert rejected: %s", host), e));
         }
+        return future;
+    }
+
+    /**
+     * Get the cached certificate of the host without minting it, the certificate of a new host should be minted
+     * by {@link #getCertAsync(String)} in advance.
+     *
+     * @param host the host
+     * @return the certificate, or {@code null} if it was not minted by the current CA yet
+     */
+    public Certificate getCertIfPresent(String host) {
+        Certificate cached = certsCache.getIfPresent(certHost(host));
+        return cached != null && issuer.issued(cached) ? cached : null;
+    }
+
+    /**
+     * Get the number of the hosts whose certificates are being signed or waiting to be signed.
+     *
+     * @return the number of the pending hosts
+     */
+    public int pendingCount() {
+        return minting.size();
+    }
+
+    /**
+     * Get the host that the certificate of the host is issued for. In the wildcard mode, the certificate of
+     * {@code a1.cdn.example.com} is issued for {@code *.cdn.example.com}, so that it is shared by the sibling
+     * subdomains. The wildcard is only issued when the parent domain is under a public suffix, which prevents
+     * wildcards of public suffixes like {@code *.com} or {@code *.co.uk}.
+     *
+     * @param host the host
+     * @return the host of the certificate
+     */
+    public String certHost(String host) {
+        if (!wildcardCerts || host.startsWith(CertUtil.WILDCARD_PREFIX)
+            || InetAddresses.isInetAddress(host) || !InternetDomainName.isValid(host)) {
+            return host;
+        }
+        InternetDomainName domainName = InternetDomainName.from(host);
+        if (!domainName.hasParent() || !domainName.parent().isUnderPublicSuffix()) {
+            return host;
+        }
+        return CertUtil.WILDCARD_PREFIX + domainName.parent();
+    }
+
+    /**
+     * Rotate the CA. The certificates of the cached hosts and the hot hosts are minted by the new CA in the
+     * background, while the hosts are still served by the old CA. The new CA takes over once the minting was
+     * done, the hosts whose minting failed are minted again on their next connections.
+     *
+     * @param certificate the certificate of the new CA
+     * @param key the private key of the new CA
+     * @return the future of the rotation, which is completed after the new CA took over
+     * @throws IllegalArgumentException if the key did not match the certificate
+     * @throws IllegalStateException if another rotation was in progress
+     */
+    public synchronized CompletableFuture<CertPrewarmer.Result> rotateCa(X509CertificateHolder certificate,
+                                                                       PrivateKeyInfo key) {
+        checkState(rotation == null || rotation.isDone(), "CA rotation is in progress");
+        checkArgument(CertUtil.isKeyOf(certificate, key), "Key does not match CA certificate: %s",
+                certificate.getSubject());
+        Issuer next = new Issuer(certificate, key, certStoreDir);
+        Set<String> hosts = hotHosts.stream().map(this::certHost).collect(toCollection(LinkedHashSet::new));
+        hosts.addAll(certsCache.hosts());
+        LOGGER.info("Rotating CA to {}, minting certs of {} hosts", certificate.getSubject(), hosts.size());
+
+        Function<String, Certificate> mint = host -> next.minted.computeIfAbsent(host, h -> mintCert(next, h));
+        Function<String, CompletableFuture<Certificate>> minter = host -> mintAsync(host, () -> mint.apply(host));
+        Function<CertPrewarmer.Result, CertPrewarmer.Result> cutOver = result -> cutOver(next, result);
+        rotation = new CertPrewarmer(minter, mintingExecutor.getCorePoolSize())
+                .prewarm(hosts)
+                .thenApply(cutOver);
+        return rotation;
+    }
+
+    public X509CertificateHolder caCertificate() {
+        return issuer.certificate;
+    }
+
+    public CertCache certCache() {
+        return certsCache;
+    }
+
+    public KeyPairPool keyPairPool() {
+        return keyPairPool;
+    }
+
+    public CertStore certStore() {
+        return issuer.certStore;
     }
 
     private Certificate createCert(String host) {
-        return CertUtil.newCert(certificate, key, host);
+        return createCert(issuer, host);
+    }
+
+    private Certificate createCert(Issuer issuer, String host) {
+        Certificate minted = issuer.minted.remove(host);
+        return minted != null ? minted : mintCert(issuer, host);
+    }
+
+    private Certificate mintCert(Issuer issuer, String host) {
+        Certificate stored = issuer.storedCerts.get().remove(host);
+        if (stored != null && isReusable(stored)) {
+            return stored;
+        }
+        Certificate cert = CertUtil.newCert(issuer.certificate, issuer.key, host, keyPairPool.take());
+        issuer.store(host, cert);
+        return cert;
+    }
+
+    private CompletableFuture<Certificate> mintAsync(String host, Supplier<Certificate> mint) {
+        CompletableFuture<Certificate> future = new CompletableFuture<>();
+        try {
+            mintingExecutor.execute(() -> {
+                try {
+                    future.complete(mint.get());
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(new NitmProxyException(format("Create cert rejected: %s", host), e));
+        }
+        return future;
+    }
+
+    /**
+     * Switch to the new CA, the cached certificates are replaced by the ones minted by the new CA in place, so
+     * that the minted hosts never miss the cache. A connection racing the cut over takes the minted certificate
+     * from the new CA instead of minting it again. The hosts which were not minted are invalidated afterwards.
+     */
+    private synchronized CertPrewarmer.Result cutOver(Issuer next, CertPrewarmer.Result result) {
+        Set<String> minted = new HashSet<>(next.minted.keySet());
+        Issuer previous = issuer;
+        issuer = next;
+        next.minted.forEach((host, cert) -> {
+            certsCache.put(host, cert);
+            next.minted.remove(host, cert);
+        });
+        certsCache.hosts().stream()
+                  .filter(host -> !minted.contains(host))
+                  .forEach(certsCache::invalidate);
+        previous.retire();
+        LOGGER.info("Rotated CA to {}, {} certs were minted", next.certificate.getSubject(), minted.size());
+        return result;
+    }
+
+    private boolean isReusable(Certificate stored) {
+        X509Certificate leaf = stored.getChain()[0];
+        return leaf.getNotAfter().getTime() > System.currentTimeMillis()
+               && leaf.getPublicKey().getAlgorithm().equals(keyPairPool.keyAlgorithm().getAlgorithm());
+    }
+
+    /**
+     * The CA, with the store of the certificates it minted. Once the CA was rotated, the store is closed after
+     * the appends of the in-flight mintings, and the later mintings of the old CA are no longer stored.
+     */
+    private static class Issuer {
+        private final X509CertificateHolder certificate;
+        private final PrivateKeyInfo key;
+        private final X509Certificate caCert;
+        private final CertStore certStore;
+        private final Supplier<Map<String, Certificate>> storedCerts;
+        // The certs minted by the rotation before the CA took over
+        private final ConcurrentMap<String, Certificate> minted = new ConcurrentHashMap<>();
+        private final AtomicInteger appending = new AtomicInteger();
+        private volatile boolean retired;
+
+        private Issuer(X509CertificateHolder certificate, PrivateKeyInfo key, Path certStoreDir) {
+            this.certificate = certificate;
+            this.key = key;
+            try {
+                this.caCert = new JcaX509CertificateConverter().getCertificate(certificate);
+            } catch (CertificateException e) {
+                throw new NitmProxyException("Read CA certificate failed", e);
+            }
+            this.certStore = certStoreDir != null ? new CertStore(certStoreDir, certificate) : null;
+            // The store is loaded by the first miss, and the loaded certs are handed over to the cache one by one
+            this.storedCerts = Suppliers.memoize(() -> certStore != null
+                    ? new ConcurrentHashMap<>(certStore.load())
+                    : new ConcurrentHashMap<>());
+        }
+
+        private void store(String host, Certificate cert) {
+            if (certStore == null) {
+                return;
+            }
+            appending.incrementAndGet();
+            try {
+                if (!retired) {
+                    certStore.append(host, cert);
+                }
+            } finally {
+                if (appending.decrementAndGet() == 0 && retired) {
+                    certStore.close();
+                }
+            }
+        }
+
+        private void retire() {
+            retired = true;
+            if (certStore != null && appending.get() == 0) {
+                certStore.close();
+            }
+        }
+
+        private boolean issued(Certificate cert) {
+            X509Certificate[] chain = cert.getChain();
+            return chain.length < 2 || caCert.equals(chain[chain.length - 1]);
+        }
     }
 }
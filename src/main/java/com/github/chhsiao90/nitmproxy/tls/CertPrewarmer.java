@@ -0,0 +1,156 @@
+package com.github.chhsiao90.nitmproxy.tls;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * Mint the certificates of a list of hosts ahead of the first connections.
+ *
+ * <p>At most {@code parallelism} hosts are minted at the same time, so that the minting executor is kept busy
+ * without rejecting the certificates requested by the live connections.</p>
+ */
+public class CertPrewarmer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CertPrewarmer.class);
+
+    private static final int PROGRESS_STEPS = 10;
+
+    private final Function<String, CompletableFuture<Certificate>> minter;
+    private final int parallelism;
+
+    public CertPrewarmer(CertManager certManager, int parallelism) {
+        this(checkNotNull(certManager, "certManager")::getCertAsync, parallelism);
+    }
+
+    /**
+     * Create a pre-warmer of a custom minting, like the minting by the new CA during the CA rotation.
+     *
+     * @param minter the asynchronous minting of the certificate of a host
+     * @param parallelism the maximum number of the hosts minted at the same time
+     */
+    public CertPrewarmer(Function<String, CompletableFuture<Certificate>> minter, int parallelism) {
+        checkArgument(parallelism > 0, "parallelism must be positive: %s", parallelism);
+        this.minter = checkNotNull(minter, "minter");
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Mint the certificates of the hosts.
+     *
+     * @param hosts the hosts
+     * @return the future of the result, which never fails
+     */
+    public CompletableFuture<Result> prewarm(Collection<String> hosts) {
+        Task task = new Task(new ArrayList<>(hosts));
+        LOGGER.info("Pre-warming certs of {} hosts", task.hosts.size());
+        if (task.hosts.isEmpty()) {
+            task.complete();
+        }
+        for (int i = 0; i < Math.min(parallelism, task.hosts.size()); i++) {
+            task.next();
+        }
+        return task.future;
+    }
+
+    /**
+     * The result of a pre-warming.
+     */
+    public static class Result {
+        private final int minted;
+        private final int failed;
+        private final long elapsedMillis;
+
+        private Result(int minted, int failed, long elapsedMillis) {
+            this.minted = minted;
+            this.failed = failed;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public int getMinted() {
+            return minted;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Result{minted=%d, failed=%d, elapsed=%dms}", minted, failed, elapsedMillis);
+        }
+    }
+
+    private class Task {
+        private final List<String> hosts;
+        private final long startNanos = System.nanoTime();
+        private final AtomicInteger nextIndex = new AtomicInteger();
+        private final AtomicInteger done = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final CompletableFuture<Result> future = new CompletableFuture<>();
+
+        private Task(List<String> hosts) {
+            this.hosts = hosts;
+        }
+
+        /**
+         * Mint the next host. The cached certificates are completed immediately, they are handled in the loop
+         * instead of recursively.
+         */
+        private void next() {
+            while (true) {
+                int index = nextIndex.getAndIncrement();
+                if (index >= hosts.size()) {
+                    return;
+                }
+                String host = hosts.get(index);
+                CompletableFuture<Certificate> certFuture = minter.apply(host);
+                if (!certFuture.isDone()) {
+                    certFuture.whenComplete((cert, error) -> {
+                        onDone(host, error);
+                        next();
+                    });
+                    return;
+                }
+                onDone(host, certFuture.handle((cert, error) -> error).join());
+            }
+        }
+
+        private void onDone(String host, Throwable error) {
+            if (error != null) {
+                LOGGER.warn("Pre-warm cert of {} failed", host, error);
+                failed.incrementAndGet();
+            }
+            int count = done.incrementAndGet();
+            int total = hosts.size();
+            if (count == total) {
+                complete();
+            } else if (count * PROGRESS_STEPS / total != (count - 1) * PROGRESS_STEPS / total) {
+                LOGGER.info("Pre-warmed certs {}/{} in {}ms", count, total, elapsedMillis());
+            }
+        }
+
+        private void complete() {
+            Result result = new Result(hosts.size() - failed.get(), failed.get(), elapsedMillis());
+            LOGGER.info("Pre-warmed certs of {} hosts, {} failed, in {}ms",
+                    hosts.size(), result.failed, result.elapsedMillis);
+            future.complete(result);
+        }
+
+        private long elapsedMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package com.github.chhsiao90.nitmproxy.tls;
+
+import com.github.chhsiao90.nitmproxy.exception.NitmProxyException;
+import com.google.common.hash.Hashing;
+import com.google.common.io.CountingInputStream;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.*;
+import static java.lang.String.*;
+
+/**
+ * Append-only file of the generated certificates, so that the certificates survive the restarts.
+ *
+ * <p>The file is named after the fingerprint of the CA certificate, the certificates issued by another CA are
+ * never loaded. Each record holds the host, the expiry, the DER encoded certificate and the PKCS#8 encoded
+ * private key. A record of the same host replaces the earlier ones, and the expired records are dropped while
+ * loading. The file is compacted once the dropped records outnumber the live ones.</p>
+ *
+ * <p>Since the private keys are stored unencrypted, the file is only readable by its owner where the file
+ * system supports the POSIX permissions.</p>
+ */
+public class CertStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CertStore.class);
+
+    private static final int MAGIC = 0x4e434552;
+    private static final int VERSION = 1;
+    private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rw-------");
+
+    private final Path file;
+    private final X509Certificate caCert;
+
+    private DataOutputStream output;
+
+    public CertStore(Path dir, X509CertificateHolder ca) {
+        checkNotNull(dir, "dir");
+        checkNotNull(ca, "ca");
+        try {
+            this.caCert = new JcaX509CertificateConverter().getCertificate(ca);
+            String fingerprint = Hashing.sha256().hashBytes(ca.getEncoded()).toString().substring(0, 16);
+            this.file = dir.resolve(format("certs-%s.db", fingerprint));
+        } catch (IOException | GeneralSecurityException e) {
+            throw new NitmProxyException("Read CA certificate failed", e);
+        }
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    /**
+     * Load the unexpired certificates.
+     *
+     * @return the certificates by host
+     */
+    public synchronized Map<String, Certificate> load() {
+        return load(System.currentTimeMillis());
+    }
+
+    synchronized Map<String, Certificate> load(long nowMillis) {
+        Map<String, Certificate> certs = new HashMap<>();
+        if (!Files.exists(file)) {
+            return certs;
+        }
+        int records = 0;
+        boolean truncated = false;
+        try (CountingInputStream counting = new CountingInputStream(
+                new BufferedInputStream(Files.newInputStream(file)))) {
+            DataInputStream input = new DataInputStream(counting);
+            long size = Files.size(file);
+            readHeader(input);
+            while (true) {
+                String host;
+                try {
+                    host = input.readUTF();
+                } catch (EOFException e) {
+                    break;
+                }
+                records++;
+                long notAfter = input.readLong();
+                byte[] encodedCert = readBytes(input, size - counting.getCount());
+                String keyAlgorithm = input.readUTF();
+                byte[] encodedKey = readBytes(input, size - counting.getCount());
+                if (notAfter <= nowMillis) {
+                    certs.remove(host);
+                } else {
+                    certs.put(host, toCertificate(encodedCert, keyAlgorithm, encodedKey));
+                }
+            }
+        } catch (EOFException e) {
+            LOGGER.warn("Cert store {} was truncated, the incomplete record is dropped", file);
+            truncated = true;
+        } catch (IOException | GeneralSecurityException | RuntimeException e) {
+            LOGGER.warn("Cert store {} is corrupted, the remaining records are dropped", file, e);
+            truncated = true;
+        }
+        LOGGER.info("Loaded {} certs from {} records of {}", certs.size(), records, file);
+        if (truncated || records > certs.size() * 2) {
+            compact(certs);
+        }
+        return certs;
+    }
+
+    /**
+     * Append the certificate of the host.
+     *
+     * @param host the host
+     * @param certificate the certificate
+     */
+    public synchronized void append(String host, Certificate certificate) {
+        try {
+            if (output == null) {
+                output = open();
+            }
+            writeRecord(output, host, certificate);
+            output.flush();
+        } catch (IOException | GeneralSecurityException e) {
+            LOGGER.warn("Append cert of {} to {} failed", host, file, e);
+            close();
+        }
+    }
+
+    /**
+     * Rewrite the file with only the given certificates.
+     *
+     * @param certs the live certificates by host
+     */
+    public synchronized void compact(Map<String, Certificate> certs) {
+        close();
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            restrictToOwner(temp);
+        } catch (IOException e) {
+            LOGGER.warn("Compact cert store {} failed", file, e);
+            return;
+        }
+        try (DataOutputStream compacted = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(
+                temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)))) {
+            writeHeader(compacted);
+            for (Map.Entry<String, Certificate> entry : certs.entrySet()) {
+                writeRecord(compacted, entry.getKey(), entry.getValue());
+            }
+        } catch (IOException | GeneralSecurityException e) {
+            LOGGER.warn("Compact cert store {} failed", file, e);
+            return;
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.warn("Compact cert store {} failed", file, e);
+        }
+    }
+
+    public synchronized void close() {
+        if (output != null) {
+            try {
+                output.close();
+            } catch (IOException e) {
+                LOGGER.debug("Close cert store {} failed", file, e);
+            }
+            output = null;
+        }
+    }
+
+    private DataOutputStream open() throws IOException {
+        Files.createDirectories(file.getParent());
+        boolean created = !Files.exists(file);
+        restrictToOwner(file);
+        DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(
+                file, StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+        if (created) {
+            writeHeader(stream);
+        }
+        return stream;
+    }
+
+    private Certificate toCertificate(byte[] encodedCert, String keyAlgorithm, byte[] encodedKey)
+            throws GeneralSecurityException {
+        X509Certificate cert = (X509Certificate) CertificateFactory
+                .getInstance("X.509")
+                .generateCertificate(new ByteArrayInputStream(encodedCert));
+        PrivateKey privateKey = KeyFactory
+                .getInstance(keyAlgorithm)
+                .generatePrivate(new PKCS8EncodedKeySpec(encodedKey));
+        return new Certificate(new KeyPair(cert.getPublicKey(), privateKey), cert, caCert);
+    }
+
+    private static void readHeader(DataInputStream input) throws IOException {
+        if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+            throw new IOException("Not a cert store");
+        }
+    }
+
+    private static void writeHeader(DataOutputStream output) throws IOException {
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+    }
+
+    private static void writeRecord(DataOutputStream output, String host, Certificate certificate)
+            throws IOException, GeneralSecurityException {
+        X509Certificate cert = certificate.getChain()[0];
+        PrivateKey privateKey = certificate.getKeyPair().getPrivate();
+        output.writeUTF(host);
+        output.writeLong(cert.getNotAfter().getTime());
+        writeBytes(output, cert.getEncoded());
+        output.writeUTF(privateKey.getAlgorithm());
+        writeBytes(output, privateKey.getEncoded());
+    }
+
+    /**
+     * Create the file, or restrict the permissions of the existing file, so that only the owner could read it.
+     */
+    private static void restrictToOwner(Path path) throws IOException {
+        if (!path.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            return;
+        }
+        if (Files.exists(path)) {
+            Files.setPosixFilePermissions(path, OWNER_ONLY);
+        } else {
+            Files.createFile(path, PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+        }
+    }
+
+    private static byte[] readBytes(DataInputStream input, long remaining) throws IOException {
+        int length = input.readInt();
+        if (length < 0 || length > remaining) {
+            throw new IOException(format("Invalid length %d of %d remaining bytes", length, remaining));
+        }
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return bytes;
+    }
+
+    private static void writeBytes(DataOutputStream output, byte[] bytes) throws IOException {
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+}
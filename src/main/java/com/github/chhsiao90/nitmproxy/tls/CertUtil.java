@@ -1,5 +1,6 @@
 package com.github.chhsiao90.nitmproxy.tls;
 
+import com.github.chhsiao90.nitmproxy.enums.KeyAlgorithm;
 import com.github.chhsiao90.nitmproxy.exception.NitmProxyException;
 import org.bouncycastle.asn1.DERSequence;
 import org.bouncycastle.asn1.pkcs.PrivateKeyInfo;
@@ -31,15 +32,17 @@ import java.io.OutputStreamWriter;
 import java.math.BigInteger;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.Provider;
-import java.security.PublicKey;
 import java.security.SecureRandom;
+import java.security.Signature;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.security.interfaces.ECKey;
 import java.time.Instant;
 import java.time.Year;
 import java.time.ZoneId;
@@ -53,35 +56,67 @@ public class CertUtil {
 
     private static final Provider PROVIDER = new BouncyCastleProvider();
 
+    static final String WILDCARD_PREFIX = "*.";
+
+    /**
+     * The validity of the minted certificates, which is below the 398 days accepted by the browsers.
+     */
+    private static final long LEAF_VALIDITY_DAYS = 365;
+
     private CertUtil() {
     }
 
+    /**
+     * Create a new certificate of the host, which shares the key pair of the parent certificate.
+     *
+     * @param parent the parent certificate
+     * @param key the private key of the parent certificate
+     * @param host the host
+     * @return the certificate
+     */
     public static Certificate newCert(X509CertificateHolder parent, PrivateKeyInfo key, String host) {
+        return newCert(parent, key, host, null);
+    }
+
+    /**
+     * Create a new certificate of the host with its own key pair. The certificate is signed by the key of the
+     * parent certificate, so the signature algorithm follows the type of the parent key. A wildcard host like
+     * {@code *.example.com} also covers the apex {@code example.com}. The certificate is valid for a year from
+     * now, so that the certificates minted at different times do not expire at once.
+     *
+     * @param parent the parent certificate
+     * @param key the private key of the parent certificate
+     * @param host the host
+     * @param keyPair the key pair of the new certificate, or {@code null} to share the key pair of the parent
+     * @return the certificate
+     */
+    public static Certificate newCert(X509CertificateHolder parent, PrivateKeyInfo key, String host,
+                                      KeyPair keyPair) {
         try {
             //need a date before today to adjust for other time zones
             Date before = Date.from(
                     Instant.now()
                     .atZone(ZoneId.systemDefault())
                     .minusMonths(6).toInstant());
-            Date after = Date.from(
-                    Year.now()
-                        .plus(1, ChronoUnit.YEARS)
-                        .atDay(1)
-                        .atStartOfDay(ZoneId.systemDefault())
-                        .toInstant());
+            Date after = Date.from(Instant.now().plus(LEAF_VALIDITY_DAYS, ChronoUnit.DAYS));
 
             JcaPEMKeyConverter converter = new JcaPEMKeyConverter().setProvider(PROVIDER);
-            PublicKey publicKey = converter.getPublicKey(parent.getSubjectPublicKeyInfo());
-            PrivateKey privateKey = converter.getPrivateKey(key);
+            PrivateKey signingKey = converter.getPrivateKey(key);
+            KeyPair leafKeyPair = keyPair != null
+                    ? keyPair
+                    : new KeyPair(converter.getPublicKey(parent.getSubjectPublicKeyInfo()), signingKey);
             X509v3CertificateBuilder x509 = new JcaX509v3CertificateBuilder(
                     parent.getSubject(),
                     new BigInteger(64, new SecureRandom()),
                     before,
                     after,
                     new X500Name("CN=" + host),
-                    publicKey);
-            GeneralNames generalNames = GeneralNames.getInstance(
-                    new DERSequence(new GeneralName(GeneralName.dNSName, host)));
+                    leafKeyPair.getPublic());
+            GeneralNames generalNames = host.startsWith(WILDCARD_PREFIX)
+                    ? new GeneralNames(new GeneralName[] {
+                        new GeneralName(GeneralName.dNSName, host),
+                        new GeneralName(GeneralName.dNSName, host.substring(WILDCARD_PREFIX.length())) })
+                    : GeneralNames.getInstance(new DERSequence(new GeneralName(GeneralName.dNSName, host)));
             x509.addExtension(Extension.subjectAlternativeName, true, generalNames);
 
             //add extended key usage needed for newer Mac OS requirements
@@ -90,14 +125,14 @@ public class CertUtil {
                     true,
                     new ExtendedKeyUsage(KeyPurposeId.id_kp_serverAuth));
 
-            ContentSigner signer = new JcaContentSignerBuilder("SHA256WithRSAEncryption")
-                    .build(privateKey);
+            ContentSigner signer = new JcaContentSignerBuilder(signatureAlgorithm(signingKey))
+                    .build(signingKey);
 
             JcaX509CertificateConverter x509CertificateConverter = new JcaX509CertificateConverter()
                     .setProvider(PROVIDER);
 
             return new Certificate(
-                    new KeyPair(publicKey, privateKey),
+                    leafKeyPair,
                     x509CertificateConverter.getCertificate(x509.build(signer)),
                     x509CertificateConverter.getCertificate(parent));
         } catch (Exception e) {
@@ -105,6 +140,47 @@ public class CertUtil {
         }
     }
 
+    /**
+     * Get the signature algorithm of the signing key, ECDSA keys of P-384 or larger are signed with SHA-384.
+     *
+     * @param signingKey the signing key
+     * @return the signature algorithm
+     */
+    public static String signatureAlgorithm(PrivateKey signingKey) {
+        if (signingKey instanceof ECKey) {
+            int fieldSize = ((ECKey) signingKey).getParams().getCurve().getField().getFieldSize();
+            return fieldSize >= 384 ? "SHA384withECDSA" : "SHA256withECDSA";
+        }
+        return "SHA256WithRSAEncryption";
+    }
+
+    /**
+     * Check if the private key belongs to the certificate, by verifying a signature of the key with the public key
+     * of the certificate.
+     *
+     * @param certificate the certificate
+     * @param key the private key
+     * @return {@code true} if the key belongs to the certificate
+     */
+    public static boolean isKeyOf(X509CertificateHolder certificate, PrivateKeyInfo key) {
+        try {
+            JcaPEMKeyConverter converter = new JcaPEMKeyConverter().setProvider(PROVIDER);
+            PrivateKey privateKey = converter.getPrivateKey(key);
+            byte[] challenge = new byte[32];
+            new SecureRandom().nextBytes(challenge);
+            Signature signer = Signature.getInstance(signatureAlgorithm(privateKey), PROVIDER);
+            signer.initSign(privateKey);
+            signer.update(challenge);
+            byte[] signature = signer.sign();
+            Signature verifier = Signature.getInstance(signatureAlgorithm(privateKey), PROVIDER);
+            verifier.initVerify(converter.getPublicKey(certificate.getSubjectPublicKeyInfo()));
+            verifier.update(challenge);
+            return verifier.verify(signature);
+        } catch (IOException | GeneralSecurityException e) {
+            return false;
+        }
+    }
+
     /**
      * Read pem from file.
      *
@@ -193,7 +269,7 @@ public class CertUtil {
                 new X500Name(subject),
                 keyPair.getPublic());
         certBuilder.addExtension(Extension.basicConstraints, true, new BasicConstraints(0));
-        ContentSigner signer = new JcaContentSignerBuilder("SHA256WithRSAEncryption")
+        ContentSigner signer = new JcaContentSignerBuilder(signatureAlgorithm(keyPair.getPrivate()))
                 .build(keyPair.getPrivate());
         return new JcaX509CertificateConverter().getCertificate(certBuilder.build(signer));
     }
@@ -209,8 +285,26 @@ public class CertUtil {
      */
     public static void createCACertificates(File caCertFile, File caPrivateFile, String subject, int keySize)
             throws Exception {
+        createCACertificates(caCertFile, caPrivateFile, subject, generateKeyPair(keySize));
+    }
 
-        KeyPair keyPair = generateKeyPair(keySize);
+    /**
+     * Create the CA certificate and key with the key algorithm, it does overwrite existing certificates if they
+     * are present.
+     *
+     * @param caCertFile the file of the CA certificate
+     * @param caPrivateFile the file of the CA private key
+     * @param subject the subject of the CA certificate
+     * @param keyAlgorithm the key algorithm
+     * @throws Exception if failed to create the certificate
+     */
+    public static void createCACertificates(File caCertFile, File caPrivateFile, String subject,
+                                            KeyAlgorithm keyAlgorithm) throws Exception {
+        createCACertificates(caCertFile, caPrivateFile, subject, keyAlgorithm.generateKeyPair());
+    }
+
+    private static void createCACertificates(File caCertFile, File caPrivateFile, String subject, KeyPair keyPair)
+            throws Exception {
         if (caCertFile.exists()) {
             caCertFile.delete();
         }
@@ -0,0 +1,206 @@
+package com.github.chhsiao90.nitmproxy.tls;
+
+import com.github.chhsiao90.nitmproxy.Address;
+import com.github.chhsiao90.nitmproxy.ConnectionContext;
+import com.github.chhsiao90.nitmproxy.NitmProxyConfig;
+import com.github.chhsiao90.nitmproxy.exception.TlsException;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.util.ReferenceCountUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.TrustManager;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * Pool of long-lived client {@link SslContext}s, so that the sessions to the origin servers could be resumed.
+ *
+ * <p>The contexts are keyed by the trust configuration, the client key manager and the ALPN protocols.
+ * Since a context is shared by connections, the connection under handshake is resolved by its engine
+ * while the unsafe access is being checked, so that the concurrent handshakes to the same server are resolved
+ * to their own connections.</p>
+ */
+public class ClientSslContextPool {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClientSslContextPool.class);
+
+    // The accessor of the JDK engine wrapped by netty for ALPN, null if not available
+    private static final Method WRAPPED_ENGINE = wrappedEngineMethod();
+
+    private final NitmProxyConfig config;
+    private final Cache<Key, SslContext> contexts;
+    private final ConcurrentMap<SSLEngine, ConnectionContext> handshaking;
+    private final HandshakeStats stats;
+    private final VerifiedChainCache verifiedChains;
+
+    public ClientSslContextPool(NitmProxyConfig config) {
+        this.config = checkNotNull(config, "config");
+        this.contexts = CacheBuilder
+                .newBuilder()
+                .maximumSize(config.getClientContextPoolSize())
+                .removalListener((RemovalListener<Key, SslContext>) removal ->
+                        ReferenceCountUtil.release(removal.getValue()))
+                .build();
+        this.handshaking = new ConcurrentHashMap<>();
+        this.stats = new HandshakeStats();
+        this.verifiedChains = new VerifiedChainCache(
+                config.getVerifiedChainCacheSize(), config.getVerifiedChainTtlSeconds());
+    }
+
+    /**
+     * Get the shared client context of the ALPN protocols.
+     *
+     * @param alpnProtocols the ALPN protocols
+     * @return the client context
+     * @throws TlsException if failed to build the context
+     */
+    public SslContext get(List<String> alpnProtocols) {
+        Key key = new Key(config, alpnProtocols);
+        try {
+            return contexts.get(key, () -> TlsUtil.newClientContext(
+                    config, alpnProtocols, this::resolve, verifiedChains));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            throw new TlsException("Create client context failed", e.getCause());
+        }
+    }
+
+    /**
+     * Create a new {@link SslHandler} to the server of the connection. The peer host and port are always
+     * given, so that the session could be resumed by the next connection to the same server.
+     *
+     * @param context the connection context
+     * @param alloc the allocator
+     * @param delegatedTaskExecutor the executor of the delegated tasks of the engine
+     * @return the ssl handler
+     */
+    public SslHandler newHandler(ConnectionContext context, ByteBufAllocator alloc, Executor delegatedTaskExecutor) {
+        Address serverAddr = context.getServerAddr();
+        List<String> alpnProtocols = TlsUtil.serverAlpnProtocols(context.tlsCtx());
+        String host = serverAddr.getHost();
+        int port = serverAddr.getPort();
+        Function<SslContext, SslHandler> factory = ctx -> ctx.newHandler(alloc, host, port, delegatedTaskExecutor);
+        SslHandler sslHandler = TlsUtil.newHandler(() -> get(alpnProtocols), factory);
+        SSLEngine engine = sslHandler.engine();
+        SSLEngine wrappedEngine = unwrap(engine);
+        handshaking.put(engine, context);
+        handshaking.put(wrappedEngine, context);
+        sslHandler.handshakeFuture().addListener(future -> {
+            handshaking.remove(engine);
+            handshaking.remove(wrappedEngine);
+            if (future.isSuccess()) {
+                stats.record(sslHandler.engine());
+            }
+        });
+        return sslHandler;
+    }
+
+    public HandshakeStats stats() {
+        return stats;
+    }
+
+    /**
+     * Get the cache of the server chains verified by the contexts of this pool.
+     *
+     * @return the verified chain cache
+     */
+    public VerifiedChainCache verifiedChains() {
+        return verifiedChains;
+    }
+
+    public void invalidateAll() {
+        contexts.invalidateAll();
+    }
+
+    public long size() {
+        return contexts.size();
+    }
+
+    /**
+     * Resolve the connection of the engine under handshake.
+     */
+    private ConnectionContext resolve(SSLEngine engine) {
+        return engine == null ? null : handshaking.get(engine);
+    }
+
+    /**
+     * Get the engine wrapped by netty for ALPN, which is the engine given to the trust manager by the JDK,
+     * or the engine itself if it's not wrapped.
+     */
+    private static SSLEngine unwrap(SSLEngine engine) {
+        if (WRAPPED_ENGINE == null || !WRAPPED_ENGINE.getDeclaringClass().isInstance(engine)) {
+            return engine;
+        }
+        try {
+            return (SSLEngine) WRAPPED_ENGINE.invoke(engine);
+        } catch (ReflectiveOperationException e) {
+            throw new TlsException("Unwrap engine failed", e);
+        }
+    }
+
+    private static Method wrappedEngineMethod() {
+        try {
+            Method method = Class.forName("io.netty.handler.ssl.JdkSslEngine").getMethod("getWrappedEngine");
+            method.setAccessible(true);
+            return method;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOGGER.warn("Wrapped JDK engines are not resolvable, the unsafe access of them is not supported", e);
+            return null;
+        }
+    }
+
+    private static class Key {
+        private final TrustManager trustManager;
+        private final boolean insecure;
+        private final UnsafeAccessSupport unsafeAccessSupport;
+        private final KeyManagerFactory keyManagerFactory;
+        private final List<String> alpnProtocols;
+
+        private Key(NitmProxyConfig config, List<String> alpnProtocols) {
+            this.trustManager = config.getTrustManager();
+            this.insecure = config.isInsecure();
+            this.unsafeAccessSupport = config.getUnsafeAccessSupport();
+            this.keyManagerFactory = config.getClientKeyManagerFactory();
+            this.alpnProtocols = alpnProtocols;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return insecure == key.insecure
+                   && trustManager == key.trustManager
+                   && unsafeAccessSupport == key.unsafeAccessSupport
+                   && keyManagerFactory == key.keyManagerFactory
+                   && alpnProtocols.equals(key.alpnProtocols);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(trustManager), insecure,
+                    System.identityHashCode(unsafeAccessSupport), System.identityHashCode(keyManagerFactory),
+                    alpnProtocols);
+        }
+    }
+}
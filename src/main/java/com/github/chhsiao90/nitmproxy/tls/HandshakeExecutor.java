@@ -0,0 +1,131 @@
+package com.github.chhsiao90.nitmproxy.tls;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * Executor of the delegated tasks of the {@link javax.net.ssl.SSLEngine}s, such as the certificate verification
+ * and the key exchange, so that the expensive handshakes don't delay the established connections sharing the
+ * same event loop.
+ *
+ * <p>With no threads, the tasks are run in the event loop as they are without this executor. A task rejected
+ * by the full queue is also run in the event loop.</p>
+ */
+public class HandshakeExecutor implements Executor {
+
+    private final ThreadPoolExecutor executor;
+
+    private final LongAdder taskCount;
+    private final LongAdder taskNanos;
+    private final LongAccumulator maxTaskNanos;
+    private final LongAdder rejectedCount;
+
+    /**
+     * Create an executor.
+     *
+     * @param threads the number of the threads, or {@code 0} to run the tasks in the event loop
+     * @param queueSize the maximum number of the queued tasks
+     */
+    public HandshakeExecutor(int threads, int queueSize) {
+        checkArgument(threads >= 0, "threads must not be negative: %s", threads);
+        checkArgument(threads == 0 || queueSize > 0, "queueSize must be positive: %s", queueSize);
+        if (threads > 0) {
+            this.executor = new ThreadPoolExecutor(
+                    threads, threads,
+                    60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(queueSize),
+                    new DefaultThreadFactory("nitmproxy-handshake", true));
+            this.executor.allowCoreThreadTimeOut(true);
+        } else {
+            this.executor = null;
+        }
+        this.taskCount = new LongAdder();
+        this.taskNanos = new LongAdder();
+        this.maxTaskNanos = new LongAccumulator(Math::max, 0);
+        this.rejectedCount = new LongAdder();
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (executor == null) {
+            run(task);
+            return;
+        }
+        try {
+            executor.execute(() -> run(task));
+        } catch (RejectedExecutionException e) {
+            rejectedCount.increment();
+            run(task);
+        }
+    }
+
+    /**
+     * Get the number of the tasks waiting for a thread.
+     *
+     * @return the queue depth
+     */
+    public int queueDepth() {
+        return executor == null ? 0 : executor.getQueue().size();
+    }
+
+    public long taskCount() {
+        return taskCount.sum();
+    }
+
+    /**
+     * Get the average running time of the tasks.
+     *
+     * @return the average time in nanoseconds, or {@code 0} if no task was run
+     */
+    public long averageTaskNanos() {
+        long count = taskCount.sum();
+        return count == 0 ? 0 : taskNanos.sum() / count;
+    }
+
+    public long maxTaskNanos() {
+        return maxTaskNanos.get();
+    }
+
+    /**
+     * Get the number of the tasks which were run in the event loop since the queue was full.
+     *
+     * @return the number of the rejected tasks
+     */
+    public long rejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    private void run(Runnable task) {
+        long start = System.nanoTime();
+        try {
+            task.run();
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            taskCount.increment();
+            taskNanos.add(elapsed);
+            maxTaskNanos.accumulate(elapsed);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("HandshakeExecutor{tasks=%d, avg=%dus, max=%dus, queued=%d, rejected=%d}",
+                taskCount(), TimeUnit.NANOSECONDS.toMicros(averageTaskNanos()),
+                TimeUnit.NANOSECONDS.toMicros(maxTaskNanos()), queueDepth(), rejectedCount());
+    }
+}
@@ -0,0 +1,42 @@
+package com.github.chhsiao90.nitmproxy.tls;
+
+import com.github.chhsiao90.nitmproxy.enums.HandshakePhase;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Latency histograms of the {@link HandshakePhase phases} of all the connections.
+ */
+public class HandshakeLatency {
+
+    private final Map<HandshakePhase, LatencyHistogram> histograms;
+
+    public HandshakeLatency() {
+        histograms = new EnumMap<>(HandshakePhase.class);
+        for (HandshakePhase phase : HandshakePhase.values()) {
+            histograms.put(phase, new LatencyHistogram());
+        }
+    }
+
+    public void record(HandshakePhase phase, long nanos) {
+        histograms.get(phase).record(nanos);
+    }
+
+    public LatencyHistogram histogram(HandshakePhase phase) {
+        return histograms.get(phase);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("HandshakeLatency{");
+        String separator = "";
+        for (Map.Entry<HandshakePhase, LatencyHistogram> entry : histograms.entrySet()) {
+            if (entry.getValue().count() > 0) {
+                builder.append(separator).append(entry.getKey()).append("=[").append(entry.getValue()).append(']');
+                separator = ", ";
+            }
+        }
+        return builder.append('}').toString();
+    }
+}
@@ -0,0 +1,80 @@
+package com.github.chhsiao90.nitmproxy.tls;
+
+import io.netty.handler.ssl.ReferenceCountedOpenSslEngine;
+import io.netty.internal.tcnative.SSL;
+
+import javax.net.ssl.SSLEngine;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the completed handshakes, separated by whether the session was resumed.
+ *
+ * <p>Only the OpenSSL engines tell whether the session was resumed, the handshakes of the other engines are
+ * counted as unknown.</p>
+ */
+public class HandshakeStats {
+
+    private final LongAdder fullCount = new LongAdder();
+    private final LongAdder resumedCount = new LongAdder();
+    private final LongAdder unknownCount = new LongAdder();
+
+    /**
+     * Record a completed handshake of the engine.
+     *
+     * @param engine the engine which completed the handshake
+     */
+    public void record(SSLEngine engine) {
+        if (!(engine instanceof ReferenceCountedOpenSslEngine)) {
+            unknownCount.increment();
+        } else if (isResumed((ReferenceCountedOpenSslEngine) engine)) {
+            resumedCount.increment();
+        } else {
+            fullCount.increment();
+        }
+    }
+
+    public long handshakeCount() {
+        return fullCount.sum() + resumedCount.sum() + unknownCount.sum();
+    }
+
+    public long fullCount() {
+        return fullCount.sum();
+    }
+
+    public long resumedCount() {
+        return resumedCount.sum();
+    }
+
+    /**
+     * Get the count of the handshakes by the engines which don't tell whether the session was resumed.
+     *
+     * @return the count
+     */
+    public long unknownCount() {
+        return unknownCount.sum();
+    }
+
+    /**
+     * Get the ratio of the resumed handshakes, among the handshakes known to be either full or resumed.
+     *
+     * @return the ratio, or {@code 0} if there was no such handshake
+     */
+    public double resumedRatio() {
+        long resumed = resumedCount.sum();
+        long total = resumed + fullCount.sum();
+        return total == 0 ? 0 : (double) resumed / total;
+    }
+
+    private static boolean isResumed(ReferenceCountedOpenSslEngine engine) {
+        synchronized (engine) {
+            long ssl = engine.sslPointer();
+            return ssl != 0 && SSL.isSessionReused(ssl);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("HandshakeStats{full=%d, resumed=%d, unknown=%d}",
+                fullCount(), resumedCount(), unknownCount());
+    }
+}
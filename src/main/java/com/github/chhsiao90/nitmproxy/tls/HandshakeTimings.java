@@ -0,0 +1,95 @@
+package com.github.chhsiao90.nitmproxy.tls;
+
+import com.github.chhsiao90.nitmproxy.enums.HandshakePhase;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+import java.util.function.ObjLongConsumer;
+
+import static java.lang.String.*;
+
+/**
+ * Timings of the {@link HandshakePhase phases} of a connection. Each measured phase is reported to the sink once
+ * it ended, a phase that began again, like the connect of the next server, is measured and reported again.
+ */
+public class HandshakeTimings {
+
+    private static final long NOT_STARTED = Long.MIN_VALUE;
+    private static final long NOT_MEASURED = -1;
+    private static final HandshakePhase[] PHASES = HandshakePhase.values();
+
+    private final ObjLongConsumer<HandshakePhase> sink;
+    private final LongSupplier nanoClock;
+    private final AtomicLongArray starts;
+    private final AtomicLongArray durations;
+
+    public HandshakeTimings() {
+        this((phase, nanos) -> {
+            // not reported
+        });
+    }
+
+    public HandshakeTimings(ObjLongConsumer<HandshakePhase> sink) {
+        this(sink, System::nanoTime);
+    }
+
+    HandshakeTimings(ObjLongConsumer<HandshakePhase> sink, LongSupplier nanoClock) {
+        this.sink = sink;
+        this.nanoClock = nanoClock;
+        this.starts = new AtomicLongArray(PHASES.length);
+        this.durations = new AtomicLongArray(PHASES.length);
+        for (int i = 0; i < PHASES.length; i++) {
+            starts.set(i, NOT_STARTED);
+            durations.set(i, NOT_MEASURED);
+        }
+    }
+
+    /**
+     * Mark the beginning of the phase.
+     *
+     * @param phase the phase
+     */
+    public void begin(HandshakePhase phase) {
+        starts.set(phase.ordinal(), nanoClock.getAsLong());
+    }
+
+    /**
+     * Mark the end of the phase, and report its duration. Nothing is reported if the phase has not begun, or has
+     * ended already.
+     *
+     * @param phase the phase
+     */
+    public void end(HandshakePhase phase) {
+        long start = starts.getAndSet(phase.ordinal(), NOT_STARTED);
+        if (start == NOT_STARTED) {
+            return;
+        }
+        long nanos = Math.max(0, nanoClock.getAsLong() - start);
+        durations.set(phase.ordinal(), nanos);
+        sink.accept(phase, nanos);
+    }
+
+    /**
+     * Get the last measured duration of the phase.
+     *
+     * @param phase the phase
+     * @return the duration in nanoseconds, or {@code -1} if the phase was not measured
+     */
+    public long nanos(HandshakePhase phase) {
+        return durations.get(phase.ordinal());
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("HandshakeTimings{");
+        String separator = "";
+        for (HandshakePhase phase : PHASES) {
+            long nanos = nanos(phase);
+            if (nanos != NOT_MEASURED) {
+                builder.append(separator).append(format("%s=%.3fms", phase, nanos / 1e6));
+                separator = ", ";
+            }
+        }
+        return builder.append('}').toString();
+    }
+}
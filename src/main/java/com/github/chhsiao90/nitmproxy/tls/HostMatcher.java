@@ -0,0 +1,118 @@
+package com.github.chhsiao90.nitmproxy.tls;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * Matcher of the hosts against the patterns, which are compiled into a trie of the reversed domain labels, so
+ * that a match only costs one lookup per label of the host regardless of the number of the patterns.
+ *
+ * <p>The supported patterns are:</p>
+ * <ul>
+ *   <li>{@code example.com}, which matches the host exactly</li>
+ *   <li>{@code *.example.com}, which matches the subdomains of any depth, but not {@code example.com}</li>
+ * </ul>
+ * <p>The hosts and the patterns are case-insensitive, and the trailing dots are ignored.</p>
+ */
+public class HostMatcher {
+
+    public static final HostMatcher EMPTY = new HostMatcher(new Node(), 0);
+
+    private static final String WILDCARD_PREFIX = "*.";
+
+    private final Node root;
+    private final int size;
+
+    private HostMatcher(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Compile the patterns.
+     *
+     * @param patterns the patterns
+     * @return the matcher
+     * @throws IllegalArgumentException if any pattern was invalid
+     */
+    public static HostMatcher compile(Collection<String> patterns) {
+        if (patterns == null || patterns.isEmpty()) {
+            return EMPTY;
+        }
+        Node root = new Node();
+        for (String pattern : patterns) {
+            String host = normalize(pattern);
+            boolean wildcard = host.startsWith(WILDCARD_PREFIX);
+            if (wildcard) {
+                host = host.substring(WILDCARD_PREFIX.length());
+            }
+            checkArgument(!host.isEmpty() && !host.contains("*") && !host.startsWith(".") && !host.contains(".."),
+                    "Invalid host pattern: %s", pattern);
+            Node node = root;
+            String[] labels = host.split("\\.");
+            for (int i = labels.length - 1; i >= 0; i--) {
+                node = node.children.computeIfAbsent(labels[i], label -> new Node());
+            }
+            if (wildcard) {
+                node.wildcard = true;
+            } else {
+                node.exact = true;
+            }
+        }
+        return new HostMatcher(root, patterns.size());
+    }
+
+    /**
+     * Check if the host matches any pattern.
+     *
+     * @param host the host
+     * @return {@code true} if the host was matched
+     */
+    public boolean matches(String host) {
+        if (host == null || size == 0) {
+            return false;
+        }
+        String normalized = normalize(host);
+        Node node = root;
+        int end = normalized.length();
+        while (end > 0) {
+            int start = normalized.lastIndexOf('.', end - 1) + 1;
+            node = node.children.get(normalized.substring(start, end));
+            if (node == null) {
+                return false;
+            }
+            if (start == 0) {
+                return node.exact;
+            }
+            if (node.wildcard) {
+                return true;
+            }
+            end = start - 1;
+        }
+        return false;
+    }
+
+    /**
+     * Get the number of the patterns.
+     *
+     * @return the number of the patterns
+     */
+    public int size() {
+        return size;
+    }
+
+    private static String normalize(String host) {
+        String normalized = host.trim().toLowerCase(Locale.ROOT);
+        return normalized.endsWith(".") ? normalized.substring(0, normalized.length() - 1) : normalized;
+    }
+
+    private static class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        private boolean exact;
+        private boolean wildcard;
+    }
+}
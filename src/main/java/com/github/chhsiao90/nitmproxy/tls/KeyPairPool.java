@@ -0,0 +1,115 @@
+package com.github.chhsiao90.nitmproxy.tls;
+
+import com.github.chhsiao90.nitmproxy.enums.KeyAlgorithm;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.security.KeyPair;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * Pool of pre-generated key pairs, so that minting a certificate of a new host only costs the signing.
+ *
+ * <p>The pool is refilled up to the high watermark in the background once its depth drops below the low
+ * watermark. A {@link #take()} from an empty pool generates the key pair in the caller's thread, and is counted
+ * as a starvation.</p>
+ */
+public class KeyPairPool {
+    private static final Logger LOGGER = LoggerFactory.getLogger(KeyPairPool.class);
+
+    private final KeyAlgorithm keyAlgorithm;
+    private final int lowWatermark;
+    private final int highWatermark;
+
+    private final BlockingQueue<KeyPair> keyPairs;
+    private final ThreadPoolExecutor refillExecutor;
+    private final AtomicBoolean refilling;
+    private final LongAdder starvations;
+
+    public KeyPairPool(KeyAlgorithm keyAlgorithm, int lowWatermark, int highWatermark) {
+        checkArgument(lowWatermark >= 0 && lowWatermark <= highWatermark,
+                "illegal watermarks: low=%s, high=%s", lowWatermark, highWatermark);
+        this.keyAlgorithm = checkNotNull(keyAlgorithm, "keyAlgorithm");
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = highWatermark;
+        this.keyPairs = new LinkedBlockingQueue<>();
+        this.refillExecutor = new ThreadPoolExecutor(
+                1, 1,
+                60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new DefaultThreadFactory("nitmproxy-keypair", true));
+        this.refillExecutor.allowCoreThreadTimeOut(true);
+        this.refilling = new AtomicBoolean();
+        this.starvations = new LongAdder();
+        refill();
+    }
+
+    /**
+     * Take a key pair from the pool, or generate a new one if the pool was drained.
+     *
+     * @return the key pair
+     */
+    public KeyPair take() {
+        KeyPair keyPair = keyPairs.poll();
+        if (keyPairs.size() < lowWatermark) {
+            refill();
+        }
+        if (keyPair == null) {
+            starvations.increment();
+            keyPair = keyAlgorithm.generateKeyPair();
+        }
+        return keyPair;
+    }
+
+    public KeyAlgorithm keyAlgorithm() {
+        return keyAlgorithm;
+    }
+
+    /**
+     * Get the number of the pre-generated key pairs.
+     *
+     * @return the depth of the pool
+     */
+    public int depth() {
+        return keyPairs.size();
+    }
+
+    /**
+     * Get the number of the takes which found the pool drained.
+     *
+     * @return the number of starvations
+     */
+    public long starvations() {
+        return starvations.sum();
+    }
+
+    private void refill() {
+        if (highWatermark == 0 || !refilling.compareAndSet(false, true)) {
+            return;
+        }
+        refillExecutor.execute(() -> {
+            try {
+                while (keyPairs.size() < highWatermark) {
+                    keyPairs.add(keyAlgorithm.generateKeyPair());
+                }
+            } catch (RuntimeException e) {
+                LOGGER.error("Refill key pairs of {} failed", keyAlgorithm, e);
+                refilling.set(false);
+                return;
+            }
+            refilling.set(false);
+            // The pool might be drained after the loop ended but before the flag was cleared
+            if (keyPairs.size() < lowWatermark) {
+                refill();
+            }
+        });
+    }
+}
@@ -0,0 +1,118 @@
+package com.github.chhsiao90.nitmproxy.tls;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.base.Preconditions.*;
+import static java.lang.String.*;
+
+/**
+ * Histogram of the latencies in nanoseconds, which could be recorded concurrently without locking.
+ *
+ * <p>Every power of two is split into {@value #SUB_BUCKETS} linear buckets, so that a percentile is accurate to
+ * 1/{@value #SUB_BUCKETS} of its value, from nanoseconds up to hours, within a fixed number of counters.</p>
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = bucketOf(Long.MAX_VALUE) + 1;
+
+    private final LongAdder[] counts;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram() {
+        counts = new LongAdder[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Record a latency, the negative latency is ignored.
+     *
+     * @param nanos the latency in nanoseconds
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            return;
+        }
+        counts[bucketOf(nanos)].increment();
+        count.increment();
+        sum.add(nanos);
+        max.accumulate(nanos);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    /**
+     * Get the mean of the latencies.
+     *
+     * @return the mean in nanoseconds, or {@code 0} if there was no latency
+     */
+    public double mean() {
+        long total = count.sum();
+        return total == 0 ? 0 : (double) sum.sum() / total;
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * Get the latency at the percentile, which is the upper bound of the bucket containing the percentile.
+     *
+     * @param percentile the percentile, from {@code 0} to {@code 100}
+     * @return the latency in nanoseconds, or {@code 0} if there was no latency
+     */
+    public long percentile(double percentile) {
+        checkArgument(percentile >= 0 && percentile <= 100, "Invalid percentile: %s", percentile);
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts[i].sum();
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), max());
+            }
+        }
+        return max();
+    }
+
+    @Override
+    public String toString() {
+        return format("count=%d, mean=%.3fms, p50=%.3fms, p99=%.3fms, max=%.3fms",
+                count(), mean() / 1e6, percentile(50) / 1e6, percentile(99) / 1e6, max() / 1e6);
+    }
+
+    static int bucketOf(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        long lowerBound = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+        return lowerBound + (width - 1);
+    }
+}
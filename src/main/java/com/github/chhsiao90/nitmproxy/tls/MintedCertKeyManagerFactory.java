@@ -0,0 +1,172 @@
+package com.github.chhsiao90.nitmproxy.tls;
+
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.OpenSslCachingX509KeyManagerFactory;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.handler.ssl.util.SimpleKeyManagerFactory;
+
+import javax.net.ssl.ExtendedSSLSession;
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.ManagerFactoryParameters;
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SNIServerName;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.X509ExtendedKeyManager;
+import java.net.Socket;
+import java.security.KeyStore;
+import java.security.Principal;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+
+/**
+ * Key manager factory of the certificates minted by the {@link CertManager}, the certificate is selected by the
+ * SNI of the client, the peer host of the engine, or the default host of the factory, in that order. A factory
+ * without the default host could be shared by the connections of all the hosts.
+ *
+ * <p>The certificates are only read from the cache of the {@link CertManager}, since the signing of a new host
+ * would block the handshake, which might run on the event loop. The certificate of the host is expected to be
+ * minted by {@link CertManager#getCertAsync(String)} before the handshake, the handshake fails otherwise.</p>
+ *
+ * <p>The alias of a certificate is its host and serial number, so that a re-minted certificate of the same host
+ * gets a new alias. With the OpenSSL engines, the factory is wrapped by
+ * {@link OpenSslCachingX509KeyManagerFactory}, which caches the native key material of each alias, so that the
+ * chain is only encoded by the first handshake of the certificate instead of by every context build.</p>
+ */
+public class MintedCertKeyManagerFactory extends SimpleKeyManagerFactory {
+
+    private static final char ALIAS_SEPARATOR = '#';
+
+    private final KeyManager km;
+
+    public MintedCertKeyManagerFactory(CertManager certManager, String defaultHost) {
+        this.km = new MintedCertKeyManager(certManager, defaultHost);
+    }
+
+    /**
+     * Create the key manager factory for the provider.
+     *
+     * @param certManager the cert manager
+     * @param defaultHost the host selected if the engine has neither the SNI nor the peer host, could be null
+     * @param sslProvider the ssl provider of the contexts
+     * @param maxCachedEntries the maximum number of the cached key materials of each context
+     * @return the key manager factory
+     */
+    public static KeyManagerFactory create(CertManager certManager, String defaultHost, SslProvider sslProvider,
+                                           int maxCachedEntries) {
+        KeyManagerFactory factory = new MintedCertKeyManagerFactory(certManager, defaultHost);
+        if (sslProvider == SslProvider.JDK || !OpenSsl.supportsKeyManagerFactory()) {
+            return factory;
+        }
+        return new OpenSslCachingX509KeyManagerFactory(factory, maxCachedEntries);
+    }
+
+    @Override
+    protected void engineInit(KeyStore keyStore, char[] password) {
+    }
+
+    @Override
+    protected void engineInit(ManagerFactoryParameters managerFactoryParameters) {
+    }
+
+    @Override
+    protected KeyManager[] engineGetKeyManagers() {
+        return new KeyManager[] { km };
+    }
+
+    private static class MintedCertKeyManager extends X509ExtendedKeyManager {
+
+        private final CertManager certManager;
+        private final String defaultHost;
+
+        private MintedCertKeyManager(CertManager certManager, String defaultHost) {
+            this.certManager = certManager;
+            this.defaultHost = defaultHost;
+        }
+
+        @Override
+        public String chooseEngineServerAlias(String keyType, Principal[] issuers, SSLEngine engine) {
+            String host = engine == null ? null : requestedHost(engine.getHandshakeSession());
+            if (host == null && engine != null) {
+                host = engine.getPeerHost();
+            }
+            if (host == null) {
+                host = defaultHost;
+            }
+            if (host == null) {
+                return null;
+            }
+            Certificate cert = certManager.getCertIfPresent(host);
+            if (cert == null || !matchesKeyType(cert.getKeyPair().getPrivate().getAlgorithm(), keyType)) {
+                return null;
+            }
+            return certManager.certHost(host) + ALIAS_SEPARATOR + cert.getChain()[0].getSerialNumber().toString(16);
+        }
+
+        @Override
+        public String chooseServerAlias(String keyType, Principal[] issuers, Socket socket) {
+            return null;
+        }
+
+        @Override
+        public String[] getServerAliases(String keyType, Principal[] issuers) {
+            return null;
+        }
+
+        @Override
+        public String chooseClientAlias(String[] keyTypes, Principal[] issuers, Socket socket) {
+            return null;
+        }
+
+        @Override
+        public String[] getClientAliases(String keyType, Principal[] issuers) {
+            return null;
+        }
+
+        @Override
+        public X509Certificate[] getCertificateChain(String alias) {
+            Certificate cert = certOf(alias);
+            return cert == null ? null : cert.getChain();
+        }
+
+        @Override
+        public PrivateKey getPrivateKey(String alias) {
+            Certificate cert = certOf(alias);
+            return cert == null ? null : cert.getKeyPair().getPrivate();
+        }
+
+        private Certificate certOf(String alias) {
+            int separator = alias == null ? -1 : alias.lastIndexOf(ALIAS_SEPARATOR);
+            if (separator < 0) {
+                return null;
+            }
+            Certificate cert = certManager.getCertIfPresent(alias.substring(0, separator));
+            if (cert == null) {
+                return null;
+            }
+            String serialNumber = cert.getChain()[0].getSerialNumber().toString(16);
+            return serialNumber.equals(alias.substring(separator + 1)) ? cert : null;
+        }
+
+        /**
+         * The key type is the key algorithm, optionally followed by the signature algorithm of the issuer, like
+         * {@code EC_RSA}.
+         */
+        private static boolean matchesKeyType(String algorithm, String keyType) {
+            return keyType == null || keyType.equals(algorithm) || keyType.startsWith(algorithm + "_");
+        }
+
+        private static String requestedHost(SSLSession session) {
+            if (!(session instanceof ExtendedSSLSession)) {
+                return null;
+            }
+            for (SNIServerName serverName : ((ExtendedSSLSession) session).getRequestedServerNames()) {
+                if (serverName instanceof SNIHostName) {
+                    return ((SNIHostName) serverName).getAsciiName();
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.github.chhsiao90.nitmproxy.tls;
+
+import com.github.chhsiao90.nitmproxy.NitmProxyConfig;
+import com.github.chhsiao90.nitmproxy.exception.TlsException;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalListener;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.util.ReferenceCountUtil;
+
+import javax.net.ssl.KeyManagerFactory;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+import static com.google.common.base.Preconditions.*;
+import static java.lang.String.*;
+
+/**
+ * Cache of ready-to-use server {@link SslContext}s, keyed by the host of the certificate and the ALPN protocols.
+ *
+ * <p>The removed contexts are released, the engines that are still in use keep their contexts alive until
+ * they are released by their handlers.</p>
+ *
+ * <p>The contexts select the certificates during the handshakes by {@link MintedCertKeyManagerFactory}, so that
+ * the chains are not encoded by the context builds. In the shared mode, a single context of each ALPN protocols
+ * serves all the hosts, the certificate is selected by the SNI, or the host given to
+ * {@link #newHandler(String, List, ByteBufAllocator, Executor)} if the client sent no SNI.</p>
+ *
+ * <p>All the contexts share the same rotating {@link SessionTicketKeys}, so that the sessions are resumed
+ * across the rebuilt contexts of the host.</p>
+ */
+public class ServerSslContextCache {
+
+    private static final String SHARED_HOST = "*";
+
+    private final NitmProxyConfig config;
+    private final CertManager certManager;
+
+    private final Cache<Key, Entry> contexts;
+    private final SessionTicketKeys sessionTicketKeys;
+    private final HandshakeStats handshakeStats;
+
+    public ServerSslContextCache(NitmProxyConfig config, CertManager certManager) {
+        this.config = checkNotNull(config, "config");
+        this.certManager = checkNotNull(certManager, "certManager");
+        this.contexts = CacheBuilder
+                .newBuilder()
+                .maximumSize(config.getServerContextCacheSize())
+                .recordStats()
+                .removalListener((RemovalListener<Key, Entry>) removal ->
+                        ReferenceCountUtil.release(removal.getValue().context))
+                .build();
+        this.sessionTicketKeys = new SessionTicketKeys(config.getSessionTicketKeyRotationSeconds());
+        this.handshakeStats = new HandshakeStats();
+    }
+
+    /**
+     * Get the server context for the host, the context will be rebuilt if the certificate was changed. If the
+     * contexts were shared, the same context is returned for all the hosts, see
+     * {@link NitmProxyConfig#isSharedServerContext()}.
+     *
+     * <p>The certificate is never minted by the caller, which is usually the event loop. It is expected to be
+     * minted by {@link CertManager#getCertAsync(String)} before the handshake, a certificate evicted since then is
+     * minted again in the background, and the cached context is kept until the certificate was minted.</p>
+     *
+     * @param host the host
+     * @param alpnProtocols the ALPN protocols
+     * @return the server context
+     * @throws TlsException if failed to build the context
+     */
+    public SslContext get(String host, List<String> alpnProtocols) {
+        if (sessionTicketKeys.rotateIfDue()) {
+            contexts.asMap().values().forEach(entry -> sessionTicketKeys.apply(entry.context));
+        }
+        // The shared contexts are rebuilt once the CA was rotated, which drops the cached key materials of the
+        // certificates of the old CA
+        Key key;
+        Object version;
+        if (config.isSharedServerContext()) {
+            key = new Key(SHARED_HOST, alpnProtocols);
+            version = certManager.caCertificate();
+        } else {
+            key = new Key(certManager.certHost(host), alpnProtocols);
+            version = certManager.getCertIfPresent(host);
+            if (version == null) {
+                certManager.getCertAsync(host);
+            }
+        }
+        Entry entry = load(key, version);
+        if (version != null && entry.version != version) {
+            contexts.asMap().remove(key, entry);
+            entry = load(key, version);
+        }
+        return entry.context;
+    }
+
+    /**
+     * Create a new {@link SslHandler} from the server context of the host.
+     *
+     * @param host the host
+     * @param alpnProtocols the ALPN protocols
+     * @param alloc the allocator
+     * @param delegatedTaskExecutor the executor of the delegated tasks of the engine
+     * @return the ssl handler
+     * @throws TlsException if failed to build the context
+     */
+    public SslHandler newHandler(String host, List<String> alpnProtocols, ByteBufAllocator alloc,
+                                 Executor delegatedTaskExecutor) {
+        Function<SslContext, SslHandler> factory = ctx -> ctx.newHandler(alloc, host, -1, delegatedTaskExecutor);
+        SslHandler sslHandler = TlsUtil.newHandler(() -> get(host, alpnProtocols), factory);
+        sslHandler.handshakeFuture().addListener(future -> {
+            if (future.isSuccess()) {
+                handshakeStats.record(sslHandler.engine());
+            }
+        });
+        return sslHandler;
+    }
+
+    /**
+     * Invalidate all the contexts of the host, which are shared with the sibling subdomains in the wildcard mode.
+     *
+     * @param host the host
+     */
+    public void invalidate(String host) {
+        String certHost = certManager.certHost(host);
+        contexts.asMap().keySet().removeIf(key -> key.host.equals(certHost));
+    }
+
+    public void invalidateAll() {
+        contexts.invalidateAll();
+    }
+
+    public long size() {
+        return contexts.size();
+    }
+
+    public CacheStats stats() {
+        return contexts.stats();
+    }
+
+    /**
+     * Get the handshakes of the clients, separated by whether the session was resumed.
+     *
+     * @return the handshake stats
+     */
+    public HandshakeStats handshakeStats() {
+        return handshakeStats;
+    }
+
+    private Entry load(Key key, Object version) {
+        try {
+            return contexts.get(key, () -> {
+                String defaultHost = SHARED_HOST.equals(key.host) ? null : key.host;
+                KeyManagerFactory keyManagerFactory = MintedCertKeyManagerFactory.create(certManager, defaultHost,
+                        TlsUtil.sslProvider(config), config.getKeyMaterialCacheSize());
+                SslContext context = TlsUtil.newServerContext(config, keyManagerFactory, key.alpnProtocols);
+                sessionTicketKeys.apply(context);
+                return new Entry(version, context);
+            });
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            throw new TlsException(format("Create server context failed: %s", key.host), e.getCause());
+        }
+    }
+
+    private static class Key {
+        private final String host;
+        private final List<String> alpnProtocols;
+
+        private Key(String host, List<String> alpnProtocols) {
+            this.host = host;
+            this.alpnProtocols = alpnProtocols;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return host.equals(key.host) && alpnProtocols.equals(key.alpnProtocols);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(host, alpnProtocols);
+        }
+    }
+
+    /**
+     * The context with the version it was built for, which is the certificate of the host, or the CA of the
+     * shared contexts. The version is null if the certificate was not minted yet when the context was built.
+     */
+    private static class Entry {
+        private final Object version;
+        private final SslContext context;
+
+        private Entry(Object version, SslContext context) {
+            this.version = version;
+            this.context = context;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.github.chhsiao90.nitmproxy.tls;
+
+import io.netty.handler.ssl.OpenSslServerSessionContext;
+import io.netty.handler.ssl.OpenSslSessionTicketKey;
+import io.netty.handler.ssl.SslContext;
+import io.netty.util.IllegalReferenceCountException;
+import io.netty.util.ReferenceCounted;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * Session ticket keys shared by all the server contexts, so that a client could resume its session even after
+ * the context of the host was rebuilt.
+ *
+ * <p>The keys are rotated once the rotation interval elapsed, new tickets are encrypted by the current key,
+ * while the tickets encrypted by the previous key are still accepted. Only the OpenSSL contexts support the
+ * shared keys, the JDK contexts keep their own keys.</p>
+ */
+public class SessionTicketKeys {
+
+    private static final int KEY_SIZE = 16;
+
+    private final long rotationNanos;
+    private final LongSupplier nanoClock;
+    private final SecureRandom random;
+
+    private volatile OpenSslSessionTicketKey[] keys;
+    private long rotatedAt;
+
+    /**
+     * Create the keys.
+     *
+     * @param rotationSeconds the rotation interval in seconds, or {@code 0} to never rotate
+     */
+    public SessionTicketKeys(long rotationSeconds) {
+        this(rotationSeconds, System::nanoTime);
+    }
+
+    SessionTicketKeys(long rotationSeconds, LongSupplier nanoClock) {
+        checkArgument(rotationSeconds >= 0, "rotationSeconds must not be negative: %s", rotationSeconds);
+        this.rotationNanos = TimeUnit.SECONDS.toNanos(rotationSeconds);
+        this.nanoClock = nanoClock;
+        this.random = new SecureRandom();
+        this.keys = new OpenSslSessionTicketKey[] { newKey() };
+        this.rotatedAt = nanoClock.getAsLong();
+    }
+
+    /**
+     * Get the keys, the current key comes first.
+     *
+     * @return the keys
+     */
+    public OpenSslSessionTicketKey[] keys() {
+        return keys.clone();
+    }
+
+    /**
+     * Rotate the keys if the rotation interval elapsed.
+     *
+     * @return {@code true} if the keys were rotated
+     */
+    public synchronized boolean rotateIfDue() {
+        if (rotationNanos == 0 || nanoClock.getAsLong() - rotatedAt < rotationNanos) {
+            return false;
+        }
+        keys = new OpenSslSessionTicketKey[] { newKey(), keys[0] };
+        rotatedAt = nanoClock.getAsLong();
+        return true;
+    }
+
+    /**
+     * Apply the keys to the server context.
+     *
+     * @param sslContext the server context
+     */
+    public void apply(SslContext sslContext) {
+        if (!(sslContext.sessionContext() instanceof OpenSslServerSessionContext)) {
+            return;
+        }
+        if (!(sslContext instanceof ReferenceCounted)) {
+            ((OpenSslServerSessionContext) sslContext.sessionContext()).setTicketKeys(keys);
+            return;
+        }
+        // The context could be released by a concurrent eviction
+        try {
+            ((ReferenceCounted) sslContext).retain();
+        } catch (IllegalReferenceCountException e) {
+            return;
+        }
+        try {
+            ((OpenSslServerSessionContext) sslContext.sessionContext()).setTicketKeys(keys);
+        } finally {
+            ((ReferenceCounted) sslContext).release();
+        }
+    }
+
+    private OpenSslSessionTicketKey newKey() {
+        byte[] name = new byte[KEY_SIZE];
+        byte[] hmacKey = new byte[KEY_SIZE];
+        byte[] aesKey = new byte[KEY_SIZE];
+        random.nextBytes(name);
+        random.nextBytes(hmacKey);
+        random.nextBytes(aesKey);
+        return new OpenSslSessionTicketKey(name, hmacKey, aesKey);
+    }
+}
@@ -13,6 +13,16 @@ public class TlsContext {
     private UnsafeAccess unsafeAccess = UnsafeAccess.ACCEPT;
     private Promise<List<String>> protocols;
     private Promise<String> protocol;
+    private boolean protocolCached;
+    private final HandshakeTimings timings;
+
+    public TlsContext() {
+        this(new HandshakeTimings());
+    }
+
+    public TlsContext(HandshakeTimings timings) {
+        this.timings = timings;
+    }
 
     public TlsContext protocols(Promise<List<String>> protocols) {
         this.protocols = protocols;
@@ -63,6 +73,36 @@ public class TlsContext {
         return protocol;
     }
 
+    /**
+     * Negotiate the protocol with the client by the cached ALPN result of the server, before the handshake to
+     * the server is completed. The server is still offered all the client protocols, so that the handshake to
+     * the server could verify the cached protocol.
+     *
+     * @param cachedProtocol the protocol last selected by the server
+     */
+    public void negotiateCached(String cachedProtocol) {
+        protocolCached = true;
+        protocol.setSuccess(cachedProtocol);
+    }
+
+    /**
+     * Check if the protocol was negotiated by the cached ALPN result of the server.
+     *
+     * @return {@code true} if the protocol was cached
+     */
+    public boolean isProtocolCached() {
+        return protocolCached;
+    }
+
+    /**
+     * Get the timings of the phases of setting up the TLS connection.
+     *
+     * @return the handshake timings
+     */
+    public HandshakeTimings timings() {
+        return timings;
+    }
+
     public boolean isNegotiated() {
         return protocol.isDone();
     }
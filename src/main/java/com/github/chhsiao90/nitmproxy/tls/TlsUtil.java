@@ -1,21 +1,36 @@
 package com.github.chhsiao90.nitmproxy.tls;
 
 import com.github.chhsiao90.nitmproxy.ConnectionContext;
+import com.github.chhsiao90.nitmproxy.NitmProxyConfig;
+import com.github.chhsiao90.nitmproxy.enums.TlsEngine;
+import com.github.chhsiao90.nitmproxy.exception.TlsException;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.handler.ssl.ApplicationProtocolConfig;
 import io.netty.handler.ssl.ApplicationProtocolConfig.Protocol;
 import io.netty.handler.ssl.ApplicationProtocolConfig.SelectedListenerFailureBehavior;
 import io.netty.handler.ssl.ApplicationProtocolConfig.SelectorFailureBehavior;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.OpenSslSessionContext;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.ssl.SslProvider;
 import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
 import io.netty.handler.ssl.util.TrustManagerFactoryWrapper;
+import io.netty.util.IllegalReferenceCountException;
+import io.netty.util.ReferenceCounted;
 
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLException;
 import javax.net.ssl.TrustManagerFactory;
 import java.security.KeyStore;
 import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import static io.netty.handler.ssl.ApplicationProtocolNames.*;
+import static java.util.Collections.*;
 import static javax.net.ssl.TrustManagerFactory.*;
 
 public final class TlsUtil {
@@ -36,60 +51,186 @@ public final class TlsUtil {
     private TlsUtil() {
     }
 
-    public static SslContext ctxForClient(ConnectionContext context) throws SSLException {
+    /**
+     * Create a new client context, which is expected to be shared by the connections.
+     *
+     * @param config the config
+     * @param alpnProtocols the ALPN protocols
+     * @param contextResolver the resolver of the connection context from the engine under handshake
+     * @param verifiedChains the cache of the verified server chains
+     * @return the client context
+     * @throws SSLException if failed to build the context
+     */
+    public static SslContext newClientContext(NitmProxyConfig config, List<String> alpnProtocols,
+                                              Function<SSLEngine, ConnectionContext> contextResolver,
+                                              VerifiedChainCache verifiedChains)
+            throws SSLException {
         SslContextBuilder builder = SslContextBuilder
                 .forClient()
-                .protocols(context.config().getTlsProtocols())
-                .sslContextProvider(context.config().getSslProvider())
-                .applicationProtocolConfig(applicationProtocolConfig(context.tlsCtx()))
-                .trustManager(trustManagerFactory(context));
-        if (context.config().getClientKeyManagerFactory() != null) {
-            builder.keyManager(context.config().getClientKeyManagerFactory());
+                .sslProvider(sslProvider(config))
+                .protocols(config.getTlsProtocols())
+                .sslContextProvider(config.getSslProvider())
+                .applicationProtocolConfig(applicationProtocolConfig(alpnProtocols))
+                .sessionCacheSize(config.getClientSessionCacheSize())
+                .sessionTimeout(config.getClientSessionTimeoutSeconds())
+                .trustManager(trustManagerFactory(config, contextResolver, verifiedChains));
+        if (config.getClientKeyManagerFactory() != null) {
+            builder.keyManager(config.getClientKeyManagerFactory());
+        }
+        SslContext context = builder.build();
+        if (context.sessionContext() instanceof OpenSslSessionContext) {
+            // The client session cache of OpenSSL is disabled by default
+            ((OpenSslSessionContext) context.sessionContext()).setSessionCacheEnabled(true);
+        }
+        return context;
+    }
+
+    /**
+     * Create a new server {@link SslHandler} of the connection from the shared server context.
+     * The delegated tasks of the handshake are run on the handshake executor.
+     *
+     * @param context the connection context
+     * @param alloc the allocator
+     * @return the ssl handler
+     */
+    public static SslHandler newServerHandler(ConnectionContext context, ByteBufAllocator alloc) {
+        return context.master().serverSslContextCache().newHandler(
+                context.getServerAddr().getHost(),
+                alpnProtocols(context.tlsCtx()),
+                alloc,
+                context.master().handshakeExecutor());
+    }
+
+    /**
+     * Create a new {@link SslHandler} from a shared context which could be released by a concurrent eviction.
+     * The reference counted context is retained while the engine is being created, the engine then holds its
+     * own reference to the context. A context that was already released is fetched again.
+     *
+     * @param contextSupplier the supplier of the shared context
+     * @param handlerFactory the factory of the handler
+     * @return the ssl handler
+     */
+    static SslHandler newHandler(Supplier<SslContext> contextSupplier,
+                                 Function<SslContext, SslHandler> handlerFactory) {
+        while (true) {
+            SslContext sslContext = contextSupplier.get();
+            if (!(sslContext instanceof ReferenceCounted)) {
+                return handlerFactory.apply(sslContext);
+            }
+            try {
+                ((ReferenceCounted) sslContext).retain();
+            } catch (IllegalReferenceCountException e) {
+                continue;
+            }
+            try {
+                return handlerFactory.apply(sslContext);
+            } finally {
+                ((ReferenceCounted) sslContext).release();
+            }
         }
-        return builder.build();
     }
 
-    public static SslContext ctxForServer(ConnectionContext context) throws SSLException {
-        Certificate certificate = context.master().certManager().getCert(context.getServerAddr().getHost());
+    /**
+     * Create a new server context with the key manager factory, which selects the certificate during the
+     * handshake, see {@link MintedCertKeyManagerFactory}.
+     *
+     * @param config the config
+     * @param keyManagerFactory the key manager factory
+     * @param alpnProtocols the ALPN protocols
+     * @return the server context
+     * @throws SSLException if failed to build the context
+     */
+    public static SslContext newServerContext(NitmProxyConfig config, KeyManagerFactory keyManagerFactory,
+                                              List<String> alpnProtocols) throws SSLException {
         return SslContextBuilder
-                .forServer(certificate.getKeyPair().getPrivate(), certificate.getChain())
-                .protocols(context.config().getTlsProtocols())
-                .sslContextProvider(context.config().getSslProvider())
-                .applicationProtocolConfig(applicationProtocolConfig(context.tlsCtx()))
+                .forServer(keyManagerFactory)
+                .sslProvider(sslProvider(config))
+                .protocols(config.getTlsProtocols())
+                .sslContextProvider(config.getSslProvider())
+                .applicationProtocolConfig(applicationProtocolConfig(alpnProtocols))
+                .sessionCacheSize(config.getServerSessionCacheSize())
+                .sessionTimeout(config.getServerSessionTimeoutSeconds())
                 .build();
     }
 
-    private static ApplicationProtocolConfig applicationProtocolConfig(TlsContext tlsContext) {
+    /**
+     * Select the netty {@link SslProvider} of the {@link TlsEngine}. The OpenSSL contexts are reference counted,
+     * the owners of the contexts should release them once they are no longer used. A JSSE provider in
+     * {@link NitmProxyConfig#getSslProvider()} always selects the JDK engine, since it only works with JSSE.
+     *
+     * @param config the config
+     * @return the ssl provider
+     * @throws TlsException if OpenSSL was required but not available
+     */
+    public static SslProvider sslProvider(NitmProxyConfig config) {
+        if (config.getSslProvider() != null) {
+            return SslProvider.JDK;
+        }
+        switch (config.getTlsEngine()) {
+            case JDK:
+                return SslProvider.JDK;
+            case OPENSSL:
+                if (!OpenSsl.isAvailable()) {
+                    throw new TlsException("OpenSSL is not available", OpenSsl.unavailabilityCause());
+                }
+                return SslProvider.OPENSSL_REFCNT;
+            default:
+                return OpenSsl.isAvailable() ? SslProvider.OPENSSL_REFCNT : SslProvider.JDK;
+        }
+    }
+
+    private static ApplicationProtocolConfig applicationProtocolConfig(List<String> alpnProtocols) {
         return new ApplicationProtocolConfig(
                 Protocol.ALPN,
                 SelectorFailureBehavior.NO_ADVERTISE,
                 SelectedListenerFailureBehavior.ACCEPT,
-                alpnProtocols(tlsContext));
+                alpnProtocols);
     }
 
-    private static String[] alpnProtocols(TlsContext tlsCtx) {
+    static List<String> alpnProtocols(TlsContext tlsCtx) {
         if (tlsCtx.isNegotiated()) {
-            return new String[] { tlsCtx.protocol() };
+            return singletonList(tlsCtx.protocol());
         }
         if (tlsCtx.protocolsPromise().isDone()) {
             List<String> protocols = tlsCtx.protocols();
             if (protocols != null && !protocols.isEmpty()) {
-                return protocols.toArray(new String[0]);
+                return protocols;
+            }
+        }
+        return singletonList(HTTP_1_1);
+    }
+
+    /**
+     * Get the ALPN protocols offered to the server. A protocol negotiated by the cache is not final, the server
+     * is offered all the client protocols to verify it.
+     *
+     * @param tlsCtx the tls context
+     * @return the protocols
+     */
+    static List<String> serverAlpnProtocols(TlsContext tlsCtx) {
+        if (tlsCtx.isProtocolCached() && tlsCtx.protocolsPromise().isSuccess()) {
+            List<String> protocols = tlsCtx.protocols();
+            if (protocols != null && !protocols.isEmpty()) {
+                return protocols;
             }
         }
-        return new String[] { HTTP_1_1 };
+        return alpnProtocols(tlsCtx);
     }
 
-    private static TrustManagerFactory trustManagerFactory(ConnectionContext context) {
-        UnsafeAccessSupport unsafeAccessSupport = context.config().getUnsafeAccessSupport();
-        if (context.config().getTrustManager() != null) {
+    private static TrustManagerFactory trustManagerFactory(NitmProxyConfig config,
+            Function<SSLEngine, ConnectionContext> contextResolver, VerifiedChainCache verifiedChains) {
+        UnsafeAccessSupport unsafeAccessSupport = config.getUnsafeAccessSupport();
+        if (config.getTrustManager() != null) {
             return unsafeAccessSupport.create(
-                    new TrustManagerFactoryWrapper(context.config().getTrustManager()),
-                    context);
-        } else if (context.config().isInsecure()) {
-            return unsafeAccessSupport.create(InsecureTrustManagerFactory.INSTANCE, context);
+                    CachingTrustManagerFactory.create(
+                            new TrustManagerFactoryWrapper(config.getTrustManager()), verifiedChains),
+                    contextResolver);
+        } else if (config.isInsecure()) {
+            return unsafeAccessSupport.create(InsecureTrustManagerFactory.INSTANCE, contextResolver);
         } else if (TRUST_MANAGER_FACTORY != null) {
-            return unsafeAccessSupport.create(TRUST_MANAGER_FACTORY, context);
+            return unsafeAccessSupport.create(
+                    CachingTrustManagerFactory.create(TRUST_MANAGER_FACTORY, verifiedChains),
+                    contextResolver);
         }
         return null;
     }
@@ -2,9 +2,11 @@ package com.github.chhsiao90.nitmproxy.tls;
 
 import com.github.chhsiao90.nitmproxy.ConnectionContext;
 
+import javax.net.ssl.SSLEngine;
 import javax.net.ssl.TrustManagerFactory;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.util.function.Function;
 
 public interface UnsafeAccessSupport {
 
@@ -19,9 +21,27 @@ public interface UnsafeAccessSupport {
         public TrustManagerFactory create(TrustManagerFactory delegate, ConnectionContext context) {
             return delegate;
         }
+
+        @Override
+        public TrustManagerFactory create(TrustManagerFactory delegate,
+                Function<SSLEngine, ConnectionContext> contextResolver) {
+            return delegate;
+        }
     };
 
     UnsafeAccess checkUnsafeAccess(ConnectionContext context, X509Certificate[] chain, CertificateException cause);
 
     TrustManagerFactory create(TrustManagerFactory delegate, ConnectionContext context);
+
+    /**
+     * Create a trust manager factory that is shared by the connections with the same trust configuration.
+     *
+     * @param delegate the delegated factory
+     * @param contextResolver the resolver of the connection context from the engine under handshake
+     * @return the trust manager factory
+     */
+    default TrustManagerFactory create(TrustManagerFactory delegate,
+            Function<SSLEngine, ConnectionContext> contextResolver) {
+        return UnsafeAccessSupportTrustManagerFactory.create(delegate, this, contextResolver);
+    }
 }
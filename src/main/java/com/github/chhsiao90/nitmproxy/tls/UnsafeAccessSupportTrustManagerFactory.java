@@ -4,13 +4,17 @@ import com.github.chhsiao90.nitmproxy.ConnectionContext;
 import io.netty.handler.ssl.util.SimpleTrustManagerFactory;
 
 import javax.net.ssl.ManagerFactoryParameters;
+import javax.net.ssl.SSLEngine;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509ExtendedTrustManager;
 import javax.net.ssl.X509TrustManager;
+import java.net.Socket;
 import java.security.KeyStore;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.Arrays;
+import java.util.function.Function;
 
 public class UnsafeAccessSupportTrustManagerFactory extends SimpleTrustManagerFactory {
 
@@ -20,19 +24,42 @@ public class UnsafeAccessSupportTrustManagerFactory extends SimpleTrustManagerFa
             X509TrustManager delegate,
             UnsafeAccessSupport unsafeAccessSupport,
             ConnectionContext context) {
-        this.tm = new UnsafeAccessSupportTrustManager(delegate, unsafeAccessSupport, context);
+        this(delegate, unsafeAccessSupport, engine -> context);
+    }
+
+    public UnsafeAccessSupportTrustManagerFactory(
+            X509TrustManager delegate,
+            UnsafeAccessSupport unsafeAccessSupport,
+            Function<SSLEngine, ConnectionContext> contextResolver) {
+        this.tm = new UnsafeAccessSupportTrustManager(delegate, unsafeAccessSupport, contextResolver);
     }
 
     public static TrustManagerFactory create(
             TrustManagerFactory factory,
             UnsafeAccessSupport unsafeAccessSupport,
             ConnectionContext context) {
+        return create(factory, unsafeAccessSupport, engine -> context);
+    }
+
+    /**
+     * Create a trust manager factory that could be shared by connections, the connection context will be
+     * resolved from the engine while the unsafe access was being checked.
+     *
+     * @param factory the delegated factory
+     * @param unsafeAccessSupport the unsafe access support
+     * @param contextResolver the resolver of the connection context
+     * @return the trust manager factory
+     */
+    public static TrustManagerFactory create(
+            TrustManagerFactory factory,
+            UnsafeAccessSupport unsafeAccessSupport,
+            Function<SSLEngine, ConnectionContext> contextResolver) {
         return Arrays.stream(factory.getTrustManagers())
                 .filter(X509TrustManager.class::isInstance)
                 .map(X509TrustManager.class::cast)
                 .findFirst()
                 .<TrustManagerFactory>map(tm -> new UnsafeAccessSupportTrustManagerFactory(
-                        tm, unsafeAccessSupport, context))
+                        tm, unsafeAccessSupport, contextResolver))
                 .orElse(factory);
     }
 
@@ -49,19 +76,19 @@ public class UnsafeAccessSupportTrustManagerFactory extends SimpleTrustManagerFa
         return new TrustManager[] { tm };
     }
 
-    private static class UnsafeAccessSupportTrustManager implements X509TrustManager {
+    private static class UnsafeAccessSupportTrustManager extends X509ExtendedTrustManager {
 
         private final X509TrustManager delegate;
         private final UnsafeAccessSupport unsafeAccessSupport;
-        private final ConnectionContext context;
+        private final Function<SSLEngine, ConnectionContext> contextResolver;
 
         public UnsafeAccessSupportTrustManager(
                 X509TrustManager delegate,
                 UnsafeAccessSupport unsafeAccessSupport,
-                ConnectionContext context) {
+                Function<SSLEngine, ConnectionContext> contextResolver) {
             this.delegate = delegate;
             this.unsafeAccessSupport = unsafeAccessSupport;
-            this.context = context;
+            this.contextResolver = contextResolver;
         }
 
         @Override
@@ -69,14 +96,35 @@ public class UnsafeAccessSupportTrustManagerFactory extends SimpleTrustManagerFa
             try {
                 delegate.checkClientTrusted(chain, authType);
             } catch (CertificateException e) {
-                switch (unsafeAccessSupport.checkUnsafeAccess(context, chain, e)) {
-                    case ACCEPT:
-                        break;
-                    case DENY:
-                        throw e;
-                    case ASK:
-                        context.tlsCtx().askUnsafeAccess();
+                onClientUntrusted(chain, e, null);
+            }
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket)
+                throws CertificateException {
+            try {
+                if (delegate instanceof X509ExtendedTrustManager) {
+                    ((X509ExtendedTrustManager) delegate).checkClientTrusted(chain, authType, socket);
+                } else {
+                    delegate.checkClientTrusted(chain, authType);
+                }
+            } catch (CertificateException e) {
+                onClientUntrusted(chain, e, null);
+            }
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine)
+                throws CertificateException {
+            try {
+                if (delegate instanceof X509ExtendedTrustManager) {
+                    ((X509ExtendedTrustManager) delegate).checkClientTrusted(chain, authType, engine);
+                } else {
+                    delegate.checkClientTrusted(chain, authType);
                 }
+            } catch (CertificateException e) {
+                onClientUntrusted(chain, e, engine);
             }
         }
 
@@ -85,12 +133,35 @@ public class UnsafeAccessSupportTrustManagerFactory extends SimpleTrustManagerFa
             try {
                 delegate.checkServerTrusted(chain, authType);
             } catch (CertificateException e) {
-                switch (unsafeAccessSupport.checkUnsafeAccess(context, chain, e)) {
-                    case ACCEPT:
-                        break;
-                    case DENY:
-                        throw e;
+                onServerUntrusted(chain, e, null);
+            }
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket)
+                throws CertificateException {
+            try {
+                if (delegate instanceof X509ExtendedTrustManager) {
+                    ((X509ExtendedTrustManager) delegate).checkServerTrusted(chain, authType, socket);
+                } else {
+                    delegate.checkServerTrusted(chain, authType);
+                }
+            } catch (CertificateException e) {
+                onServerUntrusted(chain, e, null);
+            }
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine)
+                throws CertificateException {
+            try {
+                if (delegate instanceof X509ExtendedTrustManager) {
+                    ((X509ExtendedTrustManager) delegate).checkServerTrusted(chain, authType, engine);
+                } else {
+                    delegate.checkServerTrusted(chain, authType);
                 }
+            } catch (CertificateException e) {
+                onServerUntrusted(chain, e, engine);
             }
         }
 
@@ -98,5 +169,35 @@ public class UnsafeAccessSupportTrustManagerFactory extends SimpleTrustManagerFa
         public X509Certificate[] getAcceptedIssuers() {
             return delegate.getAcceptedIssuers();
         }
+
+        private void onClientUntrusted(X509Certificate[] chain, CertificateException e, SSLEngine engine)
+                throws CertificateException {
+            ConnectionContext context = contextResolver.apply(engine);
+            if (context == null) {
+                throw e;
+            }
+            switch (unsafeAccessSupport.checkUnsafeAccess(context, chain, e)) {
+                case ACCEPT:
+                    break;
+                case DENY:
+                    throw e;
+                case ASK:
+                    context.tlsCtx().askUnsafeAccess();
+            }
+        }
+
+        private void onServerUntrusted(X509Certificate[] chain, CertificateException e, SSLEngine engine)
+                throws CertificateException {
+            ConnectionContext context = contextResolver.apply(engine);
+            if (context == null) {
+                throw e;
+            }
+            switch (unsafeAccessSupport.checkUnsafeAccess(context, chain, e)) {
+                case ACCEPT:
+                    break;
+                case DENY:
+                    throw e;
+            }
+        }
     }
 }
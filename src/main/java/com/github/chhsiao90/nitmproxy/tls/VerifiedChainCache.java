@@ -0,0 +1,170 @@
+package com.github.chhsiao90.nitmproxy.tls;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * Cache of the successfully verified certificate chains of the servers, so that the connections to the same
+ * server skip the path building after the first one.
+ *
+ * <p>The chains are keyed by their fingerprint, the host, the auth type and the trust manager which verified
+ * them. A verified chain expires after the TTL, or a while before the earliest {@code notAfter} of the chain.
+ * The failures are never cached, they are always verified again.</p>
+ */
+public class VerifiedChainCache {
+
+    private static final long EXPIRY_MARGIN_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final long ttlNanos;
+    private final Cache<Key, Long> verified;
+
+    /**
+     * Create a cache.
+     *
+     * @param maximumSize the maximum number of the verified chains
+     * @param ttlSeconds the TTL in seconds, or {@code 0} to disable the cache
+     */
+    public VerifiedChainCache(long maximumSize, long ttlSeconds) {
+        checkArgument(maximumSize >= 0, "maximumSize must not be negative: %s", maximumSize);
+        checkArgument(ttlSeconds >= 0, "ttlSeconds must not be negative: %s", ttlSeconds);
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.verified = Caffeine
+                .newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new NotAfterExpiry())
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Verify the chain unless it was verified by the same trust manager.
+     *
+     * @param trustManager the trust manager of the verification
+     * @param chain the certificate chain
+     * @param authType the auth type
+     * @param host the host of the server
+     * @param verification the verification
+     * @throws CertificateException if the verification failed
+     */
+    public void verify(Object trustManager, X509Certificate[] chain, String authType, String host,
+                       Verification verification) throws CertificateException {
+        if (ttlNanos == 0 || chain == null || chain.length == 0) {
+            verification.verify();
+            return;
+        }
+        Key key;
+        try {
+            key = new Key(trustManager, fingerprint(chain), authType, host);
+        } catch (CertificateEncodingException e) {
+            verification.verify();
+            return;
+        }
+        if (verified.getIfPresent(key) != null) {
+            return;
+        }
+        verification.verify();
+        verified.put(key, notAfter(chain));
+    }
+
+    public void invalidateAll() {
+        verified.invalidateAll();
+    }
+
+    public long size() {
+        return verified.estimatedSize();
+    }
+
+    public CacheStats stats() {
+        return verified.stats();
+    }
+
+    private static HashCode fingerprint(X509Certificate[] chain) throws CertificateEncodingException {
+        Hasher hasher = Hashing.sha256().newHasher();
+        for (X509Certificate cert : chain) {
+            byte[] encoded = cert.getEncoded();
+            hasher.putInt(encoded.length).putBytes(encoded);
+        }
+        return hasher.hash();
+    }
+
+    private static long notAfter(X509Certificate[] chain) {
+        long notAfter = Long.MAX_VALUE;
+        for (X509Certificate cert : chain) {
+            notAfter = Math.min(notAfter, cert.getNotAfter().getTime());
+        }
+        return notAfter;
+    }
+
+    /**
+     * The verification of a chain.
+     */
+    @FunctionalInterface
+    public interface Verification {
+        void verify() throws CertificateException;
+    }
+
+    private class NotAfterExpiry implements Expiry<Key, Long> {
+        @Override
+        public long expireAfterCreate(Key key, Long notAfter, long currentTime) {
+            long remainingMillis = notAfter - System.currentTimeMillis() - EXPIRY_MARGIN_MILLIS;
+            return Math.max(0, Math.min(ttlNanos, TimeUnit.MILLISECONDS.toNanos(remainingMillis)));
+        }
+
+        @Override
+        public long expireAfterUpdate(Key key, Long notAfter, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, notAfter, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(Key key, Long notAfter, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+
+    private static class Key {
+        private final Object trustManager;
+        private final HashCode fingerprint;
+        private final String authType;
+        private final String host;
+
+        private Key(Object trustManager, HashCode fingerprint, String authType, String host) {
+            this.trustManager = trustManager;
+            this.fingerprint = fingerprint;
+            this.authType = authType;
+            this.host = host;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return trustManager == key.trustManager
+                   && fingerprint.equals(key.fingerprint)
+                   && Objects.equals(authType, key.authType)
+                   && Objects.equals(host, key.host);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(trustManager), fingerprint, authType, host);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.github.chhsiao90.nitmproxy.channel;
+
+import com.github.chhsiao90.nitmproxy.NitmProxyConfig;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.handler.codec.dns.DatagramDnsQuery;
+import io.netty.handler.codec.dns.DatagramDnsQueryDecoder;
+import io.netty.handler.codec.dns.DatagramDnsResponse;
+import io.netty.handler.codec.dns.DatagramDnsResponseEncoder;
+import io.netty.handler.codec.dns.DefaultDnsQuestion;
+import io.netty.handler.codec.dns.DefaultDnsRawRecord;
+import io.netty.handler.codec.dns.DnsQuestion;
+import io.netty.handler.codec.dns.DnsRecordType;
+import io.netty.handler.codec.dns.DnsResponseCode;
+import io.netty.handler.codec.dns.DnsSection;
+import io.netty.resolver.AddressResolver;
+import io.netty.util.concurrent.Future;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Collections.*;
+import static org.junit.Assert.*;
+
+public class CachingDnsResolverGroupTest {
+
+    private static final byte[] ADDRESS = { 10, 0, 0, 1 };
+
+    private EventLoopGroup group;
+    private Channel dnsServer;
+    private Map<String, AtomicInteger> queries;
+    private CachingDnsResolverGroup resolverGroup;
+
+    @Before
+    public void setUp() throws Exception {
+        group = new NioEventLoopGroup(2);
+        queries = new ConcurrentHashMap<>();
+        dnsServer = new Bootstrap()
+                .group(group)
+                .channel(NioDatagramChannel.class)
+                .handler(new DnsStubInitializer())
+                .bind("127.0.0.1", 0)
+                .sync()
+                .channel();
+
+        NitmProxyConfig config = new NitmProxyConfig();
+        config.setDnsServers(singletonList((InetSocketAddress) dnsServer.localAddress()));
+        resolverGroup = new CachingDnsResolverGroup(config, ChannelTransport.NIO);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        resolverGroup.close();
+        dnsServer.close().sync();
+        group.shutdownGracefully(0, 5, TimeUnit.SECONDS).sync();
+    }
+
+    @Test
+    public void shouldResolveByNameServer() throws Exception {
+        InetSocketAddress address = resolve(resolverGroup.getResolver(group.next()), "www.example.com.");
+
+        assertEquals(InetAddress.getByAddress(ADDRESS), address.getAddress());
+        assertEquals(443, address.getPort());
+        assertEquals(1, queryCount("www.example.com."));
+    }
+
+    @Test
+    public void shouldShareCacheAcrossEventLoops() throws Exception {
+        resolve(resolverGroup.getResolver(group.next()), "www.example.com.");
+        resolve(resolverGroup.getResolver(group.next()), "www.example.com.");
+
+        assertEquals(1, queryCount("www.example.com."));
+    }
+
+    @Test
+    public void shouldCoalesceConcurrentResolves() throws Exception {
+        AddressResolver<InetSocketAddress> resolver = resolverGroup.getResolver(group.next());
+        Future<InetSocketAddress> first = resolver.resolve(InetSocketAddress.createUnresolved("www.example.com.", 443));
+        Future<InetSocketAddress> second = resolver.resolve(InetSocketAddress.createUnresolved("www.example.com.", 443));
+
+        assertEquals(first.sync().getNow().getAddress(), second.sync().getNow().getAddress());
+        assertEquals(1, queryCount("www.example.com."));
+    }
+
+    @Test
+    public void shouldCacheFailedResolves() throws Exception {
+        AddressResolver<InetSocketAddress> resolver = resolverGroup.getResolver(group.next());
+        for (int i = 0; i < 2; i++) {
+            Future<InetSocketAddress> future = resolver
+                    .resolve(InetSocketAddress.createUnresolved("unknown.example.com.", 443))
+                    .await();
+            assertTrue(future.cause() instanceof UnknownHostException);
+        }
+
+        assertEquals(1, queryCount("unknown.example.com."));
+    }
+
+    private static InetSocketAddress resolve(AddressResolver<InetSocketAddress> resolver, String host)
+            throws Exception {
+        return resolver.resolve(InetSocketAddress.createUnresolved(host, 443)).sync().getNow();
+    }
+
+    private int queryCount(String host) {
+        AtomicInteger count = queries.get(host);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * Answer the A records of {@code www.example.com} with {@link #ADDRESS}, the AAAA records with nothing, and
+     * the others with NXDOMAIN. Only the A queries are counted.
+     */
+    private class DnsStubInitializer extends ChannelInitializer<Channel> {
+        @Override
+        protected void initChannel(Channel ch) {
+            ch.pipeline().addLast(new DatagramDnsQueryDecoder(), new DatagramDnsResponseEncoder(),
+                    new SimpleChannelInboundHandler<DatagramDnsQuery>() {
+                        @Override
+                        protected void channelRead0(ChannelHandlerContext ctx, DatagramDnsQuery query) {
+                            ctx.writeAndFlush(answer(query));
+                        }
+                    });
+        }
+    }
+
+    private DatagramDnsResponse answer(DatagramDnsQuery query) {
+        DnsQuestion question = query.recordAt(DnsSection.QUESTION);
+        DatagramDnsResponse response = new DatagramDnsResponse(query.recipient(), query.sender(), query.id());
+        response.addRecord(DnsSection.QUESTION, new DefaultDnsQuestion(question.name(), question.type()));
+        if (!question.name().equals("www.example.com.")) {
+            response.setCode(DnsResponseCode.NXDOMAIN);
+        }
+        if (question.type() == DnsRecordType.A) {
+            queries.computeIfAbsent(question.name(), name -> new AtomicInteger()).incrementAndGet();
+            if (response.code() != DnsResponseCode.NXDOMAIN) {
+                response.addRecord(DnsSection.ANSWER, new DefaultDnsRawRecord(question.name(), DnsRecordType.A, 60,
+                        Unpooled.wrappedBuffer(ADDRESS)));
+            }
+        }
+        return response;
+    }
+}
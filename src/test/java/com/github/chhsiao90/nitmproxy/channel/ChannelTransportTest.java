@@ -0,0 +1,116 @@
+package com.github.chhsiao90.nitmproxy.channel;
+
+import com.github.chhsiao90.nitmproxy.enums.Transport;
+import com.github.chhsiao90.nitmproxy.exception.NitmProxyException;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+public class ChannelTransportTest {
+
+    @Test
+    public void shouldResolveNio() {
+        ChannelTransport transport = ChannelTransport.of(Transport.NIO);
+
+        assertEquals(Transport.NIO, transport.transport());
+        assertEquals(NioServerSocketChannel.class, transport.serverChannelClass());
+        assertEquals(NioSocketChannel.class, transport.socketChannelClass());
+    }
+
+    @Test
+    public void shouldResolveAutoToAvailableTransport() {
+        ChannelTransport transport = ChannelTransport.of(Transport.AUTO);
+
+        assertNotEquals(Transport.AUTO, transport.transport());
+        if (Epoll.isAvailable()) {
+            assertNotEquals(Transport.NIO, transport.transport());
+        }
+    }
+
+    @Test
+    public void shouldFailIfIoUringNotAvailable() {
+        assumeFalse(isOnClassPath("io.netty.incubator.channel.uring.IOUring"));
+
+        assertThrows(NitmProxyException.class, () -> ChannelTransport.of(Transport.IO_URING));
+    }
+
+    @Test
+    public void shouldConnectWithEpoll() throws Exception {
+        assumeTrue(Epoll.isAvailable());
+
+        ChannelTransport transport = ChannelTransport.of(Transport.EPOLL);
+        EventLoopGroup group = transport.newEventLoopGroup(1);
+        try {
+            Channel server = new ServerBootstrap()
+                    .group(group)
+                    .channel(transport.serverChannelClass())
+                    .childHandler(new ChannelInboundHandlerAdapter())
+                    .bind("127.0.0.1", 0)
+                    .sync()
+                    .channel();
+            Channel client = new Bootstrap()
+                    .group(group)
+                    .channel(transport.socketChannelClass())
+                    .handler(new ChannelInboundHandlerAdapter())
+                    .connect(server.localAddress())
+                    .sync()
+                    .channel();
+
+            assertTrue(client.isActive());
+            client.close().sync();
+            server.close().sync();
+        } finally {
+            group.shutdownGracefully().sync();
+        }
+    }
+
+    @Test
+    public void shouldBindListenersToSamePortWithReusePort() throws Exception {
+        assumeTrue(Epoll.isAvailable());
+
+        ChannelTransport transport = ChannelTransport.of(Transport.EPOLL);
+        EventLoopGroup group = transport.newEventLoopGroup(2);
+        try {
+            ServerBootstrap bootstrap = new ServerBootstrap()
+                    .group(group)
+                    .channel(transport.serverChannelClass())
+                    .option(transport.reusePortOption(), true)
+                    .childHandler(new ChannelInboundHandlerAdapter());
+            Channel first = bootstrap.bind("127.0.0.1", 0).sync().channel();
+            InetSocketAddress address = (InetSocketAddress) first.localAddress();
+            Channel second = bootstrap.bind(address).sync().channel();
+
+            assertEquals(address, second.localAddress());
+            assertNotSame(first.eventLoop(), second.eventLoop());
+            first.close().sync();
+            second.close().sync();
+        } finally {
+            group.shutdownGracefully().sync();
+        }
+    }
+
+    @Test
+    public void shouldNotSupportReusePortByNio() {
+        assertNull(ChannelTransport.NIO.reusePortOption());
+    }
+
+    private static boolean isOnClassPath(String className) {
+        try {
+            Class.forName(className);
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.github.chhsiao90.nitmproxy.channel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ClientHostResolverTest {
+
+    private ClientHostResolver resolver;
+
+    @Before
+    public void setUp() {
+        resolver = new ClientHostResolver(1, 100, 60);
+    }
+
+    @After
+    public void tearDown() {
+        resolver.shutdown();
+    }
+
+    @Test
+    public void shouldResolveHostOfIp() throws Exception {
+        String expected = InetAddress.getByName("127.0.0.1").getHostName();
+
+        assertEquals(expected, resolver.resolve("127.0.0.1").get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void shouldCacheResolvedHost() throws Exception {
+        CompletableFuture<String> first = resolver.resolve("127.0.0.1");
+        CompletableFuture<String> second = resolver.resolve("127.0.0.1");
+
+        assertSame(first, second);
+        first.get(10, TimeUnit.SECONDS);
+        assertSame(first, resolver.resolve("127.0.0.1"));
+    }
+}
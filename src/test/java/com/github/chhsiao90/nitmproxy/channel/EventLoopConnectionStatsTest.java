@@ -0,0 +1,61 @@
+package com.github.chhsiao90.nitmproxy.channel;
+
+import io.netty.channel.Channel;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.local.LocalChannel;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class EventLoopConnectionStatsTest {
+
+    @Test
+    public void shouldCountConnectionsOfEventLoops() {
+        EventLoopConnectionStats stats = new EventLoopConnectionStats();
+        EmbeddedChannel first = new EmbeddedChannel();
+        EmbeddedChannel second = new EmbeddedChannel();
+
+        stats.register(first);
+        stats.register(second);
+
+        assertEquals(2, stats.activeConnections().size());
+        assertEquals(1.0, stats.imbalance(), 0);
+
+        first.close();
+
+        assertEquals(Long.valueOf(0), stats.activeConnections().get(first.eventLoop()));
+        assertEquals(Long.valueOf(1), stats.acceptedConnections().get(first.eventLoop()));
+        assertEquals(2.0, stats.imbalance(), 0);
+    }
+
+    @Test
+    public void shouldCountIdleEventLoops() throws Exception {
+        EventLoopGroup group = new DefaultEventLoopGroup(4);
+        try {
+            EventLoopConnectionStats stats = new EventLoopConnectionStats();
+            stats.registerLoops(group);
+            EventLoop loop = group.next();
+            for (int i = 0; i < 3; i++) {
+                Channel channel = new LocalChannel();
+                loop.register(channel).sync();
+                stats.register(channel);
+            }
+
+            assertEquals(4, stats.activeConnections().size());
+            assertEquals(Long.valueOf(3), stats.activeConnections().get(loop));
+            assertEquals(4.0, stats.imbalance(), 0);
+        } finally {
+            group.shutdownGracefully(0, 5, TimeUnit.SECONDS).sync();
+        }
+    }
+
+    @Test
+    public void shouldBeBalancedWithoutConnections() {
+        assertEquals(1.0, new EventLoopConnectionStats().imbalance(), 0);
+    }
+}
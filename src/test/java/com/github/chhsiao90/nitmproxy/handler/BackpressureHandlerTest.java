@@ -0,0 +1,82 @@
+package com.github.chhsiao90.nitmproxy.handler;
+
+import com.github.chhsiao90.nitmproxy.ConnectionContext;
+import com.github.chhsiao90.nitmproxy.NitmProxyMaster;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class BackpressureHandlerTest {
+
+    private ConnectionContext context;
+    private EmbeddedChannel clientChannel;
+    private EmbeddedChannel serverChannel;
+
+    @Before
+    public void setUp() {
+        context = new ConnectionContext(mock(NitmProxyMaster.class));
+        clientChannel = new EmbeddedChannel();
+        serverChannel = new EmbeddedChannel();
+        context.withClientChannel(clientChannel).withServerChannel(serverChannel);
+        clientChannel.config().setWriteBufferWaterMark(new WriteBufferWaterMark(8, 16));
+        serverChannel.config().setWriteBufferWaterMark(new WriteBufferWaterMark(8, 16));
+        clientChannel.pipeline().addFirst(new BackpressureHandler(context));
+        serverChannel.pipeline().addFirst(new BackpressureHandler(context));
+    }
+
+    @After
+    public void tearDown() {
+        clientChannel.finishAndReleaseAll();
+        serverChannel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void shouldPauseServerWhileClientNotWritable() {
+        clientChannel.write(Unpooled.wrappedBuffer(new byte[32]));
+
+        assertThat(clientChannel.isWritable()).isFalse();
+        assertThat(serverChannel.config().isAutoRead()).isFalse();
+        assertThat(clientChannel.config().isAutoRead()).isTrue();
+        assertThat(context.clientPendingWriteBytes()).isGreaterThanOrEqualTo(32);
+        assertThat(context.serverPendingWriteBytes()).isZero();
+
+        clientChannel.flush();
+
+        assertThat(clientChannel.isWritable()).isTrue();
+        assertThat(serverChannel.config().isAutoRead()).isTrue();
+        assertThat(context.clientPendingWriteBytes()).isZero();
+    }
+
+    @Test
+    public void shouldPauseClientWhileServerNotWritable() {
+        serverChannel.write(Unpooled.wrappedBuffer(new byte[32]));
+
+        assertThat(clientChannel.config().isAutoRead()).isFalse();
+        assertThat(serverChannel.config().isAutoRead()).isTrue();
+        assertThat(context.serverPendingWriteBytes()).isGreaterThanOrEqualTo(32);
+
+        serverChannel.flush();
+
+        assertThat(clientChannel.config().isAutoRead()).isTrue();
+    }
+
+    @Test
+    public void shouldNotFailWithoutServerChannel() {
+        ConnectionContext clientOnly = new ConnectionContext(mock(NitmProxyMaster.class));
+        EmbeddedChannel channel = new EmbeddedChannel();
+        channel.config().setWriteBufferWaterMark(new WriteBufferWaterMark(8, 16));
+        channel.pipeline().addFirst(new BackpressureHandler(clientOnly.withClientChannel(channel)));
+
+        channel.write(Unpooled.wrappedBuffer(new byte[32]));
+
+        assertThat(channel.isWritable()).isFalse();
+        assertThat(clientOnly.serverPendingWriteBytes()).isZero();
+        channel.finishAndReleaseAll();
+    }
+}
@@ -0,0 +1,162 @@
+package com.github.chhsiao90.nitmproxy.handler.protocol.tls;
+
+import com.github.chhsiao90.nitmproxy.NitmProxyConfig;
+import com.github.chhsiao90.nitmproxy.enums.KeyAlgorithm;
+import com.github.chhsiao90.nitmproxy.testing.TlsChannels;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import io.netty.util.ReferenceCountUtil;
+
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.chhsiao90.nitmproxy.testing.TlsChannels.*;
+import static com.github.chhsiao90.nitmproxy.tls.CertUtil.*;
+
+/**
+ * Compare the time to first byte and the bulk throughput of the fixed 16 KB records and the adaptive records.
+ *
+ * <p>The time to first byte is counted in the round trips of a TCP slow start with an initial window of 10
+ * segments, which the client waits before decrypting the first byte of a response. The throughput is the CPU
+ * bound throughput of a long download.</p>
+ *
+ * <p>Usage: {@code AdaptiveRecordSizeBenchmark [seconds per measurement]}</p>
+ */
+public final class AdaptiveRecordSizeBenchmark {
+
+    private static final int MSS = 1460;
+    private static final int INITIAL_WINDOW = 10;
+    private static final int RESPONSE_SIZE = 64 * 1024;
+    private static final int CHUNK_SIZE = 16 * 1024;
+    private static final int WARMUP_ROUNDS = 200;
+
+    private AdaptiveRecordSizeBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        long seconds = args.length > 0 ? Long.parseLong(args[0]) : 5;
+
+        long now = System.currentTimeMillis();
+        KeyPair keyPair = KeyAlgorithm.EC_P256.generateKeyPair();
+        X509Certificate cert = generateCertificate("CN=localhost", new Date(now),
+                new Date(now + TimeUnit.DAYS.toMillis(1)), keyPair);
+        SslContext serverContext = SslContextBuilder.forServer(keyPair.getPrivate(), cert).build();
+        SslContext clientContext = SslContextBuilder
+                .forClient()
+                .trustManager(InsecureTrustManagerFactory.INSTANCE)
+                .build();
+        try {
+            for (boolean adaptive : new boolean[] { false, true }) {
+                NitmProxyConfig config = new NitmProxyConfig();
+                config.setAdaptiveRecordSize(adaptive);
+                String name = adaptive ? "ADAPTIVE" : "FIXED";
+                int firstByte = measureFirstByte(clientContext, serverContext, config);
+                System.out.printf("%-8s first byte after %d bytes, %d segments, %d round trips%n", name,
+                        firstByte, segments(firstByte), roundTrips(segments(firstByte)));
+                System.out.printf("%-8s %10.1f MB/s%n", name,
+                        measureThroughput(clientContext, serverContext, config, seconds));
+            }
+        } finally {
+            ReferenceCountUtil.release(serverContext);
+            ReferenceCountUtil.release(clientContext);
+        }
+    }
+
+    /**
+     * Measure the bytes on the wire which the client received before it could decrypt the first byte.
+     */
+    private static int measureFirstByte(SslContext clientContext, SslContext serverContext,
+                                        NitmProxyConfig config) {
+        EmbeddedChannel[] channels = handshake(clientContext, serverContext, config);
+        EmbeddedChannel client = channels[0];
+        EmbeddedChannel server = channels[1];
+        try {
+            server.writeOutbound(Unpooled.wrappedBuffer(new byte[RESPONSE_SIZE]));
+            ByteBuf wire = Unpooled.buffer();
+            ByteBuf byteBuf;
+            while ((byteBuf = server.readOutbound()) != null) {
+                wire.writeBytes(byteBuf);
+                byteBuf.release();
+            }
+            int received = 0;
+            while (wire.isReadable()) {
+                int segment = Math.min(MSS, wire.readableBytes());
+                client.writeInbound(wire.readRetainedSlice(segment));
+                received += segment;
+                Object plaintext = client.readInbound();
+                if (plaintext != null) {
+                    ReferenceCountUtil.release(plaintext);
+                    break;
+                }
+            }
+            wire.release();
+            return received;
+        } finally {
+            close(channels);
+        }
+    }
+
+    private static double measureThroughput(SslContext clientContext, SslContext serverContext,
+                                            NitmProxyConfig config, long seconds) {
+        EmbeddedChannel[] channels = handshake(clientContext, serverContext, config);
+        byte[] chunk = new byte[CHUNK_SIZE];
+        try {
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                transferChunk(channels, chunk);
+            }
+            long bytes = 0;
+            long start = System.nanoTime();
+            long end = start + TimeUnit.SECONDS.toNanos(seconds);
+            while (System.nanoTime() < end) {
+                transferChunk(channels, chunk);
+                bytes += chunk.length;
+            }
+            return bytes / 1024.0 / 1024.0 / elapsedSeconds(start);
+        } finally {
+            close(channels);
+        }
+    }
+
+    private static void transferChunk(EmbeddedChannel[] channels, byte[] chunk) {
+        EmbeddedChannel client = channels[0];
+        EmbeddedChannel server = channels[1];
+        server.writeOutbound(Unpooled.wrappedBuffer(chunk));
+        exchange(client, server);
+        ByteBuf received;
+        while ((received = client.readInbound()) != null) {
+            received.release();
+        }
+    }
+
+    private static EmbeddedChannel[] handshake(SslContext clientContext, SslContext serverContext,
+                                               NitmProxyConfig config) {
+        SslHandler serverHandler = serverContext.newHandler(ByteBufAllocator.DEFAULT);
+        EmbeddedChannel server = new EmbeddedChannel(serverHandler);
+        if (config.isAdaptiveRecordSize()) {
+            server.pipeline().addLast(new AdaptiveRecordSizeHandler(serverHandler, config));
+        }
+        EmbeddedChannel client = new EmbeddedChannel(clientContext.newHandler(ByteBufAllocator.DEFAULT));
+        return TlsChannels.handshake(client, server);
+    }
+
+    private static int segments(int bytes) {
+        return (bytes + MSS - 1) / MSS;
+    }
+
+    private static int roundTrips(int segments) {
+        int roundTrips = 1;
+        for (int window = INITIAL_WINDOW, sent = window; sent < segments; window *= 2, sent += window) {
+            roundTrips++;
+        }
+        return roundTrips;
+    }
+
+}
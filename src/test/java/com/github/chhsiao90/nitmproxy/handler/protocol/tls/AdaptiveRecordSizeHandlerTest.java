@@ -0,0 +1,129 @@
+package com.github.chhsiao90.nitmproxy.handler.protocol.tls;
+
+import com.github.chhsiao90.nitmproxy.enums.KeyAlgorithm;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import io.netty.util.ReferenceCountUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.github.chhsiao90.nitmproxy.tls.CertUtil.*;
+import static org.assertj.core.api.Assertions.*;
+import static org.junit.Assert.*;
+
+public class AdaptiveRecordSizeHandlerTest {
+    private static final int SMALL_RECORD_SIZE = 1400;
+    private static final int RECORD_OVERHEAD = 256;
+
+    private SslContext serverContext;
+    private SslContext clientContext;
+    private AtomicLong clock;
+    private EmbeddedChannel client;
+    private EmbeddedChannel server;
+    private AdaptiveRecordSizeHandler handler;
+
+    @Before
+    public void setUp() throws Exception {
+        long now = System.currentTimeMillis();
+        KeyPair keyPair = KeyAlgorithm.EC_P256.generateKeyPair();
+        X509Certificate cert = generateCertificate("CN=localhost", new Date(now),
+                new Date(now + TimeUnit.DAYS.toMillis(1)), keyPair);
+        serverContext = SslContextBuilder.forServer(keyPair.getPrivate(), cert).build();
+        clientContext = SslContextBuilder.forClient().trustManager(InsecureTrustManagerFactory.INSTANCE).build();
+        clock = new AtomicLong();
+
+        SslHandler serverHandler = serverContext.newHandler(ByteBufAllocator.DEFAULT);
+        handler = new AdaptiveRecordSizeHandler(serverHandler, SMALL_RECORD_SIZE, 64 * 1024, 1000, clock::get);
+        server = new EmbeddedChannel(serverHandler, handler);
+        client = new EmbeddedChannel(clientContext.newHandler(ByteBufAllocator.DEFAULT));
+        exchange();
+        assertTrue(serverHandler.handshakeFuture().isSuccess());
+    }
+
+    @After
+    public void tearDown() {
+        client.finishAndReleaseAll();
+        server.finishAndReleaseAll();
+        ReferenceCountUtil.release(serverContext);
+        ReferenceCountUtil.release(clientContext);
+    }
+
+    @Test
+    public void shouldStartWithSmallRecords() {
+        assertThat(write(16 * 1024)).allMatch(length -> length <= SMALL_RECORD_SIZE + RECORD_OVERHEAD);
+        assertFalse(handler.isBoosted());
+    }
+
+    @Test
+    public void shouldGrowRecordsAfterThreshold() {
+        write(64 * 1024);
+        assertTrue(handler.isBoosted());
+
+        assertThat(write(64 * 1024)).anyMatch(length -> length > SMALL_RECORD_SIZE + RECORD_OVERHEAD);
+    }
+
+    @Test
+    public void shouldShrinkRecordsAfterIdle() {
+        write(64 * 1024);
+        assertTrue(handler.isBoosted());
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertThat(write(16 * 1024)).allMatch(length -> length <= SMALL_RECORD_SIZE + RECORD_OVERHEAD);
+        assertFalse(handler.isBoosted());
+    }
+
+    /**
+     * Write the bytes from the server, and return the length of the records sent to the client.
+     */
+    private List<Integer> write(int bytes) {
+        server.writeOutbound(Unpooled.wrappedBuffer(new byte[bytes]));
+        ByteBuf wire = Unpooled.buffer();
+        ByteBuf byteBuf;
+        while ((byteBuf = server.readOutbound()) != null) {
+            wire.writeBytes(byteBuf);
+            byteBuf.release();
+        }
+        List<Integer> lengths = new ArrayList<>();
+        for (int i = 0; i < wire.writerIndex(); i += 5 + wire.getUnsignedShort(i + 3)) {
+            lengths.add(wire.getUnsignedShort(i + 3));
+        }
+        client.writeInbound(wire);
+        ByteBuf received;
+        while ((received = client.readInbound()) != null) {
+            received.release();
+        }
+        return lengths;
+    }
+
+    private void exchange() {
+        boolean transferred = true;
+        while (transferred) {
+            transferred = transfer(client, server) | transfer(server, client);
+        }
+    }
+
+    private static boolean transfer(EmbeddedChannel from, EmbeddedChannel to) {
+        boolean transferred = false;
+        ByteBuf byteBuf;
+        while ((byteBuf = from.readOutbound()) != null) {
+            to.writeInbound(byteBuf);
+            transferred = true;
+        }
+        return transferred;
+    }
+}
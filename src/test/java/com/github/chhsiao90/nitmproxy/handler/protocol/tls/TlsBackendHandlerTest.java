@@ -0,0 +1,157 @@
+package com.github.chhsiao90.nitmproxy.handler.protocol.tls;
+
+import com.github.chhsiao90.nitmproxy.Address;
+import com.github.chhsiao90.nitmproxy.ConnectionContext;
+import com.github.chhsiao90.nitmproxy.HandlerProvider;
+import com.github.chhsiao90.nitmproxy.NitmProxyConfig;
+import com.github.chhsiao90.nitmproxy.NitmProxyMaster;
+import com.github.chhsiao90.nitmproxy.enums.TlsEngine;
+import com.github.chhsiao90.nitmproxy.tls.AlpnCache;
+import com.github.chhsiao90.nitmproxy.tls.CertManager;
+import com.github.chhsiao90.nitmproxy.tls.Certificate;
+import com.github.chhsiao90.nitmproxy.tls.ClientSslContextPool;
+import com.google.common.io.Resources;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.ssl.ApplicationProtocolConfig;
+import io.netty.handler.ssl.ApplicationProtocolConfig.Protocol;
+import io.netty.handler.ssl.ApplicationProtocolConfig.SelectedListenerFailureBehavior;
+import io.netty.handler.ssl.ApplicationProtocolConfig.SelectorFailureBehavior;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static com.github.chhsiao90.nitmproxy.testing.TlsChannels.*;
+import static com.github.chhsiao90.nitmproxy.tls.CertUtil.*;
+import static io.netty.handler.ssl.ApplicationProtocolNames.*;
+import static java.util.Arrays.*;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class TlsBackendHandlerTest {
+    private static final Address SERVER_ADDR = new Address("localhost", 443);
+    private static final List<String> CLIENT_PROTOCOLS = asList(HTTP_2, HTTP_1_1);
+
+    private NitmProxyConfig config;
+    private AlpnCache alpnCache;
+    private ChannelHandler http2BackendHandler;
+    private ConnectionContext connectionContext;
+    private SslContext clientContext;
+
+    private EmbeddedChannel clientChannel;
+    private EmbeddedChannel backendChannel;
+    private EmbeddedChannel serverChannel;
+
+    @Before
+    public void setUp() throws Exception {
+        config = new NitmProxyConfig();
+        config.setCertificate(readPemFromFile(Resources.getResource("server.pem").getFile()));
+        config.setKey(readPrivateKeyFromFile(Resources.getResource("key.pem").getFile()));
+        config.setTlsEngine(TlsEngine.JDK);
+        alpnCache = new AlpnCache(100, 600);
+
+        http2BackendHandler = new ChannelHandlerAdapter() {};
+        HandlerProvider provider = mock(HandlerProvider.class);
+        when(provider.backendHandler(HTTP_2)).thenReturn(http2BackendHandler);
+
+        clientContext = SslContextBuilder
+                .forClient()
+                .sslProvider(SslProvider.JDK)
+                .trustManager(InsecureTrustManagerFactory.INSTANCE)
+                .applicationProtocolConfig(alpn(CLIENT_PROTOCOLS.toArray(new String[0])))
+                .build();
+        ClientSslContextPool clientSslContextPool = mock(ClientSslContextPool.class);
+        when(clientSslContextPool.newHandler(any(), any(), any()))
+                .thenAnswer(invocation -> clientContext.newHandler(ByteBufAllocator.DEFAULT));
+
+        NitmProxyMaster master = mock(NitmProxyMaster.class);
+        when(master.config()).thenReturn(config);
+        when(master.provider(any())).thenReturn(provider);
+        when(master.alpnCache()).thenReturn(alpnCache);
+        when(master.clientSslContextPool()).thenReturn(clientSslContextPool);
+
+        clientChannel = new EmbeddedChannel();
+        connectionContext = new ConnectionContext(master)
+                .withClientAddr(new Address("localhost", 8080))
+                .withServerAddr(SERVER_ADDR)
+                .withClientChannel(clientChannel);
+        connectionContext.tlsCtx()
+                         .protocols(ImmediateEventExecutor.INSTANCE.newPromise())
+                         .protocol(ImmediateEventExecutor.INSTANCE.newPromise());
+    }
+
+    @After
+    public void tearDown() {
+        close(clientChannel, backendChannel, serverChannel);
+    }
+
+    @Test
+    public void shouldCloseAndInvalidateWhenCachedProtocolChanged() throws Exception {
+        alpnCache.put(SERVER_ADDR, CLIENT_PROTOCOLS, HTTP_1_1);
+        connectionContext.tlsCtx().negotiateCached(HTTP_1_1);
+
+        handshake(HTTP_2);
+
+        assertFalse(backendChannel.isOpen());
+        assertFalse(clientChannel.isOpen());
+        assertNull(alpnCache.get(SERVER_ADDR, CLIENT_PROTOCOLS));
+    }
+
+    @Test
+    public void shouldKeepCachedProtocolWhenMatched() throws Exception {
+        alpnCache.put(SERVER_ADDR, CLIENT_PROTOCOLS, HTTP_2);
+        connectionContext.tlsCtx().negotiateCached(HTTP_2);
+
+        handshake(HTTP_2);
+
+        assertTrue(backendChannel.isOpen());
+        assertTrue(clientChannel.isOpen());
+        assertEquals(HTTP_2, alpnCache.get(SERVER_ADDR, CLIENT_PROTOCOLS));
+        assertSame(http2BackendHandler, backendChannel.pipeline().last());
+    }
+
+    /**
+     * Complete the handshake from the backend channel to a server selecting the protocol.
+     */
+    private void handshake(String serverProtocol) throws Exception {
+        Certificate cert = new CertManager(config).getCert("localhost");
+        SslContext serverContext = SslContextBuilder
+                .forServer(cert.getKeyPair().getPrivate(), cert.getChain())
+                .sslProvider(SslProvider.JDK)
+                .applicationProtocolConfig(alpn(serverProtocol))
+                .build();
+        try {
+            serverChannel = new EmbeddedChannel(serverContext.newHandler(ByteBufAllocator.DEFAULT));
+            backendChannel = new EmbeddedChannel(new TlsBackendHandler(connectionContext.master(), connectionContext));
+            connectionContext.tlsCtx().protocolsPromise().setSuccess(CLIENT_PROTOCOLS);
+            try {
+                exchange(backendChannel, serverChannel);
+            } catch (Exception e) {
+                // The last flight of the server could arrive after the backend channel was closed
+                if (backendChannel.isOpen()) {
+                    throw e;
+                }
+            }
+        } finally {
+            ReferenceCountUtil.release(serverContext);
+        }
+    }
+
+    private static ApplicationProtocolConfig alpn(String... protocols) {
+        return new ApplicationProtocolConfig(
+                Protocol.ALPN,
+                SelectorFailureBehavior.NO_ADVERTISE,
+                SelectedListenerFailureBehavior.ACCEPT,
+                protocols);
+    }
+}
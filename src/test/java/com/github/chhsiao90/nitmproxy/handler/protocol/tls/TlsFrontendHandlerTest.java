@@ -0,0 +1,157 @@
+package com.github.chhsiao90.nitmproxy.handler.protocol.tls;
+
+import com.github.chhsiao90.nitmproxy.Address;
+import com.github.chhsiao90.nitmproxy.ConnectionContext;
+import com.github.chhsiao90.nitmproxy.HandlerProvider;
+import com.github.chhsiao90.nitmproxy.NitmProxyConfig;
+import com.github.chhsiao90.nitmproxy.NitmProxyMaster;
+import com.github.chhsiao90.nitmproxy.Protocols;
+import com.github.chhsiao90.nitmproxy.enums.TlsEngine;
+import com.github.chhsiao90.nitmproxy.tls.AlpnCache;
+import com.github.chhsiao90.nitmproxy.tls.CertManager;
+import com.github.chhsiao90.nitmproxy.tls.HandshakeExecutor;
+import com.github.chhsiao90.nitmproxy.tls.HostMatcher;
+import com.github.chhsiao90.nitmproxy.tls.ServerSslContextCache;
+import com.google.common.io.Resources;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerAdapter;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.ssl.ApplicationProtocolConfig;
+import io.netty.handler.ssl.ApplicationProtocolConfig.Protocol;
+import io.netty.handler.ssl.ApplicationProtocolConfig.SelectedListenerFailureBehavior;
+import io.netty.handler.ssl.ApplicationProtocolConfig.SelectorFailureBehavior;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.github.chhsiao90.nitmproxy.testing.TlsChannels.*;
+import static com.github.chhsiao90.nitmproxy.tls.CertUtil.*;
+import static io.netty.handler.ssl.ApplicationProtocolNames.*;
+import static java.util.Arrays.*;
+import static java.util.Collections.*;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class TlsFrontendHandlerTest {
+    private CertManager certManager;
+    private ServerSslContextCache serverSslContextCache;
+    private ChannelHandler forwardFrontendHandler;
+    private ConnectionContext connectionContext;
+
+    private EmbeddedChannel clientHelloChannel;
+    private EmbeddedChannel frontendChannel;
+    private EmbeddedChannel serverChannel;
+
+    @Before
+    public void setUp() {
+        NitmProxyConfig config = new NitmProxyConfig();
+        config.setCertificate(readPemFromFile(Resources.getResource("server.pem").getFile()));
+        config.setKey(readPrivateKeyFromFile(Resources.getResource("key.pem").getFile()));
+        config.setTlsEngine(TlsEngine.JDK);
+        certManager = spy(new CertManager(config));
+        serverSslContextCache = new ServerSslContextCache(config, certManager);
+
+        forwardFrontendHandler = new ChannelHandlerAdapter() {};
+        HandlerProvider provider = mock(HandlerProvider.class);
+        when(provider.frontendHandler(Protocols.FORWARD)).thenReturn(forwardFrontendHandler);
+
+        serverChannel = new EmbeddedChannel();
+        NitmProxyMaster master = mock(NitmProxyMaster.class);
+        when(master.config()).thenReturn(config);
+        when(master.provider(any())).thenReturn(provider);
+        when(master.certManager()).thenReturn(certManager);
+        when(master.serverSslContextCache()).thenReturn(serverSslContextCache);
+        when(master.alpnCache()).thenReturn(new AlpnCache(100, 600));
+        when(master.handshakeExecutor()).thenReturn(new HandshakeExecutor(0, 0));
+        when(master.passthroughHosts()).thenReturn(HostMatcher.compile(singletonList("*.passthrough.com")));
+        when(master.connect(any(), any(), any())).thenReturn(serverChannel.newSucceededFuture());
+
+        frontendChannel = new EmbeddedChannel();
+        connectionContext = new ConnectionContext(master)
+                .withClientAddr(new Address("localhost", 8080))
+                .withClientChannel(frontendChannel);
+    }
+
+    @After
+    public void tearDown() {
+        close(clientHelloChannel, frontendChannel, serverChannel);
+        serverSslContextCache.invalidateAll();
+    }
+
+    @Test
+    public void shouldPassThroughMatchedHost() throws Exception {
+        connect(new Address("www.passthrough.com", 443));
+        frontendChannel.pipeline().addLast(new TlsFrontendHandler(connectionContext));
+        sendClientHello("www.passthrough.com");
+
+        assertSame(forwardFrontendHandler, frontendChannel.pipeline().last());
+        assertNull(frontendChannel.pipeline().get(SslHandler.class));
+        assertEquals(Protocols.FORWARD, connectionContext.tlsCtx().protocol());
+        assertFalse(connectionContext.tlsCtx().isEnabled());
+        verify(certManager, never()).getCertAsync(anyString());
+        verify(certManager, never()).getCert(anyString());
+
+        // The client hello is tunneled to the server as is
+        ByteBuf clientHello = frontendChannel.readInbound();
+        assertNotNull(clientHello);
+        ReferenceCountUtil.release(clientHello);
+    }
+
+    @Test
+    public void shouldInterceptUnmatchedHost() throws Exception {
+        // Minted ahead, so that the certificate is prepared without waiting for the minting thread
+        certManager.getCert("www.example.com");
+        connect(new Address("www.example.com", 443));
+        frontendChannel.pipeline().addLast(new TlsFrontendHandler(connectionContext));
+        sendClientHello("www.example.com");
+        verify(certManager).getCertAsync("www.example.com");
+        assertEquals(asList(HTTP_2, HTTP_1_1), connectionContext.tlsCtx().protocolsPromise().getNow());
+
+        connectionContext.tlsCtx().protocolPromise().setSuccess(HTTP_1_1);
+        frontendChannel.runPendingTasks();
+        assertNotNull(frontendChannel.pipeline().get(SslHandler.class));
+        assertNotSame(forwardFrontendHandler, frontendChannel.pipeline().last());
+        assertTrue(connectionContext.tlsCtx().isEnabled());
+    }
+
+    @Test
+    public void shouldCloseWhenPassThroughWithoutConnection() throws Exception {
+        connectionContext.withServerAddr(new Address("www.passthrough.com", 443));
+        frontendChannel.pipeline().addLast(new TlsFrontendHandler(connectionContext));
+        sendClientHello("www.passthrough.com");
+
+        assertFalse(frontendChannel.isOpen());
+        assertNull(frontendChannel.pipeline().get(SslHandler.class));
+    }
+
+    private void connect(Address address) {
+        ChannelHandlerContext ctx = mock(ChannelHandlerContext.class);
+        when(ctx.executor()).thenReturn(ImmediateEventExecutor.INSTANCE);
+        connectionContext.connect(address, ctx);
+    }
+
+    private void sendClientHello(String sni) throws Exception {
+        SslContext clientContext = SslContextBuilder
+                .forClient()
+                .sslProvider(SslProvider.JDK)
+                .trustManager(InsecureTrustManagerFactory.INSTANCE)
+                .applicationProtocolConfig(new ApplicationProtocolConfig(
+                        Protocol.ALPN,
+                        SelectorFailureBehavior.NO_ADVERTISE,
+                        SelectedListenerFailureBehavior.ACCEPT,
+                        HTTP_2, HTTP_1_1))
+                .build();
+        clientHelloChannel = new EmbeddedChannel(clientContext.newHandler(ByteBufAllocator.DEFAULT, sni, 443));
+        transfer(clientHelloChannel, frontendChannel);
+    }
+}
@@ -0,0 +1,93 @@
+package com.github.chhsiao90.nitmproxy.testing;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslHandler;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Helpers to run the TLS handshakes and transfers between a pair of embedded client and server channels, which
+ * are connected by moving the outbound bytes of one channel to the inbound of the other.
+ */
+public final class TlsChannels {
+
+    private TlsChannels() {
+    }
+
+    /**
+     * Complete the handshake between the new channels of the contexts.
+     *
+     * @param clientContext the client context
+     * @param serverContext the server context
+     * @return the client and the server channels
+     * @throws IllegalStateException if the handshake failed
+     */
+    public static EmbeddedChannel[] handshake(SslContext clientContext, SslContext serverContext) {
+        return handshake(
+                new EmbeddedChannel(clientContext.newHandler(ByteBufAllocator.DEFAULT)),
+                new EmbeddedChannel(serverContext.newHandler(ByteBufAllocator.DEFAULT)));
+    }
+
+    /**
+     * Complete the handshake between the channels, the channels are closed if the handshake failed.
+     *
+     * @param client the client channel with the {@link SslHandler}
+     * @param server the server channel with the {@link SslHandler}
+     * @return the client and the server channels
+     * @throws IllegalStateException if the handshake failed
+     */
+    public static EmbeddedChannel[] handshake(EmbeddedChannel client, EmbeddedChannel server) {
+        exchange(client, server);
+        for (EmbeddedChannel channel : new EmbeddedChannel[] { client, server }) {
+            SslHandler sslHandler = channel.pipeline().get(SslHandler.class);
+            if (sslHandler != null && !sslHandler.handshakeFuture().isSuccess()) {
+                close(client, server);
+                throw new IllegalStateException("Handshake failed", sslHandler.handshakeFuture().cause());
+            }
+        }
+        return new EmbeddedChannel[] { client, server };
+    }
+
+    /**
+     * Move the bytes between the channels until neither of them has anything to write.
+     *
+     * @param client the client channel
+     * @param server the server channel
+     */
+    public static void exchange(EmbeddedChannel client, EmbeddedChannel server) {
+        while (transfer(client, server) | transfer(server, client)) {
+            client.runPendingTasks();
+            server.runPendingTasks();
+        }
+    }
+
+    /**
+     * Move the outbound bytes of a channel to the inbound of the other.
+     *
+     * @param from the writing channel
+     * @param to the reading channel
+     * @return {@code true} if any bytes were moved
+     */
+    public static boolean transfer(EmbeddedChannel from, EmbeddedChannel to) {
+        boolean transferred = false;
+        ByteBuf byteBuf;
+        while ((byteBuf = from.readOutbound()) != null) {
+            to.writeInbound(byteBuf);
+            transferred = true;
+        }
+        return transferred;
+    }
+
+    public static void close(EmbeddedChannel... channels) {
+        for (EmbeddedChannel channel : channels) {
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    public static double elapsedSeconds(long startNanos) {
+        return (System.nanoTime() - startNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+}
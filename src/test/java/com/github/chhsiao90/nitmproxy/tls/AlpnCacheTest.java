@@ -0,0 +1,63 @@
+package com.github.chhsiao90.nitmproxy.tls;
+
+import com.github.chhsiao90.nitmproxy.Address;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static io.netty.handler.ssl.ApplicationProtocolNames.*;
+import static java.util.Arrays.*;
+import static java.util.Collections.*;
+import static org.junit.Assert.*;
+
+public class AlpnCacheTest {
+    private static final Address ADDRESS = new Address("localhost", 443);
+    private static final List<String> OFFERED = asList(HTTP_2, HTTP_1_1);
+
+    private AlpnCache alpnCache;
+
+    @Before
+    public void setUp() {
+        alpnCache = new AlpnCache(100, 60);
+    }
+
+    @Test
+    public void shouldCacheSelectedProtocol() {
+        assertNull(alpnCache.get(ADDRESS, OFFERED));
+
+        alpnCache.put(ADDRESS, OFFERED, HTTP_2);
+
+        assertEquals(HTTP_2, alpnCache.get(new Address("localhost", 443), asList(HTTP_2, HTTP_1_1)));
+        assertNull(alpnCache.get(new Address("localhost", 8443), OFFERED));
+        assertNull(alpnCache.get(ADDRESS, singletonList(HTTP_1_1)));
+    }
+
+    @Test
+    public void shouldNotCacheProtocolNotOffered() {
+        alpnCache.put(ADDRESS, singletonList(HTTP_1_1), HTTP_2);
+        alpnCache.put(ADDRESS, null, HTTP_1_1);
+        alpnCache.put(ADDRESS, emptyList(), HTTP_1_1);
+
+        assertEquals(0, alpnCache.size());
+        assertNull(alpnCache.get(ADDRESS, null));
+    }
+
+    @Test
+    public void shouldInvalidate() {
+        alpnCache.put(ADDRESS, OFFERED, HTTP_2);
+
+        alpnCache.invalidate(ADDRESS, OFFERED);
+
+        assertNull(alpnCache.get(ADDRESS, OFFERED));
+    }
+
+    @Test
+    public void shouldDisableWithZeroTtl() {
+        alpnCache = new AlpnCache(100, 0);
+
+        alpnCache.put(ADDRESS, OFFERED, HTTP_2);
+
+        assertNull(alpnCache.get(ADDRESS, OFFERED));
+    }
+}
@@ -0,0 +1,72 @@
+package com.github.chhsiao90.nitmproxy.tls;
+
+import com.github.chhsiao90.nitmproxy.NitmProxyConfig;
+import com.google.common.io.Resources;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static com.github.chhsiao90.nitmproxy.tls.CertUtil.*;
+import static java.nio.file.StandardCopyOption.*;
+import static org.junit.Assert.*;
+
+public class CaFileWatcherTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path certFile;
+    private Path keyFile;
+    private CertManager certManager;
+    private CaFileWatcher watcher;
+
+    @Before
+    public void setUp() throws Exception {
+        certFile = folder.getRoot().toPath().resolve("ca.pem");
+        keyFile = folder.getRoot().toPath().resolve("ca-key.pem");
+        Files.copy(new File(Resources.getResource("server.pem").getFile()).toPath(), certFile);
+        Files.copy(new File(Resources.getResource("key.pem").getFile()).toPath(), keyFile);
+
+        NitmProxyConfig config = new NitmProxyConfig();
+        config.setCertificate(readPemFromFile(certFile.toString()));
+        config.setKey(readPrivateKeyFromFile(keyFile.toString()));
+        certManager = new CertManager(config);
+        watcher = new CaFileWatcher(certManager, certFile, keyFile, 1);
+    }
+
+    @Test
+    public void shouldNotRotateUnchangedFiles() throws Exception {
+        assertNull(watcher.poll());
+
+        touch(certFile);
+        touch(keyFile);
+        assertNull(watcher.poll());
+    }
+
+    @Test
+    public void shouldRotateChangedFiles() throws Exception {
+        File newCert = folder.newFile("new-ca.pem");
+        File newKey = folder.newFile("new-ca-key.pem");
+        createCACertificates(newCert, newKey, "CN=nitmproxy rotated CA", 2048);
+
+        // The key is not replaced yet
+        Files.copy(newCert.toPath(), certFile, REPLACE_EXISTING);
+        touch(certFile);
+        assertNull(watcher.poll());
+
+        Files.copy(newKey.toPath(), keyFile, REPLACE_EXISTING);
+        touch(keyFile);
+        assertNotNull(watcher.poll().get());
+        assertEquals(readPemFromFile(newCert.getPath()), certManager.caCertificate());
+        assertNull(watcher.poll());
+    }
+
+    private static void touch(Path file) throws Exception {
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 1000));
+    }
+}
@@ -0,0 +1,89 @@
+package com.github.chhsiao90.nitmproxy.tls;
+
+import org.junit.Test;
+
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class CaffeineCertCacheTest {
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    public void shouldRecordStats() {
+        CaffeineCertCache cache = new CaffeineCertCache(10, 0, Runnable::run);
+        Certificate cert = cache.get("localhost", loader(TimeUnit.DAYS.toMillis(30)));
+        assertSame(cert, cache.get("localhost", loader(TimeUnit.DAYS.toMillis(30))));
+        assertSame(cert, cache.getIfPresent("localhost"));
+
+        CertCacheStats stats = cache.stats();
+        assertEquals(1, loads.get());
+        assertEquals(2, stats.getHitCount());
+        assertEquals(1, stats.getMissCount());
+        assertEquals(2.0 / 3, stats.getHitRate(), 0.001);
+        assertTrue(stats.getAverageLoadPenaltyNanos() > 0);
+    }
+
+    @Test
+    public void shouldExpireByNotAfter() {
+        CaffeineCertCache cache = new CaffeineCertCache(10, 0, Runnable::run);
+        cache.get("localhost", loader(-1));
+        cache.get("localhost", loader(-1));
+        assertEquals(2, loads.get());
+
+        cache.get("www.example.com", loader(TimeUnit.DAYS.toMillis(30)));
+        cache.get("www.example.com", loader(TimeUnit.DAYS.toMillis(30)));
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    public void shouldKeepCertWithinExpiryMargin() {
+        CaffeineCertCache cache = new CaffeineCertCache(10, 0, Runnable::run);
+        Certificate cert = cache.get("localhost", loader(TimeUnit.MINUTES.toMillis(30)));
+        assertSame(cert, cache.get("localhost", loader(TimeUnit.MINUTES.toMillis(30))));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void shouldEvictByWeight() {
+        Certificate cert = newCert(TimeUnit.DAYS.toMillis(30));
+        int weight = CaffeineCertCache.weigh("host-0.example.com", cert);
+        CaffeineCertCache cache = new CaffeineCertCache(0, weight * 10L, Runnable::run);
+        for (int i = 0; i < 100; i++) {
+            cache.get("host-" + i + ".example.com", host -> cert);
+        }
+        cache.cleanUp();
+        assertTrue(cache.size() <= 10);
+        assertTrue(cache.stats().getEvictionCount() >= 90);
+    }
+
+    private Function<String, Certificate> loader(long validMillis) {
+        return host -> {
+            loads.incrementAndGet();
+            return newCert(validMillis);
+        };
+    }
+
+    private static Certificate newCert(long validMillis) {
+        X509Certificate leaf = mock(X509Certificate.class);
+        when(leaf.getNotAfter()).thenReturn(new Date(System.currentTimeMillis() + validMillis));
+        try {
+            when(leaf.getEncoded()).thenReturn(new byte[1000]);
+        } catch (CertificateEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        PrivateKey privateKey = mock(PrivateKey.class);
+        when(privateKey.getEncoded()).thenReturn(new byte[1200]);
+        return new Certificate(new KeyPair(mock(PublicKey.class), privateKey), leaf);
+    }
+}
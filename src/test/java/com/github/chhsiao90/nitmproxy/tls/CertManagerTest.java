@@ -1,19 +1,38 @@
 package com.github.chhsiao90.nitmproxy.tls;
 
 import com.github.chhsiao90.nitmproxy.NitmProxyConfig;
+import com.github.chhsiao90.nitmproxy.enums.KeyAlgorithm;
 import com.google.common.io.Resources;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import static com.github.chhsiao90.nitmproxy.tls.CertUtil.*;
+import static java.util.Arrays.*;
+import static java.util.Collections.*;
+import static java.util.stream.Collectors.*;
 import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
 
 public class CertManagerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private NitmProxyConfig config;
     private CertManager certManager;
 
     @Before
     public void setUp() {
-        NitmProxyConfig config = new NitmProxyConfig();
+        config = new NitmProxyConfig();
         config.setCertificate(readPemFromFile(Resources.getResource("server.pem").getFile()));
         config.setKey(readPrivateKeyFromFile(Resources.getResource("key.pem").getFile()));
         certManager = new CertManager(config);
@@ -24,6 +43,13 @@ public class CertManagerTest {
         assertNotNull(certManager.getCert("localhost"));
     }
 
+    @Test
+    public void shouldCreateCertValidForYearFromNow() {
+        long notAfter = certManager.getCert("localhost").getChain()[0].getNotAfter().getTime();
+        long expected = System.currentTimeMillis() + TimeUnit.DAYS.toMillis(365);
+        assertEquals(expected, notAfter, TimeUnit.MINUTES.toMillis(1));
+    }
+
     @Test
     public void shouldCacheCert() {
         assertSame(
@@ -33,4 +59,117 @@ public class CertManagerTest {
                 certManager.getCert("www.google.com"),
                 certManager.getCert("www.apple.com"));
     }
+
+    @Test
+    public void shouldCreateCertAsync() {
+        CompletableFuture<Certificate> first = certManager.getCertAsync("localhost");
+        CompletableFuture<Certificate> second = certManager.getCertAsync("localhost");
+        assertSame(first.join(), second.join());
+        assertSame(certManager.getCert("localhost"), first.join());
+        assertEquals(0, certManager.pendingCount());
+        assertTrue(certManager.getCertAsync("localhost").isDone());
+    }
+
+    @Test
+    public void shouldCreateCertWithKeyAlgorithm() throws Exception {
+        for (KeyAlgorithm keyAlgorithm : KeyAlgorithm.values()) {
+            config.setKeyAlgorithm(keyAlgorithm);
+            Certificate cert = new CertManager(config).getCert("localhost");
+            X509Certificate leaf = cert.getChain()[0];
+            assertEquals(keyAlgorithm.getAlgorithm(), leaf.getPublicKey().getAlgorithm());
+            assertEquals(cert.getKeyPair().getPublic(), leaf.getPublicKey());
+            assertNotEquals(cert.getChain()[1].getPublicKey(), leaf.getPublicKey());
+            leaf.verify(cert.getChain()[1].getPublicKey());
+        }
+    }
+
+    @Test
+    public void shouldShareWildcardCert() throws Exception {
+        config.setWildcardCerts(true);
+        certManager = new CertManager(config);
+        Certificate cert = certManager.getCert("a1.cdn.example.com");
+        assertSame(cert, certManager.getCert("a2.cdn.example.com"));
+        List<Object> names = cert.getChain()[0].getSubjectAlternativeNames().stream()
+                                 .map(name -> name.get(1))
+                                 .collect(toList());
+        assertEquals(asList("*.cdn.example.com", "cdn.example.com"), names);
+    }
+
+    @Test
+    public void shouldNotIssueWildcardForPublicSuffix() {
+        config.setWildcardCerts(true);
+        certManager = new CertManager(config);
+        assertEquals("*.example.com", certManager.certHost("www.example.com"));
+        assertEquals("*.example.co.uk", certManager.certHost("www.example.co.uk"));
+        assertEquals("example.com", certManager.certHost("example.com"));
+        assertEquals("example.co.uk", certManager.certHost("example.co.uk"));
+        assertEquals("localhost", certManager.certHost("localhost"));
+        assertEquals("127.0.0.1", certManager.certHost("127.0.0.1"));
+    }
+
+    @Test
+    public void shouldRotateCa() throws Exception {
+        Certificate oldCert = certManager.getCert("localhost");
+        File caCert = folder.newFile("ca.pem");
+        File caKey = folder.newFile("ca-key.pem");
+        createCACertificates(caCert, caKey, "CN=nitmproxy rotated CA", 2048);
+        X509CertificateHolder newCa = readPemFromFile(caCert.getPath());
+
+        CertPrewarmer.Result result = certManager.rotateCa(newCa, readPrivateKeyFromFile(caKey.getPath())).get();
+        assertEquals(1, result.getMinted());
+        assertSame(newCa, certManager.caCertificate());
+
+        Certificate newCert = certManager.getCert("localhost");
+        assertNotSame(oldCert, newCert);
+        newCert.getChain()[0].verify(newCert.getChain()[1].getPublicKey());
+        assertEquals(new JcaX509CertificateConverter().getCertificate(newCa), newCert.getChain()[1]);
+    }
+
+    @Test
+    public void shouldReplaceCachedCertsWhenRotatingCa() throws Exception {
+        CertCache certCache = spy(new CaffeineCertCache(10, 0));
+        config.setCertCache(certCache);
+        certManager = new CertManager(config);
+        Certificate oldCert = certManager.getCert("localhost");
+        File caCert = folder.newFile("ca.pem");
+        File caKey = folder.newFile("ca-key.pem");
+        createCACertificates(caCert, caKey, "CN=nitmproxy rotated CA", 2048);
+
+        certManager.rotateCa(readPemFromFile(caCert.getPath()), readPrivateKeyFromFile(caKey.getPath())).get();
+        Certificate newCert = certCache.getIfPresent("localhost");
+        assertNotSame(oldCert, newCert);
+        assertSame(newCert, certManager.getCertIfPresent("localhost"));
+        verify(certCache).put("localhost", newCert);
+        verify(certCache, never()).invalidate("localhost");
+        verify(certCache, never()).invalidateAll();
+    }
+
+    @Test
+    public void shouldRotateCaWithWildcardHotHosts() throws Exception {
+        config.setWildcardCerts(true);
+        config.setHotHosts(asList("a1.cdn.example.com", "a2.cdn.example.com"));
+        certManager = new CertManager(config);
+        File caCert = folder.newFile("ca.pem");
+        File caKey = folder.newFile("ca-key.pem");
+        createCACertificates(caCert, caKey, "CN=nitmproxy rotated CA", 2048);
+        X509CertificateHolder newCa = readPemFromFile(caCert.getPath());
+
+        CertPrewarmer.Result result = certManager.rotateCa(newCa, readPrivateKeyFromFile(caKey.getPath())).get();
+        assertEquals(1, result.getMinted());
+        assertEquals(singletonList("*.cdn.example.com"), certManager.certCache().hosts());
+
+        Certificate cert = certManager.getCertIfPresent("a1.cdn.example.com");
+        assertNotNull(cert);
+        assertSame(cert, certManager.getCertIfPresent("a3.cdn.example.com"));
+        assertEquals(new JcaX509CertificateConverter().getCertificate(newCa), cert.getChain()[1]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotRotateCaWithMismatchedKey() throws Exception {
+        File caCert = folder.newFile("ca.pem");
+        File caKey = folder.newFile("ca-key.pem");
+        createCACertificates(caCert, caKey, "CN=nitmproxy rotated CA", 2048);
+
+        certManager.rotateCa(readPemFromFile(caCert.getPath()), config.getKey());
+    }
 }
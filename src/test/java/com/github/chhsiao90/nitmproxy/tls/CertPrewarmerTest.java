@@ -0,0 +1,54 @@
+package com.github.chhsiao90.nitmproxy.tls;
+
+import com.github.chhsiao90.nitmproxy.NitmProxyConfig;
+import com.google.common.io.Resources;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static com.github.chhsiao90.nitmproxy.tls.CertUtil.*;
+import static java.util.Arrays.*;
+import static java.util.Collections.*;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class CertPrewarmerTest {
+    private CertManager certManager;
+
+    @Before
+    public void setUp() {
+        NitmProxyConfig config = new NitmProxyConfig();
+        config.setCertificate(readPemFromFile(Resources.getResource("server.pem").getFile()));
+        config.setKey(readPrivateKeyFromFile(Resources.getResource("key.pem").getFile()));
+        certManager = spy(new CertManager(config));
+    }
+
+    @Test
+    public void shouldPrewarmCerts() {
+        CertPrewarmer.Result result = new CertPrewarmer(certManager, 2)
+                .prewarm(asList("localhost", "www.example.com", "www.google.com", "localhost"))
+                .join();
+        assertEquals(4, result.getMinted());
+        assertEquals(0, result.getFailed());
+        assertTrue(certManager.getCertAsync("www.google.com").isDone());
+    }
+
+    @Test
+    public void shouldCountFailures() {
+        CompletableFuture<Certificate> failure = new CompletableFuture<>();
+        failure.completeExceptionally(new IllegalStateException());
+        doReturn(failure).when(certManager).getCertAsync("www.example.com");
+
+        CertPrewarmer.Result result = new CertPrewarmer(certManager, 2)
+                .prewarm(asList("localhost", "www.example.com"))
+                .join();
+        assertEquals(1, result.getMinted());
+        assertEquals(1, result.getFailed());
+    }
+
+    @Test
+    public void shouldCompleteEmptyHosts() {
+        assertEquals(0, new CertPrewarmer(certManager, 2).prewarm(emptyList()).join().getMinted());
+    }
+}
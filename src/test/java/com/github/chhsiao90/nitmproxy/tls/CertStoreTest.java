@@ -0,0 +1,117 @@
+package com.github.chhsiao90.nitmproxy.tls;
+
+import com.github.chhsiao90.nitmproxy.NitmProxyConfig;
+import com.google.common.io.Resources;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.Map;
+
+import static com.github.chhsiao90.nitmproxy.tls.CertUtil.*;
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+public class CertStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private NitmProxyConfig config;
+    private CertManager certManager;
+
+    @Before
+    public void setUp() {
+        config = new NitmProxyConfig();
+        config.setCertificate(readPemFromFile(Resources.getResource("server.pem").getFile()));
+        config.setKey(readPrivateKeyFromFile(Resources.getResource("key.pem").getFile()));
+        certManager = new CertManager(config);
+        config.setCertStoreDir(folder.getRoot().toPath());
+    }
+
+    @Test
+    public void shouldServeStoredCertAfterRestart() throws Exception {
+        Certificate cert = new CertManager(config).getCert("localhost");
+
+        CertManager restarted = new CertManager(config);
+        Certificate stored = restarted.getCert("localhost");
+        assertArrayEquals(cert.getChain()[0].getEncoded(), stored.getChain()[0].getEncoded());
+        assertEquals(cert.getKeyPair().getPrivate(), stored.getKeyPair().getPrivate());
+        assertEquals(cert.getChain()[1], stored.getChain()[1]);
+    }
+
+    @Test
+    public void shouldDropExpiredCerts() {
+        CertStore store = new CertStore(folder.getRoot().toPath(), config.getCertificate());
+        Certificate cert = certManager.getCert("localhost");
+        store.append("localhost", cert);
+
+        long notAfter = cert.getChain()[0].getNotAfter().getTime();
+        assertEquals(1, store.load(notAfter - 1).size());
+        assertEquals(0, store.load(notAfter).size());
+    }
+
+    @Test
+    public void shouldCompact() throws Exception {
+        CertStore store = new CertStore(folder.getRoot().toPath(), config.getCertificate());
+        Certificate first = certManager.getCert("localhost");
+        Certificate second = certManager.getCert("www.example.com");
+        store.append("localhost", first);
+        store.append("localhost", second);
+        store.append("localhost", first);
+        long size = Files.size(store.file());
+
+        Map<String, Certificate> certs = store.load();
+        assertEquals(1, certs.size());
+        assertArrayEquals(first.getChain()[0].getEncoded(), certs.get("localhost").getChain()[0].getEncoded());
+        assertTrue(Files.size(store.file()) < size);
+        assertEquals(1, store.load().size());
+    }
+
+    @Test
+    public void shouldRecoverFromTruncatedStore() throws Exception {
+        CertStore store = new CertStore(folder.getRoot().toPath(), config.getCertificate());
+        store.append("localhost", certManager.getCert("localhost"));
+        store.close();
+        byte[] bytes = Files.readAllBytes(store.file());
+        Files.write(store.file(), Arrays.copyOf(bytes, bytes.length - 10));
+
+        assertEquals(0, store.load().size());
+        store.append("localhost", certManager.getCert("localhost"));
+        assertEquals(1, store.load().size());
+    }
+
+    @Test
+    public void shouldRecoverFromCorruptLength() throws Exception {
+        CertStore store = new CertStore(folder.getRoot().toPath(), config.getCertificate());
+        for (int length : new int[] { -1, Integer.MAX_VALUE }) {
+            store.append("localhost", certManager.getCert("localhost"));
+            store.close();
+            // The length of the certificate follows the header, the host and the expiry
+            ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(store.file()));
+            bytes.putInt(8 + 2 + "localhost".length() + 8, length);
+            Files.write(store.file(), bytes.array());
+
+            assertEquals(0, store.load().size());
+            store.append("localhost", certManager.getCert("localhost"));
+            assertEquals(1, store.load().size());
+            store.close();
+            Files.delete(store.file());
+        }
+    }
+
+    @Test
+    public void shouldOnlyBeReadableByOwner() throws Exception {
+        assumeTrue(folder.getRoot().toPath().getFileSystem().supportedFileAttributeViews().contains("posix"));
+        CertStore store = new CertStore(folder.getRoot().toPath(), config.getCertificate());
+        store.append("localhost", certManager.getCert("localhost"));
+        assertEquals(PosixFilePermissions.fromString("rw-------"), Files.getPosixFilePermissions(store.file()));
+
+        store.compact(store.load());
+        assertEquals(PosixFilePermissions.fromString("rw-------"), Files.getPosixFilePermissions(store.file()));
+    }
+}
@@ -0,0 +1,187 @@
+package com.github.chhsiao90.nitmproxy.tls;
+
+import com.github.chhsiao90.nitmproxy.Address;
+import com.github.chhsiao90.nitmproxy.ConnectionContext;
+import com.github.chhsiao90.nitmproxy.NitmProxyConfig;
+import com.github.chhsiao90.nitmproxy.enums.TlsEngine;
+import com.google.common.io.Resources;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import io.netty.util.concurrent.ImmediateExecutor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.net.ssl.TrustManagerFactory;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.github.chhsiao90.nitmproxy.testing.TlsChannels.*;
+import static com.github.chhsiao90.nitmproxy.tls.CertUtil.*;
+import static io.netty.handler.ssl.ApplicationProtocolNames.*;
+import static java.nio.charset.StandardCharsets.*;
+import static java.util.Arrays.*;
+import static java.util.Collections.*;
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+import static org.mockito.Mockito.*;
+
+public class ClientSslContextPoolTest {
+    private NitmProxyConfig config;
+    private ClientSslContextPool pool;
+    private ServerSslContextCache serverContexts;
+    private SslContext serverContext;
+
+    @Before
+    public void setUp() {
+        config = new NitmProxyConfig();
+        config.setCertificate(readPemFromFile(Resources.getResource("server.pem").getFile()));
+        config.setKey(readPrivateKeyFromFile(Resources.getResource("key.pem").getFile()));
+        config.setInsecure(true);
+        pool = new ClientSslContextPool(config);
+        CertManager certManager = new CertManager(config);
+        certManager.getCert("localhost");
+        serverContexts = new ServerSslContextCache(config, certManager);
+        serverContext = serverContexts.get("localhost", singletonList(HTTP_1_1));
+    }
+
+    @After
+    public void tearDown() {
+        pool.invalidateAll();
+        serverContexts.invalidateAll();
+    }
+
+    @Test
+    public void shouldShareContext() {
+        assertSame(
+                pool.get(singletonList(HTTP_1_1)),
+                pool.get(singletonList(HTTP_1_1)));
+        assertNotSame(
+                pool.get(singletonList(HTTP_1_1)),
+                pool.get(asList(HTTP_2, HTTP_1_1)));
+        assertEquals(2, pool.size());
+    }
+
+    @Test
+    public void shouldCreateNewContextWhenTrustChanged() {
+        SslContext context = pool.get(singletonList(HTTP_1_1));
+        config.setInsecure(false);
+        assertNotSame(context, pool.get(singletonList(HTTP_1_1)));
+    }
+
+    @Test
+    public void shouldResumeSession() {
+        assumeTrue(OpenSsl.isAvailable());
+        config.setTlsEngine(TlsEngine.OPENSSL);
+        handshake(connectionContext(new Address("localhost", 8443)));
+        assertEquals(1, pool.stats().fullCount());
+        assertEquals(0, pool.stats().resumedCount());
+
+        handshake(connectionContext(new Address("localhost", 8443)));
+        assertEquals(1, pool.stats().fullCount());
+        assertEquals(1, pool.stats().resumedCount());
+        assertEquals(0.5, pool.stats().resumedRatio(), 0);
+    }
+
+    @Test
+    public void shouldCountJdkHandshakesAsUnknown() {
+        config.setTlsEngine(TlsEngine.JDK);
+        handshake(connectionContext(new Address("localhost", 8443)));
+        handshake(connectionContext(new Address("localhost", 8443)));
+        assertEquals(2, pool.stats().handshakeCount());
+        assertEquals(2, pool.stats().unknownCount());
+        assertEquals(0, pool.stats().fullCount());
+        assertEquals(0, pool.stats().resumedCount());
+        assertEquals(0, pool.stats().resumedRatio(), 0);
+    }
+
+    @Test
+    public void shouldResolveEachConcurrentHandshakeToUntrustedServer() {
+        assumeTrue(OpenSsl.isAvailable());
+        config.setTlsEngine(TlsEngine.OPENSSL);
+        assertResolveEachConcurrentHandshake();
+    }
+
+    @Test
+    public void shouldResolveEachConcurrentJdkHandshakeToUntrustedServer() {
+        config.setTlsEngine(TlsEngine.JDK);
+        assertResolveEachConcurrentHandshake();
+    }
+
+    private void assertResolveEachConcurrentHandshake() {
+        List<ConnectionContext> checked = new CopyOnWriteArrayList<>();
+        config.setInsecure(false);
+        config.setUnsafeAccessSupport(new UnsafeAccessSupport() {
+            @Override
+            public UnsafeAccess checkUnsafeAccess(ConnectionContext context, X509Certificate[] chain,
+                                                  CertificateException cause) {
+                checked.add(context);
+                return UnsafeAccess.ACCEPT;
+            }
+
+            @Override
+            public TrustManagerFactory create(TrustManagerFactory delegate, ConnectionContext context) {
+                return UnsafeAccessSupportTrustManagerFactory.create(delegate, this, context);
+            }
+        });
+        ConnectionContext first = connectionContext(new Address("localhost", 8443));
+        ConnectionContext second = connectionContext(new Address("localhost", 8443));
+        SslHandler firstHandler = pool.newHandler(first, ByteBufAllocator.DEFAULT, ImmediateExecutor.INSTANCE);
+        SslHandler secondHandler = pool.newHandler(second, ByteBufAllocator.DEFAULT, ImmediateExecutor.INSTANCE);
+        EmbeddedChannel firstClient = new EmbeddedChannel(firstHandler);
+        EmbeddedChannel firstServer = new EmbeddedChannel(serverContext.newHandler(ByteBufAllocator.DEFAULT));
+        EmbeddedChannel secondClient = new EmbeddedChannel(secondHandler);
+        EmbeddedChannel secondServer = new EmbeddedChannel(serverContext.newHandler(ByteBufAllocator.DEFAULT));
+        try {
+            // Both handshakes are started before any of them is finished
+            exchange(secondClient, secondServer);
+            exchange(firstClient, firstServer);
+
+            assertTrue(firstHandler.handshakeFuture().isSuccess());
+            assertTrue(secondHandler.handshakeFuture().isSuccess());
+            assertEquals(asList(second, first), checked);
+        } finally {
+            firstClient.finishAndReleaseAll();
+            firstServer.finishAndReleaseAll();
+            secondClient.finishAndReleaseAll();
+            secondServer.finishAndReleaseAll();
+        }
+    }
+
+    private ConnectionContext connectionContext(Address serverAddr) {
+        TlsContext tlsCtx = new TlsContext()
+                .protocols(ImmediateEventExecutor.INSTANCE.newPromise())
+                .protocol(ImmediateEventExecutor.INSTANCE.newPromise());
+        tlsCtx.protocolsPromise().setSuccess(singletonList(HTTP_1_1));
+        ConnectionContext context = mock(ConnectionContext.class);
+        when(context.getServerAddr()).thenReturn(serverAddr);
+        when(context.tlsCtx()).thenReturn(tlsCtx);
+        return context;
+    }
+
+    private void handshake(ConnectionContext context) {
+        SslHandler clientHandler = pool.newHandler(context, ByteBufAllocator.DEFAULT, ImmediateExecutor.INSTANCE);
+        EmbeddedChannel client = new EmbeddedChannel(clientHandler);
+        EmbeddedChannel server = new EmbeddedChannel(serverContext.newHandler(ByteBufAllocator.DEFAULT));
+        try {
+            exchange(client, server);
+            assertTrue(clientHandler.handshakeFuture().isSuccess());
+
+            // The session tickets are sent along with the first response
+            server.writeOutbound(Unpooled.copiedBuffer("OK", US_ASCII));
+            exchange(client, server);
+            ReferenceCountUtil.release(client.readInbound());
+        } finally {
+            client.finishAndReleaseAll();
+            server.finishAndReleaseAll();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.github.chhsiao90.nitmproxy.tls;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class HandshakeExecutorTest {
+    private HandshakeExecutor executor;
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void shouldRunTasksInCallerWithoutThreads() {
+        executor = new HandshakeExecutor(0, 0);
+        AtomicReference<Thread> thread = new AtomicReference<>();
+
+        executor.execute(() -> thread.set(Thread.currentThread()));
+
+        assertSame(Thread.currentThread(), thread.get());
+        assertEquals(1, executor.taskCount());
+        assertEquals(0, executor.queueDepth());
+    }
+
+    @Test
+    public void shouldRunTasksInThreads() throws Exception {
+        executor = new HandshakeExecutor(1, 8);
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicReference<Thread> thread = new AtomicReference<>();
+
+        executor.execute(() -> {
+            thread.set(Thread.currentThread());
+            sleep(10);
+            done.countDown();
+        });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertNotSame(Thread.currentThread(), thread.get());
+        assertTrue(thread.get().getName().startsWith("nitmproxy-handshake"));
+    }
+
+    @Test
+    public void shouldRunRejectedTasksInCaller() throws Exception {
+        executor = new HandshakeExecutor(1, 1);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(() -> {
+            blocked.countDown();
+            await(release);
+        });
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        executor.execute(() -> { });
+        assertEquals(1, executor.queueDepth());
+
+        AtomicReference<Thread> thread = new AtomicReference<>();
+        executor.execute(() -> thread.set(Thread.currentThread()));
+        release.countDown();
+
+        assertSame(Thread.currentThread(), thread.get());
+        assertEquals(1, executor.rejectedCount());
+    }
+
+    @Test
+    public void shouldRecordTaskTime() {
+        executor = new HandshakeExecutor(0, 0);
+
+        executor.execute(() -> sleep(20));
+        executor.execute(() -> { });
+
+        assertEquals(2, executor.taskCount());
+        assertTrue(executor.maxTaskNanos() >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertTrue(executor.averageTaskNanos() >= TimeUnit.MILLISECONDS.toNanos(10));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.github.chhsiao90.nitmproxy.tls;
+
+import com.github.chhsiao90.nitmproxy.enums.HandshakePhase;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.github.chhsiao90.nitmproxy.enums.HandshakePhase.*;
+import static org.junit.Assert.*;
+
+public class HandshakeTimingsTest {
+
+    private AtomicLong clock;
+    private Map<HandshakePhase, Long> reported;
+    private HandshakeTimings timings;
+
+    @Before
+    public void setUp() {
+        clock = new AtomicLong(100);
+        reported = new EnumMap<>(HandshakePhase.class);
+        timings = new HandshakeTimings(reported::put, clock::get);
+    }
+
+    @Test
+    public void shouldReportEndedPhase() {
+        timings.begin(CLIENT_HELLO);
+        clock.addAndGet(30);
+        timings.end(CLIENT_HELLO);
+
+        assertEquals(30, timings.nanos(CLIENT_HELLO));
+        assertEquals(Long.valueOf(30), reported.get(CLIENT_HELLO));
+        assertEquals(-1, timings.nanos(SNI));
+    }
+
+    @Test
+    public void shouldNotReportPhaseNotBegun() {
+        timings.end(CERT);
+
+        assertEquals(-1, timings.nanos(CERT));
+        assertTrue(reported.isEmpty());
+    }
+
+    @Test
+    public void shouldReportPhaseOnlyOnce() {
+        timings.begin(UPSTREAM_CONNECT);
+        clock.addAndGet(10);
+        timings.end(UPSTREAM_CONNECT);
+        clock.addAndGet(10);
+        timings.end(UPSTREAM_CONNECT);
+
+        assertEquals(10, timings.nanos(UPSTREAM_CONNECT));
+    }
+
+    @Test
+    public void shouldMeasureOverlappedPhases() {
+        timings.begin(UPSTREAM_HANDSHAKE);
+        clock.addAndGet(5);
+        timings.begin(DOWNSTREAM_HANDSHAKE);
+        clock.addAndGet(20);
+        timings.end(UPSTREAM_HANDSHAKE);
+        clock.addAndGet(7);
+        timings.end(DOWNSTREAM_HANDSHAKE);
+
+        assertEquals(25, timings.nanos(UPSTREAM_HANDSHAKE));
+        assertEquals(27, timings.nanos(DOWNSTREAM_HANDSHAKE));
+        assertEquals(2, reported.size());
+    }
+}
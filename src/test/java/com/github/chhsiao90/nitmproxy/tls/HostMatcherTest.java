@@ -0,0 +1,74 @@
+package com.github.chhsiao90.nitmproxy.tls;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static java.util.Arrays.*;
+import static java.util.Collections.*;
+import static org.junit.Assert.*;
+
+public class HostMatcherTest {
+
+    @Test
+    public void shouldMatchExactHost() {
+        HostMatcher matcher = HostMatcher.compile(singletonList("bank.example.com"));
+
+        assertTrue(matcher.matches("bank.example.com"));
+        assertTrue(matcher.matches("BANK.Example.com."));
+        assertFalse(matcher.matches("example.com"));
+        assertFalse(matcher.matches("www.bank.example.com"));
+        assertFalse(matcher.matches("mybank.example.com"));
+    }
+
+    @Test
+    public void shouldMatchWildcardSubdomains() {
+        HostMatcher matcher = HostMatcher.compile(singletonList("*.example.com"));
+
+        assertTrue(matcher.matches("www.example.com"));
+        assertTrue(matcher.matches("a.b.example.com"));
+        assertFalse(matcher.matches("example.com"));
+        assertFalse(matcher.matches("example.org"));
+        assertFalse(matcher.matches("badexample.com"));
+    }
+
+    @Test
+    public void shouldMatchBothApexAndSubdomains() {
+        HostMatcher matcher = HostMatcher.compile(asList("example.com", "*.example.com", "10.0.0.1"));
+
+        assertTrue(matcher.matches("example.com"));
+        assertTrue(matcher.matches("www.example.com"));
+        assertTrue(matcher.matches("10.0.0.1"));
+        assertFalse(matcher.matches("10.0.0.10"));
+        assertFalse(matcher.matches("com"));
+        assertFalse(matcher.matches(""));
+        assertFalse(matcher.matches(null));
+    }
+
+    @Test
+    public void shouldMatchNothingWithoutPatterns() {
+        assertSame(HostMatcher.EMPTY, HostMatcher.compile(emptyList()));
+        assertFalse(HostMatcher.EMPTY.matches("www.example.com"));
+    }
+
+    @Test
+    public void shouldMatchManyPatterns() {
+        List<String> patterns = IntStream.range(0, 50000)
+                                         .mapToObj(i -> i % 2 == 0 ? "host" + i + ".com" : "*.host" + i + ".com")
+                                         .collect(Collectors.toList());
+        HostMatcher matcher = HostMatcher.compile(patterns);
+
+        assertEquals(50000, matcher.size());
+        assertTrue(matcher.matches("host2.com"));
+        assertFalse(matcher.matches("www.host2.com"));
+        assertTrue(matcher.matches("www.host49999.com"));
+        assertFalse(matcher.matches("host49999.com"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectInvalidPattern() {
+        HostMatcher.compile(singletonList("www.*.example.com"));
+    }
+}
@@ -0,0 +1,62 @@
+package com.github.chhsiao90.nitmproxy.tls;
+
+import com.github.chhsiao90.nitmproxy.NitmProxyConfig;
+import com.github.chhsiao90.nitmproxy.enums.KeyAlgorithm;
+import com.google.common.io.Resources;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.github.chhsiao90.nitmproxy.testing.TlsChannels.*;
+import static com.github.chhsiao90.nitmproxy.tls.CertUtil.*;
+import static io.netty.handler.ssl.ApplicationProtocolNames.*;
+import static java.util.Collections.*;
+
+/**
+ * Measure the full handshakes per second of the server certificates of each {@link KeyAlgorithm}.
+ *
+ * <p>Usage: {@code KeyAlgorithmBenchmark [seconds per algorithm]}</p>
+ */
+public final class KeyAlgorithmBenchmark {
+
+    private static final int WARMUP_HANDSHAKES = 200;
+
+    private KeyAlgorithmBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        long seconds = args.length > 0 ? Long.parseLong(args[0]) : 5;
+
+        NitmProxyConfig config = new NitmProxyConfig();
+        config.setCertificate(readPemFromFile(Resources.getResource("server.pem").getFile()));
+        config.setKey(readPrivateKeyFromFile(Resources.getResource("key.pem").getFile()));
+        SslContext clientContext = SslContextBuilder
+                .forClient()
+                .trustManager(InsecureTrustManagerFactory.INSTANCE)
+                .protocols(config.getTlsProtocols())
+                .build();
+
+        for (KeyAlgorithm keyAlgorithm : KeyAlgorithm.values()) {
+            config.setKeyAlgorithm(keyAlgorithm);
+            CertManager certManager = new CertManager(config);
+            certManager.getCert("localhost");
+            ServerSslContextCache serverContexts = new ServerSslContextCache(config, certManager);
+            SslContext serverContext = serverContexts.get("localhost", singletonList(HTTP_1_1));
+
+            for (int i = 0; i < WARMUP_HANDSHAKES; i++) {
+                close(handshake(clientContext, serverContext));
+            }
+            long count = 0;
+            long start = System.nanoTime();
+            long end = start + TimeUnit.SECONDS.toNanos(seconds);
+            while (System.nanoTime() < end) {
+                close(handshake(clientContext, serverContext));
+                count++;
+            }
+            System.out.printf("%-10s %10.1f handshakes/s%n", keyAlgorithm, count / elapsedSeconds(start));
+            serverContexts.invalidateAll();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.github.chhsiao90.nitmproxy.tls;
+
+import com.github.chhsiao90.nitmproxy.enums.KeyAlgorithm;
+import org.junit.Test;
+
+import java.security.KeyPair;
+
+import static org.junit.Assert.*;
+
+public class KeyPairPoolTest {
+
+    @Test
+    public void shouldRefillToHighWatermark() throws InterruptedException {
+        KeyPairPool pool = new KeyPairPool(KeyAlgorithm.EC_P256, 2, 4);
+        awaitDepth(pool, 4);
+
+        pool.take();
+        pool.take();
+        assertEquals(2, pool.depth());
+
+        pool.take();
+        awaitDepth(pool, 4);
+        assertEquals(0, pool.starvations());
+    }
+
+    @Test
+    public void shouldGenerateWhenStarved() {
+        KeyPairPool pool = new KeyPairPool(KeyAlgorithm.EC_P256, 0, 0);
+        KeyPair keyPair = pool.take();
+        assertEquals("EC", keyPair.getPublic().getAlgorithm());
+        assertEquals(1, pool.starvations());
+        assertEquals(0, pool.depth());
+    }
+
+    private static void awaitDepth(KeyPairPool pool, int depth) throws InterruptedException {
+        for (int i = 0; i < 500 && pool.depth() < depth; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(depth, pool.depth());
+    }
+}
@@ -0,0 +1,57 @@
+package com.github.chhsiao90.nitmproxy.tls;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void shouldBeEmpty() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.percentile(99));
+        assertEquals(0, histogram.mean(), 0);
+    }
+
+    @Test
+    public void shouldKeepBucketsContiguous() {
+        for (long nanos = 0; nanos < 100_000; nanos++) {
+            int bucket = LatencyHistogram.bucketOf(nanos);
+            assertTrue(nanos <= LatencyHistogram.upperBoundOf(bucket));
+            assertTrue(bucket == 0 || nanos > LatencyHistogram.upperBoundOf(bucket - 1));
+        }
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.upperBoundOf(LatencyHistogram.bucketOf(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void shouldGetPercentileWithinPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int millis = 1; millis <= 100; millis++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+
+        assertEquals(100, histogram.count());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), histogram.max());
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(50500), histogram.mean(), 1);
+        assertWithin(TimeUnit.MILLISECONDS.toNanos(50), histogram.percentile(50));
+        assertWithin(TimeUnit.MILLISECONDS.toNanos(99), histogram.percentile(99));
+        assertEquals(histogram.max(), histogram.percentile(100));
+    }
+
+    @Test
+    public void shouldIgnoreNegativeLatency() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-1);
+
+        assertEquals(0, histogram.count());
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("expected " + expected + " but was " + actual,
+                actual >= expected && actual <= expected + expected / 8);
+    }
+}
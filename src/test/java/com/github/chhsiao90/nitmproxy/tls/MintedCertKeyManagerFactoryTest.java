@@ -0,0 +1,112 @@
+package com.github.chhsiao90.nitmproxy.tls;
+
+import com.github.chhsiao90.nitmproxy.NitmProxyConfig;
+import com.google.common.io.Resources;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.OpenSslCachingX509KeyManagerFactory;
+import io.netty.handler.ssl.SslProvider;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.net.ssl.ExtendedSSLSession;
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.X509ExtendedKeyManager;
+
+import static com.github.chhsiao90.nitmproxy.tls.CertUtil.*;
+import static java.util.Collections.*;
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+import static org.mockito.Mockito.*;
+
+public class MintedCertKeyManagerFactoryTest {
+    private NitmProxyConfig config;
+    private CertManager certManager;
+    private X509ExtendedKeyManager keyManager;
+
+    @Before
+    public void setUp() {
+        config = new NitmProxyConfig();
+        config.setCertificate(readPemFromFile(Resources.getResource("server.pem").getFile()));
+        config.setKey(readPrivateKeyFromFile(Resources.getResource("key.pem").getFile()));
+        certManager = spy(new CertManager(config));
+        keyManager = (X509ExtendedKeyManager) new MintedCertKeyManagerFactory(certManager, null).getKeyManagers()[0];
+    }
+
+    @Test
+    public void shouldSelectCertOfPeerHost() {
+        Certificate cert = certManager.getCert("localhost");
+
+        String alias = keyManager.chooseEngineServerAlias("RSA", null, engine("localhost"));
+        assertNotNull(alias);
+        assertArrayEquals(cert.getChain(), keyManager.getCertificateChain(alias));
+        assertEquals(cert.getKeyPair().getPrivate(), keyManager.getPrivateKey(alias));
+    }
+
+    @Test
+    public void shouldPreferCertOfSni() {
+        SSLEngine engine = engine("localhost");
+        ExtendedSSLSession session = mock(ExtendedSSLSession.class);
+        when(session.getRequestedServerNames()).thenReturn(singletonList(new SNIHostName("www.google.com")));
+        when(engine.getHandshakeSession()).thenReturn(session);
+        Certificate cert = certManager.getCert("www.google.com");
+
+        String alias = keyManager.chooseEngineServerAlias("RSA", null, engine);
+        assertArrayEquals(cert.getChain(), keyManager.getCertificateChain(alias));
+    }
+
+    @Test
+    public void shouldNotSelectCertOfAnotherKeyType() {
+        certManager.getCert("localhost");
+        assertNull(keyManager.chooseEngineServerAlias("EC", null, engine("localhost")));
+        assertNull(keyManager.chooseEngineServerAlias("RSA", null, engine(null)));
+    }
+
+    @Test
+    public void shouldSelectCertOfDefaultHost() {
+        keyManager = (X509ExtendedKeyManager) new MintedCertKeyManagerFactory(certManager, "localhost")
+                .getKeyManagers()[0];
+        Certificate cert = certManager.getCert("localhost");
+
+        String alias = keyManager.chooseEngineServerAlias("RSA", null, engine(null));
+        assertArrayEquals(cert.getChain(), keyManager.getCertificateChain(alias));
+    }
+
+    @Test
+    public void shouldNotMintCertDuringHandshake() {
+        assertNull(keyManager.chooseEngineServerAlias("RSA", null, engine("localhost")));
+        verify(certManager, never()).getCert(anyString());
+
+        certManager.getCertAsync("localhost").join();
+        assertNotNull(keyManager.chooseEngineServerAlias("RSA", null, engine("localhost")));
+    }
+
+    @Test
+    public void shouldChangeAliasWhenCertificateChanged() {
+        certManager.getCert("localhost");
+        String alias = keyManager.chooseEngineServerAlias("RSA", null, engine("localhost"));
+
+        Certificate reminted = newCert(config.getCertificate(), config.getKey(), "localhost");
+        doReturn(reminted).when(certManager).getCertIfPresent("localhost");
+        assertNull(keyManager.getCertificateChain(alias));
+
+        String newAlias = keyManager.chooseEngineServerAlias("RSA", null, engine("localhost"));
+        assertNotEquals(alias, newAlias);
+        assertArrayEquals(reminted.getChain(), keyManager.getCertificateChain(newAlias));
+    }
+
+    @Test
+    public void shouldCacheKeyMaterialWithOpenSsl() {
+        assumeTrue(OpenSsl.isAvailable() && OpenSsl.supportsKeyManagerFactory());
+        assertTrue(MintedCertKeyManagerFactory.create(certManager, null, SslProvider.OPENSSL_REFCNT, 16)
+                instanceof OpenSslCachingX509KeyManagerFactory);
+        assertTrue(MintedCertKeyManagerFactory.create(certManager, null, SslProvider.JDK, 16)
+                instanceof MintedCertKeyManagerFactory);
+    }
+
+    private static SSLEngine engine(String peerHost) {
+        SSLEngine engine = mock(SSLEngine.class);
+        when(engine.getPeerHost()).thenReturn(peerHost);
+        return engine;
+    }
+}
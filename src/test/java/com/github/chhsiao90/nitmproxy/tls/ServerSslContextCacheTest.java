@@ -0,0 +1,259 @@
+package com.github.chhsiao90.nitmproxy.tls;
+
+import com.github.chhsiao90.nitmproxy.NitmProxyConfig;
+import com.github.chhsiao90.nitmproxy.enums.TlsEngine;
+import com.google.common.io.Resources;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.OpenSslSessionContext;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.ReferenceCounted;
+import io.netty.util.concurrent.ImmediateExecutor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.net.ssl.SSLSession;
+import java.util.concurrent.CompletableFuture;
+
+import static com.github.chhsiao90.nitmproxy.tls.CertUtil.*;
+import static io.netty.handler.ssl.ApplicationProtocolNames.*;
+import static io.netty.util.CharsetUtil.*;
+import static java.util.Arrays.*;
+import static java.util.Collections.*;
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+import static org.mockito.Mockito.*;
+
+public class ServerSslContextCacheTest {
+    private NitmProxyConfig config;
+    private CertManager certManager;
+    private ServerSslContextCache cache;
+
+    @Before
+    public void setUp() {
+        config = new NitmProxyConfig();
+        config.setCertificate(readPemFromFile(Resources.getResource("server.pem").getFile()));
+        config.setKey(readPrivateKeyFromFile(Resources.getResource("key.pem").getFile()));
+        certManager = spy(new CertManager(config));
+        cache = new ServerSslContextCache(config, certManager);
+    }
+
+    @After
+    public void tearDown() {
+        cache.invalidateAll();
+    }
+
+    @Test
+    public void shouldCacheContext() {
+        assertSame(
+                cache.get("localhost", singletonList(HTTP_1_1)),
+                cache.get("localhost", singletonList(HTTP_1_1)));
+        assertEquals(1, cache.stats().hitCount());
+        assertEquals(1, cache.stats().missCount());
+    }
+
+    @Test
+    public void shouldCacheByAlpnProtocols() {
+        assertNotSame(
+                cache.get("localhost", singletonList(HTTP_1_1)),
+                cache.get("localhost", asList(HTTP_2, HTTP_1_1)));
+        assertNotSame(
+                cache.get("www.google.com", singletonList(HTTP_1_1)),
+                cache.get("www.apple.com", singletonList(HTTP_1_1)));
+        assertEquals(4, cache.size());
+    }
+
+    @Test
+    public void shouldRebuildContextWhenCertificateChanged() {
+        certManager.getCert("localhost");
+        SslContext context = cache.get("localhost", singletonList(HTTP_1_1));
+
+        doReturn(newCert(config.getCertificate(), config.getKey(), "localhost"))
+                .when(certManager).getCertIfPresent("localhost");
+        assertNotSame(context, cache.get("localhost", singletonList(HTTP_1_1)));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void shouldNotMintCertWhenGettingContext() {
+        CompletableFuture<Certificate> minting = new CompletableFuture<>();
+        doReturn(minting).when(certManager).getCertAsync("localhost");
+        SslContext context = cache.get("localhost", singletonList(HTTP_1_1));
+        assertSame(context, cache.get("localhost", singletonList(HTTP_1_1)));
+        verify(certManager, never()).getCert("localhost");
+        verify(certManager, times(2)).getCertAsync("localhost");
+
+        // Rebuilt once the certificate was minted
+        doReturn(newCert(config.getCertificate(), config.getKey(), "localhost"))
+                .when(certManager).getCertIfPresent("localhost");
+        assertNotSame(context, cache.get("localhost", singletonList(HTTP_1_1)));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void shouldBoundContextsByConfiguredSize() {
+        config.setServerContextCacheSize(2);
+        cache = new ServerSslContextCache(config, certManager);
+        for (String host : asList("www.google.com", "www.apple.com", "www.example.com")) {
+            cache.get(host, singletonList(HTTP_1_1));
+        }
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.stats().evictionCount());
+    }
+
+    @Test
+    public void shouldInvalidateHost() {
+        cache.get("localhost", singletonList(HTTP_1_1));
+        cache.get("localhost", singletonList(HTTP_2));
+        cache.get("www.google.com", singletonList(HTTP_2));
+
+        cache.invalidate("localhost");
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void shouldReleaseInvalidatedContext() {
+        assumeTrue(OpenSsl.isAvailable());
+        config.setTlsEngine(TlsEngine.OPENSSL);
+        SslContext context = cache.get("localhost", singletonList(HTTP_1_1));
+        assertTrue(context instanceof ReferenceCounted);
+
+        SslHandler sslHandler = cache.newHandler("localhost", singletonList(HTTP_1_1), ByteBufAllocator.DEFAULT,
+                ImmediateExecutor.INSTANCE);
+        cache.invalidate("localhost");
+        assertEquals(1, ((ReferenceCounted) context).refCnt());
+
+        ReferenceCountUtil.release(sslHandler.engine());
+        assertEquals(0, ((ReferenceCounted) context).refCnt());
+    }
+
+    @Test
+    public void shouldResumeSessionAcrossRebuiltContexts() throws Exception {
+        assumeTrue(OpenSsl.isAvailable());
+        config.setTlsEngine(TlsEngine.OPENSSL);
+        SslContext clientContext = SslContextBuilder
+                .forClient()
+                .sslProvider(SslProvider.OPENSSL_REFCNT)
+                .trustManager(InsecureTrustManagerFactory.INSTANCE)
+                .build();
+        ((OpenSslSessionContext) clientContext.sessionContext()).setSessionCacheEnabled(true);
+        try {
+            handshake(clientContext);
+            cache.invalidate("localhost");
+            handshake(clientContext);
+        } finally {
+            ReferenceCountUtil.release(clientContext);
+        }
+        assertEquals(1, cache.handshakeStats().fullCount());
+        assertEquals(1, cache.handshakeStats().resumedCount());
+    }
+
+    @Test
+    public void shouldSelectMintedCertDuringHandshake() throws Exception {
+        for (TlsEngine tlsEngine : new TlsEngine[] { TlsEngine.JDK, TlsEngine.OPENSSL }) {
+            if (tlsEngine == TlsEngine.OPENSSL && !OpenSsl.isAvailable()) {
+                continue;
+            }
+            config.setTlsEngine(tlsEngine);
+            cache = new ServerSslContextCache(config, certManager);
+            SslContext clientContext = SslContextBuilder
+                    .forClient()
+                    .sslProvider(TlsUtil.sslProvider(config))
+                    .trustManager(InsecureTrustManagerFactory.INSTANCE)
+                    .build();
+            try {
+                SSLSession session = handshake(clientContext);
+                assertEquals(certManager.getCert("localhost").getChain()[0], session.getPeerCertificates()[0]);
+            } finally {
+                ReferenceCountUtil.release(clientContext);
+                cache.invalidateAll();
+            }
+        }
+    }
+
+    @Test
+    public void shouldShareContextAcrossHosts() {
+        config.setSharedServerContext(true);
+        assertSame(
+                cache.get("www.google.com", singletonList(HTTP_1_1)),
+                cache.get("www.apple.com", singletonList(HTTP_1_1)));
+        assertNotSame(
+                cache.get("www.google.com", singletonList(HTTP_1_1)),
+                cache.get("www.google.com", asList(HTTP_2, HTTP_1_1)));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void shouldSelectCertBySniInSharedContext() throws Exception {
+        config.setSharedServerContext(true);
+        SslContext clientContext = SslContextBuilder
+                .forClient()
+                .sslProvider(TlsUtil.sslProvider(config))
+                .trustManager(InsecureTrustManagerFactory.INSTANCE)
+                .build();
+        try {
+            for (String host : asList("www.google.com", "www.apple.com")) {
+                // Minted ahead, so that a slow signing will not time out the handshake
+                Certificate cert = certManager.getCert(host);
+                SSLSession session = handshake(clientContext, host, "localhost");
+                assertEquals(cert.getChain()[0], session.getPeerCertificates()[0]);
+            }
+        } finally {
+            ReferenceCountUtil.release(clientContext);
+        }
+        assertEquals(1, cache.size());
+    }
+
+    private SSLSession handshake(SslContext clientContext) {
+        return handshake(clientContext, "localhost", "localhost");
+    }
+
+    private SSLSession handshake(SslContext clientContext, String sni, String host) {
+        // Minted ahead like the frontend does, the handshake only reads the certificate from the cache
+        certManager.getCert(host);
+        SslHandler clientHandler = clientContext.newHandler(ByteBufAllocator.DEFAULT, sni, 8443);
+        SslHandler serverHandler = cache.newHandler(host, singletonList(HTTP_1_1), ByteBufAllocator.DEFAULT,
+                ImmediateExecutor.INSTANCE);
+        EmbeddedChannel client = new EmbeddedChannel(clientHandler);
+        EmbeddedChannel server = new EmbeddedChannel(serverHandler);
+        try {
+            exchange(client, server);
+            assertTrue(clientHandler.handshakeFuture().isSuccess());
+
+            // The session tickets are sent along with the first response
+            server.writeOutbound(Unpooled.copiedBuffer("OK", US_ASCII));
+            exchange(client, server);
+            ReferenceCountUtil.release(client.readInbound());
+            return clientHandler.engine().getSession();
+        } finally {
+            client.finishAndReleaseAll();
+            server.finishAndReleaseAll();
+        }
+    }
+
+    private static void exchange(EmbeddedChannel client, EmbeddedChannel server) {
+        while (transfer(client, server) | transfer(server, client)) {
+            client.runPendingTasks();
+            server.runPendingTasks();
+        }
+    }
+
+    private static boolean transfer(EmbeddedChannel from, EmbeddedChannel to) {
+        boolean transferred = false;
+        ByteBuf byteBuf;
+        while ((byteBuf = from.readOutbound()) != null) {
+            to.writeInbound(byteBuf);
+            transferred = true;
+        }
+        return transferred;
+    }
+}
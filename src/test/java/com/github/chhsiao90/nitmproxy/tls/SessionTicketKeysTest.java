@@ -0,0 +1,45 @@
+package com.github.chhsiao90.nitmproxy.tls;
+
+import io.netty.handler.ssl.OpenSslSessionTicketKey;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class SessionTicketKeysTest {
+
+    @Test
+    public void shouldRotateKeys() {
+        AtomicLong clock = new AtomicLong();
+        SessionTicketKeys keys = new SessionTicketKeys(60, clock::get);
+        OpenSslSessionTicketKey first = keys.keys()[0];
+        assertEquals(1, keys.keys().length);
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(59));
+        assertFalse(keys.rotateIfDue());
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertTrue(keys.rotateIfDue());
+        assertEquals(2, keys.keys().length);
+        assertNotSame(first, keys.keys()[0]);
+        assertSame(first, keys.keys()[1]);
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(60));
+        assertTrue(keys.rotateIfDue());
+        assertEquals(2, keys.keys().length);
+        assertNotSame(first, keys.keys()[1]);
+    }
+
+    @Test
+    public void shouldNotRotateWithZeroInterval() {
+        AtomicLong clock = new AtomicLong();
+        SessionTicketKeys keys = new SessionTicketKeys(0, clock::get);
+
+        clock.addAndGet(TimeUnit.DAYS.toNanos(365));
+
+        assertFalse(keys.rotateIfDue());
+        assertEquals(1, keys.keys().length);
+    }
+}
@@ -0,0 +1,114 @@
+package com.github.chhsiao90.nitmproxy.tls;
+
+import com.github.chhsiao90.nitmproxy.NitmProxyConfig;
+import com.github.chhsiao90.nitmproxy.enums.TlsEngine;
+import com.google.common.io.Resources;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import io.netty.util.ReferenceCountUtil;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.github.chhsiao90.nitmproxy.testing.TlsChannels.*;
+import static com.github.chhsiao90.nitmproxy.tls.CertUtil.*;
+import static io.netty.handler.ssl.ApplicationProtocolNames.*;
+import static java.util.Collections.*;
+
+/**
+ * Compare the full handshakes per second and the bulk throughput of the {@link TlsEngine}s.
+ *
+ * <p>Usage: {@code TlsEngineBenchmark [seconds per measurement]}</p>
+ */
+public final class TlsEngineBenchmark {
+
+    private static final int WARMUP_ROUNDS = 200;
+    private static final int RECORD_SIZE = 16 * 1024;
+
+    private TlsEngineBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        long seconds = args.length > 0 ? Long.parseLong(args[0]) : 5;
+
+        NitmProxyConfig config = new NitmProxyConfig();
+        config.setCertificate(readPemFromFile(Resources.getResource("server.pem").getFile()));
+        config.setKey(readPrivateKeyFromFile(Resources.getResource("key.pem").getFile()));
+        CertManager certManager = new CertManager(config);
+        certManager.getCert("localhost");
+
+        for (TlsEngine tlsEngine : new TlsEngine[] { TlsEngine.JDK, TlsEngine.OPENSSL }) {
+            if (tlsEngine == TlsEngine.OPENSSL && !OpenSsl.isAvailable()) {
+                System.out.printf("%-8s not available: %s%n", tlsEngine, OpenSsl.unavailabilityCause());
+                continue;
+            }
+            config.setTlsEngine(tlsEngine);
+            ServerSslContextCache serverContexts = new ServerSslContextCache(config, certManager);
+            SslContext serverContext = serverContexts.get("localhost", singletonList(HTTP_1_1));
+            SslContext clientContext = SslContextBuilder
+                    .forClient()
+                    .sslProvider(TlsUtil.sslProvider(config))
+                    .trustManager(InsecureTrustManagerFactory.INSTANCE)
+                    .protocols(config.getTlsProtocols())
+                    .build();
+            try {
+                System.out.printf("%-8s %10.1f handshakes/s%n", tlsEngine,
+                        measureHandshakes(clientContext, serverContext, seconds));
+                System.out.printf("%-8s %10.1f MB/s%n", tlsEngine,
+                        measureThroughput(clientContext, serverContext, seconds));
+            } finally {
+                serverContexts.invalidateAll();
+                ReferenceCountUtil.release(clientContext);
+            }
+        }
+    }
+
+    private static double measureHandshakes(SslContext clientContext, SslContext serverContext, long seconds) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            close(handshake(clientContext, serverContext));
+        }
+        long count = 0;
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(seconds);
+        while (System.nanoTime() < end) {
+            close(handshake(clientContext, serverContext));
+            count++;
+        }
+        return count / elapsedSeconds(start);
+    }
+
+    private static double measureThroughput(SslContext clientContext, SslContext serverContext, long seconds) {
+        EmbeddedChannel[] channels = handshake(clientContext, serverContext);
+        byte[] record = new byte[RECORD_SIZE];
+        try {
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                transferRecord(channels, record);
+            }
+            long bytes = 0;
+            long start = System.nanoTime();
+            long end = start + TimeUnit.SECONDS.toNanos(seconds);
+            while (System.nanoTime() < end) {
+                transferRecord(channels, record);
+                bytes += record.length;
+            }
+            return bytes / 1024.0 / 1024.0 / elapsedSeconds(start);
+        } finally {
+            close(channels);
+        }
+    }
+
+    private static void transferRecord(EmbeddedChannel[] channels, byte[] record) {
+        EmbeddedChannel client = channels[0];
+        EmbeddedChannel server = channels[1];
+        client.writeOutbound(Unpooled.wrappedBuffer(record));
+        exchange(client, server);
+        ByteBuf received;
+        while ((received = server.readInbound()) != null) {
+            received.release();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.github.chhsiao90.nitmproxy.tls;
+
+import com.github.chhsiao90.nitmproxy.NitmProxyConfig;
+import com.github.chhsiao90.nitmproxy.enums.TlsEngine;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.util.IllegalReferenceCountException;
+import io.netty.util.ReferenceCounted;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.Security;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.netty.handler.ssl.ApplicationProtocolNames.*;
+import static java.util.Arrays.*;
+import static java.util.Collections.*;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class TlsUtilTest {
+    private NitmProxyConfig config;
+
+    @Before
+    public void setUp() {
+        config = new NitmProxyConfig();
+    }
+
+    @Test
+    public void shouldSelectSslProvider() {
+        config.setTlsEngine(TlsEngine.JDK);
+        assertEquals(SslProvider.JDK, TlsUtil.sslProvider(config));
+
+        config.setTlsEngine(TlsEngine.AUTO);
+        assertEquals(OpenSsl.isAvailable() ? SslProvider.OPENSSL_REFCNT : SslProvider.JDK,
+                TlsUtil.sslProvider(config));
+    }
+
+    @Test
+    public void shouldSelectJdkForJsseProvider() {
+        config.setTlsEngine(TlsEngine.OPENSSL);
+        config.setSslProvider(Security.getProvider("SunJSSE"));
+        assertEquals(SslProvider.JDK, TlsUtil.sslProvider(config));
+    }
+
+    @Test
+    public void shouldFetchContextAgainIfReleased() {
+        SslContext released = mock(SslContext.class, withSettings().extraInterfaces(ReferenceCounted.class));
+        when(((ReferenceCounted) released).retain())
+                .thenThrow(new IllegalReferenceCountException(0, 1));
+        SslContext live = mock(SslContext.class, withSettings().extraInterfaces(ReferenceCounted.class));
+        SslHandler sslHandler = mock(SslHandler.class);
+
+        AtomicInteger fetches = new AtomicInteger();
+        assertSame(sslHandler, TlsUtil.newHandler(
+                () -> fetches.getAndIncrement() == 0 ? released : live,
+                sslContext -> {
+                    assertSame(live, sslContext);
+                    return sslHandler;
+                }));
+        verify((ReferenceCounted) live).retain();
+        verify((ReferenceCounted) live).release();
+    }
+
+    @Test
+    public void shouldOfferAllProtocolsToServerIfCached() {
+        List<String> offered = asList(HTTP_2, HTTP_1_1);
+        TlsContext negotiated = newTlsContext(offered);
+        negotiated.protocolPromise().setSuccess(HTTP_2);
+        assertEquals(singletonList(HTTP_2), TlsUtil.alpnProtocols(negotiated));
+        assertEquals(singletonList(HTTP_2), TlsUtil.serverAlpnProtocols(negotiated));
+
+        TlsContext cached = newTlsContext(offered);
+        cached.negotiateCached(HTTP_2);
+        assertEquals(singletonList(HTTP_2), TlsUtil.alpnProtocols(cached));
+        assertEquals(offered, TlsUtil.serverAlpnProtocols(cached));
+    }
+
+    private static TlsContext newTlsContext(List<String> offered) {
+        TlsContext tlsContext = new TlsContext()
+                .protocols(ImmediateEventExecutor.INSTANCE.newPromise())
+                .protocol(ImmediateEventExecutor.INSTANCE.newPromise());
+        tlsContext.protocolsPromise().setSuccess(offered);
+        return tlsContext;
+    }
+}
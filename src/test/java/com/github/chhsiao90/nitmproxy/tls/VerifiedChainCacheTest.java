@@ -0,0 +1,110 @@
+package com.github.chhsiao90.nitmproxy.tls;
+
+import com.github.chhsiao90.nitmproxy.enums.KeyAlgorithm;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509ExtendedTrustManager;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.github.chhsiao90.nitmproxy.tls.CertUtil.*;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class VerifiedChainCacheTest {
+    private static final Object TRUST_MANAGER = new Object();
+
+    private X509Certificate[] chain;
+    private VerifiedChainCache cache;
+    private AtomicInteger verifications;
+
+    @Before
+    public void setUp() throws Exception {
+        long now = System.currentTimeMillis();
+        chain = new X509Certificate[] {
+                generateCertificate("CN=localhost", new Date(now), new Date(now + TimeUnit.DAYS.toMillis(1)),
+                        KeyAlgorithm.EC_P256.generateKeyPair())
+        };
+        cache = new VerifiedChainCache(100, 60);
+        verifications = new AtomicInteger();
+    }
+
+    @Test
+    public void shouldSkipVerifiedChain() throws Exception {
+        cache.verify(TRUST_MANAGER, chain, "RSA", "localhost", verifications::incrementAndGet);
+        cache.verify(TRUST_MANAGER, chain.clone(), "RSA", "localhost", verifications::incrementAndGet);
+
+        assertEquals(1, verifications.get());
+        assertEquals(1, cache.stats().hitCount());
+    }
+
+    @Test
+    public void shouldVerifyAgainForAnotherKey() throws Exception {
+        cache.verify(TRUST_MANAGER, chain, "RSA", "localhost", verifications::incrementAndGet);
+        cache.verify(TRUST_MANAGER, chain, "RSA", "www.google.com", verifications::incrementAndGet);
+        cache.verify(TRUST_MANAGER, chain, "ECDHE_RSA", "localhost", verifications::incrementAndGet);
+        cache.verify(new Object(), chain, "RSA", "localhost", verifications::incrementAndGet);
+
+        assertEquals(4, verifications.get());
+    }
+
+    @Test
+    public void shouldNotCacheFailure() {
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.verify(TRUST_MANAGER, chain, "RSA", "localhost", () -> {
+                    verifications.incrementAndGet();
+                    throw new CertificateException("untrusted");
+                });
+                fail("expect exception");
+            } catch (CertificateException e) {
+                assertEquals("untrusted", e.getMessage());
+            }
+        }
+        assertEquals(2, verifications.get());
+    }
+
+    @Test
+    public void shouldNotCacheExpiredChain() throws Exception {
+        long now = System.currentTimeMillis();
+        chain = new X509Certificate[] {
+                generateCertificate("CN=localhost", new Date(now - 2000), new Date(now - 1000),
+                        KeyAlgorithm.EC_P256.generateKeyPair())
+        };
+
+        cache.verify(TRUST_MANAGER, chain, "RSA", "localhost", verifications::incrementAndGet);
+        cache.verify(TRUST_MANAGER, chain, "RSA", "localhost", verifications::incrementAndGet);
+
+        assertEquals(2, verifications.get());
+    }
+
+    @Test
+    public void shouldDisableWithZeroTtl() throws Exception {
+        cache = new VerifiedChainCache(100, 0);
+
+        cache.verify(TRUST_MANAGER, chain, "RSA", "localhost", verifications::incrementAndGet);
+        cache.verify(TRUST_MANAGER, chain, "RSA", "localhost", verifications::incrementAndGet);
+
+        assertEquals(2, verifications.get());
+    }
+
+    @Test
+    public void shouldCacheVerificationOfTrustManager() throws Exception {
+        X509ExtendedTrustManager delegate = mock(X509ExtendedTrustManager.class);
+        SSLEngine engine = mock(SSLEngine.class);
+        when(engine.getPeerHost()).thenReturn("localhost");
+        TrustManagerFactory factory = new CachingTrustManagerFactory(delegate, cache);
+        X509ExtendedTrustManager trustManager = (X509ExtendedTrustManager) factory.getTrustManagers()[0];
+
+        trustManager.checkServerTrusted(chain, "RSA", engine);
+        trustManager.checkServerTrusted(chain, "RSA", engine);
+
+        verify(delegate, times(1)).checkServerTrusted(chain, "RSA", engine);
+    }
+}